@@ -2,8 +2,10 @@ package tsygvintsev.watering_diary;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WateringDiaryApplication {
 
 	public static void main(String[] args) {
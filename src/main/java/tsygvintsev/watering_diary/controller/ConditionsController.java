@@ -1,14 +1,24 @@
 package tsygvintsev.watering_diary.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tsygvintsev.watering_diary.dto.ConditionsPoint;
+import tsygvintsev.watering_diary.dto.ConditionsSeries;
+import tsygvintsev.watering_diary.dto.ConditionsView;
 import tsygvintsev.watering_diary.entity.Conditions;
+import tsygvintsev.watering_diary.service.AccessControlService;
 import tsygvintsev.watering_diary.service.ConditionsService;
+import tsygvintsev.watering_diary.service.ResourceVersionService;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+import tsygvintsev.watering_diary.util.FieldSet;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.List;
+import java.time.LocalDate;
+import java.util.Map;
 
 /**
  * Контроллер для управления условиями микроклимата.
@@ -18,17 +28,43 @@ import java.util.List;
 @RequestMapping("/api/conditions")
 public class ConditionsController {
 
+    @Autowired
+    private FieldFilteringJsonWriter fieldFilteringJsonWriter;
+
     @Autowired
     private ConditionsService conditionsService;
 
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить все записи условий микроклимата.
      *
+     * @param fields список полей ответа через запятую, например {@code date,temperature} (необязательно)
      * @return ResponseEntity со списком условий и статусом 200 OK
+     * @throws ResponseStatusException если запрошено неизвестное поле (400 BAD_REQUEST)
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @GetMapping
-    public ResponseEntity<List<Conditions>> getAllConditions() {
-        return new ResponseEntity<>(conditionsService.getAllConditions(), HttpStatus.OK);
+    public ResponseEntity<String> getAllConditions(@RequestParam(required = false) String fields) {
+        accessControlService.checkAdmin();
+        FieldSet<ConditionsView> fieldSet = FieldSet.parse(ConditionsView.class, fields);
+        return fieldFilteringJsonWriter.ok(conditionsService.getAllConditions(fieldSet), fieldSet);
+    }
+
+    /**
+     * Получить статистику кэша последних условий.
+     *
+     * @return ResponseEntity с размером кэша, попаданиями и промахами и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getLatestConditionsCacheStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(conditionsService.getLatestConditionsCacheStats(), HttpStatus.OK);
     }
 
     /**
@@ -45,13 +81,63 @@ public class ConditionsController {
 
     /**
      * Получить все условия микроклимата конкретного пользователя.
+     * Поддерживает условный запрос по ETag.
      *
      * @param userId ID пользователя
+     * @param fields список полей ответа через запятую (необязательно)
+     * @param webRequest текущий запрос (для проверки If-None-Match)
      * @return ResponseEntity со списком условий и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если условия не изменились
+     * @throws ResponseStatusException если запрошено неизвестное поле (400 BAD_REQUEST)
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Conditions>> getConditionsByUserId(@PathVariable Integer userId) {
-        return new ResponseEntity<>(conditionsService.getConditionsByUserId(userId), HttpStatus.OK);
+    public ResponseEntity<String> getConditionsByUserId(@PathVariable Integer userId,
+                                                        @RequestParam(required = false) String fields,
+                                                        WebRequest webRequest) {
+        FieldSet<ConditionsView> fieldSet = FieldSet.parse(ConditionsView.class, fields);
+        if (webRequest.checkNotModified(resourceVersionService.conditionsETag(userId))) {
+            return null;
+        }
+        return fieldFilteringJsonWriter.ok(conditionsService.getConditionsByUserId(userId, fieldSet), fieldSet);
+    }
+
+    /**
+     * Получить ряд условий пользователя за период в колоночном виде (для графиков).
+     * Поддерживает условный запрос по ETag.
+     *
+     * @param userId ID пользователя
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param webRequest текущий запрос (для проверки If-None-Match)
+     * @return ResponseEntity с рядом условий и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если условия не изменились
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    @GetMapping("/user/{userId}/series")
+    public ResponseEntity<ConditionsSeries> getConditionsSeries(
+            @PathVariable Integer userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionService.conditionsETag(userId))) {
+            return null;
+        }
+        return new ResponseEntity<>(conditionsService.getConditionsSeries(userId, dateFrom, dateTo), HttpStatus.OK);
+    }
+
+    /**
+     * Получить условия, действовавшие на дату.
+     *
+     * @param userId ID пользователя
+     * @param date дата
+     * @return ResponseEntity с условиями и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не найден или условий на эту дату нет (404 NOT_FOUND)
+     */
+    @GetMapping("/user/{userId}/as-of")
+    public ResponseEntity<ConditionsPoint> getConditionsAsOf(
+            @PathVariable Integer userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return new ResponseEntity<>(conditionsService.getConditionsAsOf(userId, date), HttpStatus.OK);
     }
 
     /**
@@ -0,0 +1,99 @@
+package tsygvintsev.watering_diary.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.ExportJob;
+import tsygvintsev.watering_diary.dto.ExportRequest;
+import tsygvintsev.watering_diary.service.ExportJobService;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Контроллер фоновых выгрузок записей полива.
+ * Выгрузка ставится в очередь, клиент опрашивает статус и скачивает готовый файл.
+ */
+@RestController
+@RequestMapping("/api/exports")
+public class ExportController {
+
+    @Autowired
+    private ExportJobService exportJobService;
+
+    /**
+     * Поставить выгрузку в очередь.
+     *
+     * @param request формат и фильтры выгрузки
+     * @return ResponseEntity с созданной выгрузкой и статусом 202 ACCEPTED
+     * @throws ResponseStatusException если параметры некорректны (400 BAD_REQUEST)
+     *         или очередь переполнена (503 SERVICE_UNAVAILABLE)
+     */
+    @PostMapping
+    public ResponseEntity<ExportJob> createExport(@RequestBody ExportRequest request) {
+        return new ResponseEntity<>(exportJobService.submit(request), HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Получить статус и прогресс выгрузки.
+     *
+     * @param id ID выгрузки
+     * @return ResponseEntity с выгрузкой и статусом 200 OK
+     * @throws ResponseStatusException если выгрузка не найдена
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ExportJob> getExport(@PathVariable String id) {
+        return new ResponseEntity<>(exportJobService.getJob(id), HttpStatus.OK);
+    }
+
+    /**
+     * Скачать готовый файл выгрузки.
+     * Если контейнер поддерживает sendfile, файл отдаётся им, иначе через FileChannel.transferTo.
+     *
+     * @param id ID выгрузки
+     * @throws ResponseStatusException если выгрузка не найдена или ещё не готова
+     * @throws IOException при ошибке чтения файла
+     */
+    @GetMapping("/{id}/file")
+    public void downloadExport(@PathVariable String id,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        ExportJob job = exportJobService.getJob(id);
+        Path file = exportJobService.startDownload(job);
+        try {
+            long size = Files.size(file);
+
+            response.setContentType("application/octet-stream");
+            response.setHeader("Content-Disposition", "attachment; filename=" + exportJobService.fileName(job));
+            response.setContentLengthLong(size);
+
+            if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+                // файл откроет контейнер после выхода из метода; его защищает отсчёт срока хранения
+                // от начала скачивания
+                request.setAttribute("org.apache.tomcat.sendfile.filename", file.toAbsolutePath().toString());
+                request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+                request.setAttribute("org.apache.tomcat.sendfile.end", size);
+                return;
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+                long position = 0;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+            }
+        } finally {
+            exportJobService.finishDownload(job);
+        }
+    }
+}
@@ -4,8 +4,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import tsygvintsev.watering_diary.entity.Material;
+import tsygvintsev.watering_diary.service.AccessControlService;
 import tsygvintsev.watering_diary.service.MaterialService;
+import tsygvintsev.watering_diary.service.ResourceVersionService;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
@@ -21,13 +24,25 @@ public class MaterialController {
     @Autowired
     private MaterialService materialService;
 
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить все материалы, отсортированные по коэффициенту полива.
+     * Поддерживает условный запрос по ETag.
      *
+     * @param webRequest текущий запрос (для проверки If-None-Match)
      * @return ResponseEntity со списком материалов и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если справочник не изменился
      */
     @GetMapping
-    public ResponseEntity<List<Material>> getAllMaterials() {
+    public ResponseEntity<List<Material>> getAllMaterials(WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionService.referencesETag())) {
+            return null;
+        }
         return new ResponseEntity<>(materialService.getAllMaterials(), HttpStatus.OK);
     }
 
@@ -49,9 +64,11 @@ public class MaterialController {
      * @param material объект материала для создания
      * @return ResponseEntity с созданным материалом и статусом 201 CREATED
      * @throws ResponseStatusException если материал с таким названием уже существует
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @PostMapping
     public ResponseEntity<Material> createMaterial(@RequestBody Material material) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(materialService.createMaterial(material), HttpStatus.CREATED);
     }
 
@@ -62,10 +79,12 @@ public class MaterialController {
      * @param material объект с обновляемыми полями
      * @return ResponseEntity с обновлённым материалом и статусом 200 OK
      * @throws ResponseStatusException если материал не найден или новое название уже занято
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @PatchMapping("/{id}")
     public ResponseEntity<Material> updateMaterial(@PathVariable Integer id,
                                                    @RequestBody Material material) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(materialService.updateMaterial(id, material), HttpStatus.OK);
     }
 
@@ -75,9 +94,11 @@ public class MaterialController {
      * @param id уникальный идентификатор материала
      * @return ResponseEntity со статусом 204 NO_CONTENT
      * @throws ResponseStatusException если материал не найден
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<Material> deleteMaterial(@PathVariable Integer id) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(materialService.deleteMaterial(id), HttpStatus.NO_CONTENT);
     }
 }
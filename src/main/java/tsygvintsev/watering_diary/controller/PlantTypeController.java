@@ -4,8 +4,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import tsygvintsev.watering_diary.entity.PlantType;
+import tsygvintsev.watering_diary.service.AccessControlService;
 import tsygvintsev.watering_diary.service.PlantTypeService;
+import tsygvintsev.watering_diary.service.ResourceVersionService;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
@@ -21,13 +24,25 @@ public class PlantTypeController {
     @Autowired
     private PlantTypeService plantTypeService;
 
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить все типы растений.
+     * Поддерживает условный запрос по ETag.
      *
+     * @param webRequest текущий запрос (для проверки If-None-Match)
      * @return ResponseEntity со списком типов и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если справочник не изменился
      */
     @GetMapping
-    public ResponseEntity<List<PlantType>> getAllPlantTypes() {
+    public ResponseEntity<List<PlantType>> getAllPlantTypes(WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionService.referencesETag())) {
+            return null;
+        }
         return new ResponseEntity<>(plantTypeService.getAllPlantTypes(), HttpStatus.OK);
     }
 
@@ -49,9 +64,11 @@ public class PlantTypeController {
      * @param plantType объект типа растения для создания
      * @return ResponseEntity с созданным типом растения и статусом 201 CREATED
      * @throws ResponseStatusException если тип растения с таким названием уже существует
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @PostMapping
     public ResponseEntity<PlantType> createPlantType(@RequestBody PlantType plantType) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(plantTypeService.createPlantType(plantType), HttpStatus.CREATED);
     }
 
@@ -62,10 +79,12 @@ public class PlantTypeController {
      * @param plantType объект с обновляемыми полями
      * @return ResponseEntity с обновлённым типом растения и статусом 200 OK
      * @throws ResponseStatusException если тип растения не найден или новое название уже занято
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @PatchMapping("/{id}")
     public ResponseEntity<PlantType> updatePlantType(@PathVariable Integer id,
                                                      @RequestBody PlantType plantType) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(plantTypeService.updatePlantType(id, plantType), HttpStatus.OK);
     }
 
@@ -75,9 +94,11 @@ public class PlantTypeController {
      * @param id уникальный идентификатор типа растения
      * @return ResponseEntity со статусом 204 NO_CONTENT
      * @throws ResponseStatusException если тип растения не найден
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<PlantType> deletePlantType(@PathVariable Integer id) {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(plantTypeService.deletePlantType(id), HttpStatus.NO_CONTENT);
     }
 }
@@ -4,12 +4,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import tsygvintsev.watering_diary.dto.UserView;
 import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.service.AccessControlService;
+import tsygvintsev.watering_diary.service.SessionTokenService;
 import tsygvintsev.watering_diary.service.UserService;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Контроллер для управления пользователями.
@@ -22,16 +26,36 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить список всех пользователей.
      *
      * @return ResponseEntity со списком всех пользователей и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
+    public ResponseEntity<List<UserView>> getAllUsers() {
+        accessControlService.checkAdmin();
         return new ResponseEntity<>(userService.getAllUsers(), HttpStatus.OK);
     }
 
+    /**
+     * Получить метрики пула хеширования паролей.
+     *
+     * @return ResponseEntity с метриками и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/password-hashing")
+    public ResponseEntity<Map<String, Object>> getPasswordHashingStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(userService.getPasswordHashingStats(), HttpStatus.OK);
+    }
+
     /**
      * Получить пользователя по ID.
      *
@@ -46,20 +70,26 @@ public class UserController {
 
     /**
      * Авторизация пользователя.
+     * При успехе выдаёт подписанный сессионный токен, который передаётся
+     * в последующих запросах в заголовке Authorization: Bearer.
      *
      * @param credentials JSON с login и password
-     * @return ResponseEntity: 200 OK или 401
+     * @return ResponseEntity: 200 OK с токеном или 401
      */
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody Map<String, String> credentials) {
         String login = credentials.get("login");
         String password = credentials.get("password");
 
-        if (userService.authenticate(login, password)) {
+        Optional<User> user = userService.authenticateUser(login, password);
+        if (user.isPresent()) {
+            SessionTokenService.IssuedToken token = sessionTokenService.issue(user.get().getId());
             Map<String, Object> response = Map.of(
                     "success", true,
-                    "userId", userService.getUserByLogin(login).getId(),
-                    "login", login
+                    "userId", token.userId(),
+                    "login", login,
+                    "token", token.token(),
+                    "expiresAt", token.expiresAt().toString()
             );
             return ResponseEntity.ok(response);
         }
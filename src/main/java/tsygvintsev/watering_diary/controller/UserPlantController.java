@@ -1,14 +1,32 @@
 package tsygvintsev.watering_diary.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tsygvintsev.watering_diary.dto.DuePlant;
+import tsygvintsev.watering_diary.dto.PlantStats;
+import tsygvintsev.watering_diary.dto.UserPlantStats;
+import tsygvintsev.watering_diary.dto.UserPlantView;
 import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.service.AccessControlService;
+import tsygvintsev.watering_diary.service.PlantStatsService;
+import tsygvintsev.watering_diary.service.ResourceVersionService;
 import tsygvintsev.watering_diary.service.UserPlantService;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+import tsygvintsev.watering_diary.util.FieldSet;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Контроллер для управления растениями пользователей.
@@ -18,17 +36,34 @@ import java.util.List;
 @RequestMapping("/api/user-plants")
 public class UserPlantController {
 
+    @Autowired
+    private FieldFilteringJsonWriter fieldFilteringJsonWriter;
+
     @Autowired
     private UserPlantService userPlantService;
 
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private PlantStatsService plantStatsService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить список всех растений, отсортированных по названию.
      *
+     * @param fields список полей ответа через запятую, например {@code id,name} (необязательно)
      * @return ResponseEntity со списком растений и статусом 200 OK
+     * @throws ResponseStatusException если запрошено неизвестное поле (400 BAD_REQUEST)
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @GetMapping
-    public ResponseEntity<List<UserPlant>> getAllUserPlants() {
-        return new ResponseEntity<>(userPlantService.getAllUserPlants(), HttpStatus.OK);
+    public ResponseEntity<String> getAllUserPlants(@RequestParam(required = false) String fields) {
+        accessControlService.checkAdmin();
+        FieldSet<UserPlantView> fieldSet = FieldSet.parse(UserPlantView.class, fields);
+        return fieldFilteringJsonWriter.ok(userPlantService.getAllUserPlants(fieldSet), fieldSet);
     }
 
     /**
@@ -45,13 +80,121 @@ public class UserPlantController {
 
     /**
      * Получить все растения конкретного пользователя.
+     * Поддерживает условный запрос по ETag.
      *
      * @param userId ID пользователя
+     * @param fields список полей ответа через запятую (необязательно)
+     * @param webRequest текущий запрос (для проверки If-None-Match)
      * @return ResponseEntity со списком растений пользователя и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если список не изменился
+     * @throws ResponseStatusException если запрошено неизвестное поле (400 BAD_REQUEST)
      */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<UserPlant>> getUserPlantsByUserId(@PathVariable Integer userId) {
-        return new ResponseEntity<>(userPlantService.getUserPlantsByUserId(userId), HttpStatus.OK);
+    public ResponseEntity<String> getUserPlantsByUserId(@PathVariable Integer userId,
+                                                        @RequestParam(required = false) String fields,
+                                                        WebRequest webRequest) {
+        FieldSet<UserPlantView> fieldSet = FieldSet.parse(UserPlantView.class, fields);
+        if (webRequest.checkNotModified(resourceVersionService.userPlantsETag(userId))) {
+            return null;
+        }
+        return fieldFilteringJsonWriter.ok(userPlantService.getUserPlantsByUserId(userId, fieldSet), fieldSet);
+    }
+
+    /**
+     * Получить сводку по записям полива каждого растения пользователя:
+     * количество записей, последний полив, средняя и последняя погрешность,
+     * объём за 7 и 30 дней.
+     *
+     * @param userId ID пользователя
+     * @return ResponseEntity со сводкой по растениям и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    @GetMapping("/user/{userId}/stats")
+    public ResponseEntity<List<UserPlantStats>> getUserPlantStats(@PathVariable Integer userId) {
+        return new ResponseEntity<>(userPlantService.getUserPlantStats(userId), HttpStatus.OK);
+    }
+
+    /**
+     * Получить растения пользователя, которые пора поливать.
+     *
+     * @param userId ID пользователя
+     * @param days на сколько дней вперёд смотреть (по умолчанию 0 - срок сегодня или уже прошёл)
+     * @return ResponseEntity со списком растений по возрастанию срока и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не найден или days отрицательно
+     */
+    @GetMapping("/user/{userId}/due")
+    public ResponseEntity<List<DuePlant>> getDuePlants(@PathVariable Integer userId,
+                                                       @RequestParam(defaultValue = "0") int days) {
+        return new ResponseEntity<>(userPlantService.getDuePlants(userId, days), HttpStatus.OK);
+    }
+
+    /**
+     * Выгрузить все растения, которые пора поливать, потоком NDJSON (одно растение на строку).
+     *
+     * @param response HTTP-ответ
+     * @throws IOException при ошибке записи
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/due")
+    public void streamDuePlants(HttpServletResponse response) throws IOException {
+        accessControlService.checkAdmin();
+        response.setContentType("application/x-ndjson; charset=UTF-8");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        try {
+            userPlantService.forEachDuePlant(plant -> {
+                try {
+                    writer.write("{\"userPlantId\":" + plant.userPlantId()
+                            + ",\"userId\":" + plant.userId()
+                            + ",\"dueDate\":\"" + plant.dueDate() + "\""
+                            + ",\"lastWateringDate\":" + (plant.lastWateringDate() != null
+                                    ? "\"" + plant.lastWateringDate() + "\"" : "null")
+                            + ",\"intervalDays\":" + plant.intervalDays() + "}\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Получить накопленные показатели каждого растения пользователя:
+     * количество записей, суммарный объём, среднюю погрешность и её дисперсию,
+     * дату последнего полива и число дней с него.
+     *
+     * @param userId ID пользователя
+     * @return ResponseEntity с показателями по растениям и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    @GetMapping("/user/{userId}/aggregates")
+    public ResponseEntity<List<PlantStats>> getPlantStats(@PathVariable Integer userId) {
+        return new ResponseEntity<>(plantStatsService.getPlantStatsByUserId(userId), HttpStatus.OK);
+    }
+
+    /**
+     * Сверить накопленные показатели растений с полным пересчётом.
+     *
+     * @return ResponseEntity с количеством проверенных растений, списком расхождений и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/aggregates/verify")
+    public ResponseEntity<Map<String, Object>> verifyPlantStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(plantStatsService.verify(), HttpStatus.OK);
+    }
+
+    /**
+     * Пересчитать накопленные показатели растений целиком.
+     *
+     * @return ResponseEntity с количеством пересчитанных растений и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @PostMapping("/aggregates/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildPlantStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(Map.of("rebuilt", plantStatsService.rebuild()), HttpStatus.OK);
     }
 
     /**
@@ -6,12 +6,27 @@ import java.time.LocalDate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import tsygvintsev.watering_diary.dto.ImportReport;
+import tsygvintsev.watering_diary.dto.UsageReport;
+import tsygvintsev.watering_diary.dto.WateringRecordView;
 import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.service.AccessControlService;
+import tsygvintsev.watering_diary.service.ResourceVersionService;
+import tsygvintsev.watering_diary.service.UsageRollupService;
+import tsygvintsev.watering_diary.service.WateringRecordArchive;
+import tsygvintsev.watering_diary.service.WateringRecordImportService;
 import tsygvintsev.watering_diary.service.WateringRecordService;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 import jakarta.servlet.http.HttpServletResponse;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+import tsygvintsev.watering_diary.util.FieldSet;
+import tsygvintsev.watering_diary.util.WateringRecordCsvWriter;
 import tsygvintsev.watering_diary.util.WateringRecordExcelExporter;
+import tsygvintsev.watering_diary.util.WateringRecordNdjsonWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,17 +43,46 @@ import java.util.Date;
 @RequestMapping("/api/watering-records")
 public class WateringRecordController {
 
+    @Autowired
+    private FieldFilteringJsonWriter fieldFilteringJsonWriter;
+
     @Autowired
     private WateringRecordService wateringRecordService;
 
+    @Autowired
+    private WateringRecordImportService wateringRecordImportService;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private UsageRollupService usageRollupService;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
-     * Получить все записи полива.
+     * Получить страницу всех записей полива.
      *
-     * @return ResponseEntity со списком записей и статусом 200 OK
+     * @param cursor курсор следующей страницы из предыдущего ответа (необязательно)
+     * @param limit размер страницы (необязательно)
+     * @param fields список полей записи через запятую, например {@code date,volumeWatering} (необязательно)
+     * @return ResponseEntity со страницей записей и статусом 200 OK
+     * @throws ResponseStatusException если курсор, размер страницы или поля некорректны (400 BAD_REQUEST)
+     *         или пользователь не администратор (403 FORBIDDEN)
      */
     @GetMapping
-    public ResponseEntity<List<WateringRecord>> getAllWateringRecords() {
-        return new ResponseEntity<>(wateringRecordService.getAllWateringRecords(), HttpStatus.OK);
+    public ResponseEntity<String> getAllWateringRecords(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields) {
+        accessControlService.checkAdmin();
+        FieldSet<WateringRecordView> fieldSet = WateringRecordService.pageFields(fields);
+        return fieldFilteringJsonWriter.ok(
+                wateringRecordService.getAllWateringRecords(cursor, limit, fieldSet), fieldSet);
     }
 
     /**
@@ -54,14 +98,35 @@ public class WateringRecordController {
     }
 
     /**
-     * Получить все записи полива для конкретного растения пользователя.
+     * Получить страницу записей полива для конкретного растения пользователя.
+     * Поддерживает условный запрос по ETag.
      *
      * @param userPlantId ID растения
-     * @return ResponseEntity со списком записей полива и статусом 200 OK
+     * @param cursor курсор следующей страницы из предыдущего ответа (необязательно)
+     * @param limit размер страницы (необязательно)
+     * @param fields список полей записи через запятую (необязательно)
+     * @param webRequest текущий запрос (для проверки If-None-Match)
+     * @return ResponseEntity со страницей записей полива и статусом 200 OK
+     *         или 304 NOT_MODIFIED, если записи растения не изменились
+     * @throws ResponseStatusException если растение не найдено (404 NOT_FOUND),
+     *         принадлежит другому пользователю (403 FORBIDDEN)
+     *         или курсор либо поля некорректны (400 BAD_REQUEST)
      */
     @GetMapping("/plant/{userPlantId}")
-    public ResponseEntity<List<WateringRecord>> getWateringRecordsByUserPlantId(@PathVariable Integer userPlantId) {
-        return new ResponseEntity<>(wateringRecordService.getWateringRecordsByUserPlantId(userPlantId), HttpStatus.OK);
+    public ResponseEntity<String> getWateringRecordsByUserPlantId(
+            @PathVariable Integer userPlantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String fields,
+            WebRequest webRequest) {
+        FieldSet<WateringRecordView> fieldSet = WateringRecordService.pageFields(fields);
+        wateringRecordService.checkPlantAccess(userPlantId);
+        if (webRequest.checkNotModified(resourceVersionService.recordsETag(userPlantId))) {
+            return null;
+        }
+        return fieldFilteringJsonWriter.ok(
+                wateringRecordService.getWateringRecordsByUserPlantId(userPlantId, cursor, limit, fieldSet),
+                fieldSet);
     }
 
     /**
@@ -77,6 +142,36 @@ public class WateringRecordController {
         return new ResponseEntity<>(wateringRecordService.createWateringRecord(wateringRecord), HttpStatus.CREATED);
     }
 
+    /**
+     * Создать несколько записей полива одним запросом (например, полив всех растений на подоконнике).
+     *
+     * @param wateringRecords список записей
+     * @return ResponseEntity с созданными записями и статусом 201 CREATED
+     * @throws ResponseStatusException если любая запись не проходит проверки одиночного создания;
+     *         в этом случае не сохраняется ни одна запись
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<WateringRecord>> createWateringRecords(
+            @RequestBody List<WateringRecord> wateringRecords) {
+        return new ResponseEntity<>(wateringRecordService.createWateringRecords(wateringRecords), HttpStatus.CREATED);
+    }
+
+    /**
+     * Импортировать записи полива из CSV или XLSX файла.
+     * Строки с ошибками не прерывают импорт и перечисляются в отчёте.
+     *
+     * @param file файл с записями (первая строка - заголовок)
+     * @param userId ID пользователя, которому принадлежат растения
+     * @return ResponseEntity с отчётом об импорте и статусом 200 OK
+     * @throws ResponseStatusException если файл пуст или не читается (400 BAD_REQUEST)
+     *         или пользователь не найден (404 NOT_FOUND)
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportReport> importWateringRecords(@RequestParam("file") MultipartFile file,
+                                                              @RequestParam Integer userId) {
+        return new ResponseEntity<>(wateringRecordImportService.importRecords(file, userId), HttpStatus.OK);
+    }
+
     /**
      * Обновить запись полива.
      *
@@ -115,9 +210,7 @@ public class WateringRecordController {
     public ResponseEntity<Map<String, Object>> calculateWateringVolume(
             @RequestParam Integer userPlantId) {
 
-        WateringRecord lastRecord = wateringRecordService.getLastWateringRecordByUserPlantId(userPlantId);
-
-        Integer recommendedVolume = wateringRecordService.calculateWateringVolume(userPlantId, lastRecord);
+        Integer recommendedVolume = wateringRecordService.getRecommendedVolume(userPlantId);
 
         Map<String, Object> response = new HashMap<>();
         response.put("userPlantId", userPlantId);
@@ -127,6 +220,95 @@ public class WateringRecordController {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    /**
+     * Рассчитать рекомендуемый объём полива для всех растений пользователя за один проход.
+     *
+     * @param userId ID пользователя
+     * @return ResponseEntity со списком рекомендаций по каждому растению и статусом 200 OK
+     * @throws ResponseStatusException если пользователь или условия не найдены
+     */
+    @GetMapping("/calculate/user/{userId}")
+    public ResponseEntity<List<Map<String, Object>>> calculateWateringVolumesByUserId(
+            @PathVariable Integer userId) {
+
+        List<Map<String, Object>> response = new ArrayList<>();
+        wateringRecordService.calculateWateringVolumesByUserId(userId)
+                .forEach((userPlantId, recommendedVolume) -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("userPlantId", userPlantId);
+                    item.put("recommendedVolume", recommendedVolume);
+                    item.put("unit", "мл");
+                    response.add(item);
+                });
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    /**
+     * Получить статистику кэша рекомендаций.
+     *
+     * @return ResponseEntity с размером кэша, попаданиями и промахами и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/calculate/cache")
+    public ResponseEntity<Map<String, Object>> getRecommendationCacheStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(wateringRecordService.getRecommendationCacheStats(), HttpStatus.OK);
+    }
+
+    /**
+     * Получить расход воды пользователя по месяцам или годам:
+     * количество поливов, суммарный объём и средняя погрешность по растениям и по типам растений.
+     *
+     * @param userId ID пользователя
+     * @param granularity month или year (по умолчанию month)
+     * @return ResponseEntity с отчётом о расходе и статусом 200 OK
+     * @throws ResponseStatusException если период неизвестен (400) или пользователь не найден (404)
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<UsageReport> getUsage(
+            @RequestParam Integer userId,
+            @RequestParam(defaultValue = "month") String granularity) {
+        return new ResponseEntity<>(usageRollupService.getUsage(userId, granularity), HttpStatus.OK);
+    }
+
+    /**
+     * Заполнить таблицы расхода воды заново по всем записям полива.
+     *
+     * @return ResponseEntity с количеством строк в каждой таблице и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @PostMapping("/usage/backfill")
+    public ResponseEntity<Map<String, Integer>> backfillUsage() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(usageRollupService.backfill(), HttpStatus.OK);
+    }
+
+    /**
+     * Перенести записи старше горизонта в архивные сегменты.
+     *
+     * @return ResponseEntity с количеством перенесённых записей и статусом 200 OK
+     * @throws ResponseStatusException если перенос уже выполняется (409 CONFLICT)
+     *         или пользователь не администратор (403 FORBIDDEN)
+     */
+    @PostMapping("/archive/compact")
+    public ResponseEntity<Map<String, Object>> compactArchive() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(wateringRecordArchive.compact(), HttpStatus.OK);
+    }
+
+    /**
+     * Получить статистику архива записей.
+     *
+     * @return ResponseEntity с настройками и счётчиками архива и статусом 200 OK
+     * @throws ResponseStatusException если пользователь не администратор (403 FORBIDDEN)
+     */
+    @GetMapping("/archive/stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        accessControlService.checkAdmin();
+        return new ResponseEntity<>(wateringRecordArchive.getStats(), HttpStatus.OK);
+    }
+
     /**
      * Экспортировать отфильтрованные записи полива в Excel-файл.
      *
@@ -152,9 +334,71 @@ public class WateringRecordController {
         String headerValue = "attachment; filename=watering_records_" + currentDateTime + ".xlsx";
         response.setHeader(headerKey, headerValue);
 
-        List<WateringRecord> listRecords = wateringRecordService.getFilteredRecords(plantId, dateFrom, dateTo, userId);
+        wateringRecordService.streamFilteredRecords(plantId, dateFrom, dateTo, userId,
+                records -> new WateringRecordExcelExporter(records).export(response.getOutputStream()));
+    }
+
+    /**
+     * Экспортировать отфильтрованные записи полива в CSV.
+     * Строки пишутся в ответ по мере чтения из базы данных.
+     *
+     * @param plantId ID растения для фильтрации
+     * @param dateFrom начальная дата
+     * @param dateTo конечная дата
+     * @param userId ID пользователя
+     * @throws IOException при ошибке записи
+     */
+    @GetMapping("/export/csv")
+    public void exportToCsv(
+            @RequestParam(required = false) Integer plantId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            @RequestParam Integer userId,
+            HttpServletResponse response) throws IOException {
+
+        response.setContentType("text/csv; charset=UTF-8");
+        response.setHeader("Content-Disposition",
+                "attachment; filename=watering_records_" + currentDateTime() + ".csv");
+
+        WateringRecordCsvWriter csvWriter = new WateringRecordCsvWriter(response.getOutputStream());
+        wateringRecordService.streamFilteredRows(plantId, dateFrom, dateTo, userId, csvWriter::write);
+        csvWriter.flush();
+    }
 
-        WateringRecordExcelExporter excelExporter = new WateringRecordExcelExporter(listRecords);
-        excelExporter.export(response);
+    /**
+     * Экспортировать отфильтрованные записи полива в NDJSON (один JSON-объект на строку).
+     * Строки пишутся в ответ по мере чтения из базы данных.
+     *
+     * @param plantId ID растения для фильтрации
+     * @param dateFrom начальная дата
+     * @param dateTo конечная дата
+     * @param userId ID пользователя
+     * @throws IOException при ошибке записи
+     */
+    @GetMapping("/export/ndjson")
+    public void exportToNdjson(
+            @RequestParam(required = false) Integer plantId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateTo,
+            @RequestParam Integer userId,
+            HttpServletResponse response) throws IOException {
+
+        response.setContentType("application/x-ndjson; charset=UTF-8");
+        response.setHeader("Content-Disposition",
+                "attachment; filename=watering_records_" + currentDateTime() + ".ndjson");
+
+        WateringRecordNdjsonWriter ndjsonWriter = new WateringRecordNdjsonWriter(response.getOutputStream());
+        wateringRecordService.streamFilteredRows(plantId, dateFrom, dateTo, userId, ndjsonWriter::write);
+        ndjsonWriter.flush();
+    }
+
+    /**
+     * Текущие дата и время для имени выгружаемого файла.
+     *
+     * @return строка вида yyyy-MM-dd_HH-mm-ss
+     */
+    private String currentDateTime() {
+        DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
+        return dateFormatter.format(new Date());
     }
-}
+}
\ No newline at end of file
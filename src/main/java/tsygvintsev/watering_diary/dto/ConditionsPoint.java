@@ -0,0 +1,12 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Условия микроклимата, действовавшие на дату.
+ *
+ * @param date дата записи условий
+ * @param temperature температура в градусах Цельсия
+ * @param humidity влажность в %
+ */
+public record ConditionsPoint(LocalDate date, int temperature, int humidity) {}
@@ -0,0 +1,11 @@
+package tsygvintsev.watering_diary.dto;
+
+/**
+ * Ряд условий микроклимата пользователя в колоночном виде (для графиков).
+ * Элементы с одинаковым индексом относятся к одной дате.
+ *
+ * @param dates даты в формате ISO по возрастанию
+ * @param temperature температура в градусах Цельсия
+ * @param humidity влажность в %
+ */
+public record ConditionsSeries(String[] dates, int[] temperature, int[] humidity) {}
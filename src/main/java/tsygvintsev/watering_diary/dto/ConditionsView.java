@@ -0,0 +1,19 @@
+package tsygvintsev.watering_diary.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+
+import java.time.LocalDate;
+
+/**
+ * Условия микроклимата в списках: пользователь передаётся по ID.
+ * Выбираются запросом прямо в этот вид, без загрузки сущностей.
+ *
+ * @param id ID записи
+ * @param userId ID пользователя
+ * @param date дата
+ * @param temperature температура в градусах Цельсия
+ * @param watering влажность в %
+ */
+@JsonFilter(FieldFilteringJsonWriter.FILTER)
+public record ConditionsView(Integer id, Integer userId, LocalDate date, Integer temperature, Integer watering) {}
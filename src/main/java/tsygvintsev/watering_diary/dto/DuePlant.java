@@ -0,0 +1,15 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Растение и оценка даты его следующего полива.
+ *
+ * @param userPlantId ID растения
+ * @param userId ID владельца
+ * @param dueDate дата, к которой растение нужно полить
+ * @param lastWateringDate дата последнего полива (null, если поливов не было)
+ * @param intervalDays оценка интервала между поливами в днях
+ */
+public record DuePlant(Integer userPlantId, Integer userId, LocalDate dueDate,
+                       LocalDate lastWateringDate, int intervalDays) {}
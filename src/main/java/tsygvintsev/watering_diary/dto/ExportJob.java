@@ -0,0 +1,92 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Состояние фоновой выгрузки записей полива.
+ */
+public class ExportJob {
+
+    /** Статус выгрузки */
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final String format;
+    private final Integer userId;
+    private final long createdAt;
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long totalRows;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile Path file;
+    private volatile long lastDownloadAt;
+
+    public ExportJob(String id, String format, Integer userId) {
+        this.id = id;
+        this.format = format;
+        this.userId = userId;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public String getId() { return id; }
+
+    public String getFormat() { return format; }
+
+    public Integer getUserId() { return userId; }
+
+    public long getCreatedAt() { return createdAt; }
+
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
+    public long getTotalRows() { return totalRows; }
+    public void setTotalRows(long totalRows) { this.totalRows = totalRows; }
+
+    public long getRowsWritten() { return rowsWritten.get(); }
+
+    /** Увеличить счётчик записанных строк */
+    public void rowWritten() { rowsWritten.incrementAndGet(); }
+
+    /** Прогресс выгрузки от 0 до 100 */
+    public int getProgress() {
+        if (status == Status.DONE) {
+            return 100;
+        }
+        long total = totalRows;
+        return total == 0 ? 0 : (int) Math.min(99, rowsWritten.get() * 100 / total);
+    }
+
+    public long getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(long finishedAt) { this.finishedAt = finishedAt; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    /**
+     * Файл с результатом во временном каталоге (в ответ не сериализуется).
+     *
+     * @return путь к файлу или null
+     */
+    public Path file() { return file; }
+    public void attachFile(Path file) { this.file = file; }
+
+    /** Отметить начало скачивания файла */
+    public void downloadStarted() {
+        activeDownloads.incrementAndGet();
+        lastDownloadAt = System.currentTimeMillis();
+    }
+
+    /** Отметить окончание скачивания файла */
+    public void downloadFinished() { activeDownloads.decrementAndGet(); }
+
+    /** Идёт ли сейчас скачивание файла */
+    public boolean hasActiveDownloads() { return activeDownloads.get() > 0; }
+
+    /** Время начала последнего скачивания или 0 */
+    public long lastDownloadAt() { return lastDownloadAt; }
+}
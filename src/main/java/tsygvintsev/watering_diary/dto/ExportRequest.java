@@ -0,0 +1,32 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Параметры фоновой выгрузки записей полива.
+ */
+public class ExportRequest {
+    /** Формат файла: excel, csv или ndjson */
+    private String format;
+    private Integer plantId;
+    private LocalDate dateFrom;
+    private LocalDate dateTo;
+    private Integer userId;
+
+    public ExportRequest() {}
+
+    public String getFormat() { return format; }
+    public void setFormat(String format) { this.format = format; }
+
+    public Integer getPlantId() { return plantId; }
+    public void setPlantId(Integer plantId) { this.plantId = plantId; }
+
+    public LocalDate getDateFrom() { return dateFrom; }
+    public void setDateFrom(LocalDate dateFrom) { this.dateFrom = dateFrom; }
+
+    public LocalDate getDateTo() { return dateTo; }
+    public void setDateTo(LocalDate dateTo) { this.dateTo = dateTo; }
+
+    public Integer getUserId() { return userId; }
+    public void setUserId(Integer userId) { this.userId = userId; }
+}
@@ -0,0 +1,57 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Итог импорта записей полива из файла.
+ * Список ошибок ограничен, общее количество отклонённых строк считается всегда.
+ */
+public class ImportReport {
+
+    /** Максимальное количество ошибок в отчёте */
+    private static final int MAX_ERRORS = 500;
+
+    /**
+     * Ошибка в строке файла.
+     *
+     * @param row номер строки
+     * @param message причина отклонения
+     */
+    public record RowError(int row, String message) {}
+
+    private int imported;
+    private int rejected;
+    private final List<RowError> errors = new ArrayList<>();
+
+    public int getImported() { return imported; }
+
+    public int getRejected() { return rejected; }
+
+    public List<RowError> getErrors() { return errors; }
+
+    /** Есть ли в отчёте не все ошибки */
+    public boolean isErrorsTruncated() { return rejected > errors.size(); }
+
+    /**
+     * Учесть импортированные строки.
+     *
+     * @param count количество строк
+     */
+    public void addImported(int count) {
+        imported += count;
+    }
+
+    /**
+     * Учесть отклонённую строку.
+     *
+     * @param row номер строки
+     * @param message причина отклонения
+     */
+    public void reject(int row, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new RowError(row, message));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Накопленные показатели растения из таблицы Plant_stats.
+ * Среднее и дисперсия погрешности вычисляются из сумм за O(1).
+ *
+ * @param userPlantId ID растения
+ * @param recordCount количество записей полива
+ * @param volumeSum суммарный объём полива в мл
+ * @param avgErrorRateK средняя погрешность (null, если записей нет)
+ * @param errorRateKVariance дисперсия погрешности (null, если записей нет)
+ * @param lastDate дата последнего полива
+ * @param daysSinceLastWatering дней с последнего полива (null, если записей нет)
+ */
+public record PlantStats(Integer userPlantId, long recordCount, long volumeSum,
+                         Double avgErrorRateK, Double errorRateKVariance,
+                         LocalDate lastDate, Long daysSinceLastWatering) {
+
+    /**
+     * Собрать показатели из сумм.
+     *
+     * @param userPlantId ID растения
+     * @param count количество записей
+     * @param volumeSum сумма объёмов
+     * @param errorSum сумма погрешностей
+     * @param errorSquareSum сумма квадратов погрешностей
+     * @param lastDate дата последнего полива
+     * @param today текущая дата
+     * @return показатели растения
+     */
+    public static PlantStats of(Integer userPlantId, long count, long volumeSum, long errorSum,
+                                long errorSquareSum, LocalDate lastDate, LocalDate today) {
+        if (count <= 0) {
+            return new PlantStats(userPlantId, 0, 0, null, null, null, null);
+        }
+        double mean = (double) errorSum / count;
+        double variance = Math.max(0.0, (double) errorSquareSum / count - mean * mean);
+        Long daysSince = lastDate != null ? today.toEpochDay() - lastDate.toEpochDay() : null;
+        return new PlantStats(userPlantId, count, volumeSum, mean, variance, lastDate, daysSince);
+    }
+}
@@ -0,0 +1,12 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.util.List;
+
+/**
+ * Расход воды пользователя по периодам.
+ *
+ * @param granularity период: month или year
+ * @param plants строки по растениям
+ * @param plantTypes строки по типам растений
+ */
+public record UsageReport(String granularity, List<UsageRow> plants, List<UsageRow> plantTypes) {}
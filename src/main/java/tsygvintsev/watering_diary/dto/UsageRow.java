@@ -0,0 +1,16 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Расход воды за период по растению или типу растения.
+ *
+ * @param id ID растения или типа растения
+ * @param name название
+ * @param period первый день периода (месяца или года)
+ * @param wateringCount количество поливов
+ * @param totalVolume суммарный объём в мл
+ * @param avgErrorRateK средняя погрешность
+ */
+public record UsageRow(Integer id, String name, LocalDate period,
+                       long wateringCount, long totalVolume, double avgErrorRateK) {}
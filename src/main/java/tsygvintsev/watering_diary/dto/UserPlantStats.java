@@ -0,0 +1,26 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Сводка по записям полива одного растения для панели дневника.
+ */
+public interface UserPlantStats {
+    Integer getUserPlantId();
+
+    String getName();
+
+    Long getRecordCount();
+
+    LocalDate getLastDate();
+
+    Integer getLastVolume();
+
+    Double getAvgErrorRateK();
+
+    Integer getLastErrorRateK();
+
+    Long getVolume7Days();
+
+    Long getVolume30Days();
+}
@@ -0,0 +1,21 @@
+package tsygvintsev.watering_diary.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+
+/**
+ * Растение пользователя в списках: тип, владелец и материал передаются по ID.
+ * Выбирается запросом прямо в этот вид, без загрузки сущностей.
+ *
+ * @param id ID растения
+ * @param name имя растения
+ * @param plantTypeId ID типа растения
+ * @param userId ID пользователя
+ * @param materialId ID материала
+ * @param high высота в см
+ * @param potSize размер горшка в см
+ * @param soilLoosenerk коэффициент разрыхлителей в %
+ */
+@JsonFilter(FieldFilteringJsonWriter.FILTER)
+public record UserPlantView(Integer id, String name, Integer plantTypeId, Integer userId, Integer materialId,
+                            Integer high, Integer potSize, Integer soilLoosenerk) {}
@@ -0,0 +1,12 @@
+package tsygvintsev.watering_diary.dto;
+
+/**
+ * Пользователь в списках, без хэша пароля.
+ *
+ * @param id ID пользователя
+ * @param login логин
+ * @param surname фамилия
+ * @param name имя
+ * @param patronymic отчество
+ */
+public record UserView(Integer id, String login, String surname, String name, String patronymic) {}
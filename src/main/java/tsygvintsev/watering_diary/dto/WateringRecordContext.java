@@ -0,0 +1,40 @@
+package tsygvintsev.watering_diary.dto;
+
+/**
+ * Данные для проверки и расчёта погрешности новой записи полива,
+ * загружаемые одним запросом.
+ */
+public interface WateringRecordContext {
+    /** ID растения пользователя */
+    Integer getUserPlantId();
+
+    /** ID владельца растения */
+    Integer getUserId();
+
+    /** Высота растения в см */
+    Integer getHigh();
+
+    /** Размер горшка в см */
+    Integer getPotSize();
+
+    /** Коэффициент разрыхлителей в % */
+    Integer getSoilLoosenerK();
+
+    /** ID типа растения, null если тип не задан */
+    Integer getPlantTypeId();
+
+    /** ID материала, null если материал не задан */
+    Integer getMaterialId();
+
+    /** Температура из последних условий владельца, null если условий нет */
+    Integer getTemperature();
+
+    /** Влажность из последних условий владельца */
+    Integer getHumidity();
+
+    /** Погрешность предыдущей записи полива, null если записей раньше нет */
+    Integer getPreviousErrorRateK();
+
+    /** Есть ли уже запись полива этого растения на эту дату */
+    Boolean getDuplicateDate();
+}
@@ -0,0 +1,14 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Дата и погрешность записи полива (проекция без остальных полей).
+ */
+public interface WateringRecordHistoryPoint {
+    Integer getUserPlantId();
+
+    LocalDate getDate();
+
+    Integer getErrorRateK();
+}
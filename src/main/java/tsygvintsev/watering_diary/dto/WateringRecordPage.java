@@ -0,0 +1,23 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.util.List;
+
+/**
+ * Страница записей полива с курсором на следующую страницу.
+ * Записи передаются видом {@link WateringRecordView}, растение — по ID.
+ */
+public class WateringRecordPage {
+    private List<WateringRecordView> items;
+    private String next;
+
+    public WateringRecordPage(List<WateringRecordView> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<WateringRecordView> getItems() { return items; }
+    public void setItems(List<WateringRecordView> items) { this.items = items; }
+
+    public String getNext() { return next; }
+    public void setNext(String next) { this.next = next; }
+}
@@ -0,0 +1,19 @@
+package tsygvintsev.watering_diary.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Строка выгрузки записи полива, прочитанная напрямую из JDBC-курсора.
+ *
+ * @param id ID записи
+ * @param userPlantId ID растения
+ * @param plantName имя растения
+ * @param plantType название типа растения
+ * @param date дата
+ * @param time время
+ * @param volumeWatering объём полива в мл
+ * @param errorRateK погрешность полива в мл
+ */
+public record WateringRecordRow(Integer id, Integer userPlantId, String plantName, String plantType,
+                                LocalDate date, LocalTime time, Integer volumeWatering, Integer errorRateK) {}
@@ -0,0 +1,40 @@
+package tsygvintsev.watering_diary.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.util.FieldFilteringJsonWriter;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Comparator;
+
+/**
+ * Запись полива в списках: только собственные колонки, растение передаётся по ID.
+ * Выбирается запросом прямо в этот вид, без загрузки сущностей.
+ *
+ * @param id ID записи
+ * @param userPlantId ID растения
+ * @param date дата
+ * @param time время
+ * @param volumeWatering объём полива в мл
+ * @param errorRateK погрешность полива в мл
+ */
+@JsonFilter(FieldFilteringJsonWriter.FILTER)
+public record WateringRecordView(Integer id, Integer userPlantId, LocalDate date, LocalTime time,
+                                 Integer volumeWatering, Integer errorRateK) {
+
+    /** Порядок выдачи: по дате и ID от новых к старым */
+    public static final Comparator<WateringRecordView> NEWEST_FIRST =
+            Comparator.comparing(WateringRecordView::date).thenComparing(WateringRecordView::id).reversed();
+
+    /**
+     * Вид записи, прочитанной не из базы (например, из архива).
+     *
+     * @param record запись
+     * @return вид записи
+     */
+    public static WateringRecordView of(WateringRecord record) {
+        return new WateringRecordView(record.getId(), record.getUserPlantId(), record.getDate(),
+                record.getTime(), record.getVolumeWatering(), record.getErrorRateK());
+    }
+}
@@ -1,5 +1,6 @@
 package tsygvintsev.watering_diary.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
@@ -32,7 +33,8 @@ public class Conditions {
     @Column(name = "watering", nullable = false, unique = true)
     private Integer watering;
 
-    @ManyToOne
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", referencedColumnName = "id", insertable = false, updatable = false)
     private User user;
 
@@ -1,5 +1,6 @@
 package tsygvintsev.watering_diary.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 
 /**
@@ -8,6 +9,7 @@ import jakarta.persistence.*;
  */
 @Entity
 @Table(name = "Plant_type")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class PlantType {
     /** Уникальный идентификатор типа */
     @Id
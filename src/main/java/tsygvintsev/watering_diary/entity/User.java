@@ -1,5 +1,7 @@
 package tsygvintsev.watering_diary.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 
 /**
@@ -7,6 +9,7 @@ import jakarta.persistence.*;
  */
 @Entity
 @Table(name = "User")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class User {
     /** Уникальный идентификатор пользователя */
     @Id
@@ -18,7 +21,8 @@ public class User {
     @Column(name = "login", length = 20, nullable = false, unique = true)
     private String login;
 
-    /** Пароль пользователя */
+    /** Пароль пользователя; принимается в запросах, но никогда не отдаётся в ответах */
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     @Column(name = "password", length = 16, nullable = false)
     private String password;
 
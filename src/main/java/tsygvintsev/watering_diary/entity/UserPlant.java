@@ -1,13 +1,17 @@
 package tsygvintsev.watering_diary.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 
 /**
  * Сущность растения пользователя.
  * Хранит параметры растения для расчёта полива.
+ * Связи загружаются лениво и в ответах передаются только по ID.
  */
 @Entity
 @Table(name = "User_plant")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class UserPlant {
     /** Уникальный идентификатор растения */
     @Id
@@ -43,15 +47,18 @@ public class UserPlant {
     @Column(name = "soil_loosener_k")
     private Integer soilLoosenerk;
 
-    @ManyToOne
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "plant_type_id", insertable = false, updatable = false)
     private PlantType plantType;
 
-    @ManyToOne
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", insertable = false, updatable = false)
     private User user;
 
-    @ManyToOne
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "material_id", insertable = false, updatable = false)
     private Material material;
 
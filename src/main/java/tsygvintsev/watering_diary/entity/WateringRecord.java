@@ -1,5 +1,6 @@
 package tsygvintsev.watering_diary.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -7,14 +8,35 @@ import java.time.LocalTime;
 /**
  * Сущность записи полива.
  * Хранит историю поливов с погрешностью относительно рекомендации.
+ * Растение загружается лениво, при необходимости графом {@link #WITH_PLANT};
+ * в ответах оно передаётся только по ID.
  */
 @Entity
 @Table(name = "Watering_record")
+@NamedEntityGraph(name = WateringRecord.WITH_PLANT,
+        attributeNodes = @NamedAttributeNode(value = "userPlant", subgraph = "plant"),
+        subgraphs = @NamedSubgraph(name = "plant", attributeNodes = {
+                @NamedAttributeNode("plantType"),
+                @NamedAttributeNode("user"),
+                @NamedAttributeNode("material")}))
 public class WateringRecord {
+    /** Граф загрузки записи вместе с растением, его типом, владельцем и материалом */
+    public static final String WITH_PLANT = "WateringRecord.withPlant";
+
+    /** Последовательность идентификаторов записей */
+    public static final String ID_SEQUENCE = "Watering_record_id_seq";
+
+    /**
+     * Шаг последовательности. Hibernate резервирует сразу столько идентификаторов
+     * за одно обращение к базе, что позволяет вставлять записи пакетами.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     /** Уникальный идентификатор записи */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "id", unique = true, insertable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "watering_record_id")
+    @SequenceGenerator(name = "watering_record_id", sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
+    @Column(name = "id", unique = true, updatable = false)
     private Integer id;
 
     /** ID растения пользователя */
@@ -41,7 +63,8 @@ public class WateringRecord {
     @Column(name = "error_rate_k", nullable = false)
     private Integer errorRateK;
 
-    @ManyToOne
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_plant_id", insertable = false, updatable = false)
     private UserPlant userPlant;
 
@@ -0,0 +1,103 @@
+package tsygvintsev.watering_diary.filter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import tsygvintsev.watering_diary.service.AccessControlService;
+import tsygvintsev.watering_diary.service.SessionTokenService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Фильтр проверки сессионного токена для запросов к API.
+ * Токен передаётся в заголовке {@code Authorization: Bearer <token>}.
+ * Без токена доступны только вход, регистрация и чтение справочников.
+ * ID пользователя из пути ({@code /user/{userId}}, {@code /api/users/{id}})
+ * и из параметра userId должен совпадать с владельцем токена (кроме администраторов).
+ * Проверенный ID пользователя сохраняется в атрибуте запроса {@link #USER_ID_ATTRIBUTE};
+ * владельца данных, адресуемых по их собственному ID, проверяют сервисы через {@link AccessControlService}.
+ */
+@Component
+public class SessionTokenFilter extends OncePerRequestFilter {
+
+    /** Атрибут запроса с ID пользователя из токена */
+    public static final String USER_ID_ATTRIBUTE = "watering.session.userId";
+
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final Pattern USER_PATH = Pattern.compile("^/api/(?:users|[a-z-]+(?:/[a-z-]+)*/user)/(\\d+)(?:/.*)?$");
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
+    @Value("${watering.session.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith("/api/")) {
+            return true;
+        }
+
+        String method = request.getMethod();
+        return "OPTIONS".equals(method)
+                || "POST".equals(method) && (path.equals("/api/users/login") || path.equals("/api/users"))
+                || "GET".equals(method) && (path.startsWith("/api/plant-types") || path.startsWith("/api/materials"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        Integer userId = header != null && header.startsWith(BEARER_PREFIX)
+                ? sessionTokenService.verify(header.substring(BEARER_PREFIX.length()).trim())
+                : null;
+
+        if (userId == null) {
+            reject(response, HttpStatus.UNAUTHORIZED, "Требуется вход в систему.");
+            return;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = USER_PATH.matcher(path);
+        if (!accessControlService.isAdmin(userId)
+                && (matcher.matches() && !matcher.group(1).equals(userId.toString())
+                        || !isOwnUserParameter(request.getParameter("userId"), userId))) {
+            reject(response, HttpStatus.FORBIDDEN, "Нет доступа к данным другого пользователя.");
+            return;
+        }
+
+        request.setAttribute(USER_ID_ATTRIBUTE, userId);
+        filterChain.doFilter(request, response);
+    }
+
+    private static boolean isOwnUserParameter(String value, Integer userId) {
+        return value == null || value.isEmpty() || value.trim().equals(userId.toString());
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"message\":\"" + message + "\",\"status\":" + status.value()
+                + ",\"timestamp\":" + System.currentTimeMillis() + "}");
+    }
+}
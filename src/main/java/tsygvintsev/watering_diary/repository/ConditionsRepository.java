@@ -13,6 +13,8 @@ import java.util.Optional;
 @Repository
 public interface ConditionsRepository extends JpaRepository<Conditions, Integer> {
     boolean existsByUserIdAndDate(Integer userId, LocalDate date);
-    List<Conditions> findByUserId(Integer userId);
+
     Optional<Conditions> findFirstByUserIdOrderByDateDesc(Integer userId);
+    Optional<Conditions> findFirstByUserIdAndDateLessThanEqualOrderByDateDesc(Integer userId, LocalDate date);
+    List<Conditions> findByUserIdOrderByDate(Integer userId);
 }
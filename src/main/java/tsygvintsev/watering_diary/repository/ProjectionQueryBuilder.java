@@ -0,0 +1,71 @@
+package tsygvintsev.watering_diary.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+import tsygvintsev.watering_diary.util.FieldSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Выборка видов сущностей с узким списком колонок.
+ * В SELECT попадают только поля из {@link FieldSet}; сущности не создаются
+ * и не попадают в контекст постоянства.
+ */
+@Repository
+public class ProjectionQueryBuilder {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Выбрать виды сущностей.
+     *
+     * @param entity класс сущности, чьи атрибуты совпадают с полями вида
+     * @param fields набор выбираемых полей
+     * @param where условие выборки (необязательно)
+     * @param sort порядок
+     * @param limit максимальное количество строк (необязательно)
+     * @param <E> тип сущности
+     * @param <V> тип вида
+     * @return виды, невыбранные поля которых равны null
+     */
+    public <E, V extends Record> List<V> list(Class<E> entity, FieldSet<V> fields, Specification<E> where,
+                                              Sort sort, Integer limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<E> root = query.from(entity);
+
+        query.multiselect(fields.selected().stream()
+                .<Selection<?>>map(name -> root.get(name).alias(name))
+                .toList());
+        if (where != null) {
+            query.where(where.toPredicate(root, query, cb));
+        }
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            orders.add(order.isAscending()
+                    ? cb.asc(root.get(order.getProperty()))
+                    : cb.desc(root.get(order.getProperty())));
+        }
+        query.orderBy(orders);
+
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (limit != null) {
+            typed.setMaxResults(limit);
+        }
+        return typed.getResultList().stream()
+                .map(tuple -> fields.newView(tuple::get))
+                .toList();
+    }
+}
@@ -1,10 +1,15 @@
 package tsygvintsev.watering_diary.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import tsygvintsev.watering_diary.dto.UserPlantStats;
 import tsygvintsev.watering_diary.entity.UserPlant;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Репозиторий для работы с растениями пользователей.
@@ -12,6 +17,47 @@ import java.util.List;
 @Repository
 public interface UserPlantRepository extends JpaRepository<UserPlant, Integer> {
     boolean existsByNameAndPlantTypeIdAndUserId(String name, Integer plantTypeId, Integer userId);
-    List<UserPlant> findByUserId(Integer userId);
+
+    @Query("SELECT up.userId FROM UserPlant up WHERE up.id = :id")
+    Optional<Integer> findUserIdById(@Param("id") Integer id);
+
     List<UserPlant> findByUserIdOrderById(Integer userId);
+
+    @Query("SELECT up FROM UserPlant up " +
+            "JOIN FETCH up.plantType " +
+            "JOIN FETCH up.material " +
+            "WHERE up.userId = :userId ORDER BY up.id")
+    List<UserPlant> findWithReferencesByUserId(@Param("userId") Integer userId);
+
+    /**
+     * Сводка по записям полива каждого растения пользователя одним запросом с группировкой.
+     * Последние объём и погрешность берутся по самой поздней записи (дата, время, id).
+     * Количество записей и средняя погрешность берутся из накопленных показателей (Plant_stats):
+     * в них учтены и записи, перенесённые в архив. Остальные поля архив не затрагивает:
+     * последняя запись растения остаётся в таблице, а горизонт архива длиннее 30 дней.
+     *
+     * @param userId ID пользователя
+     * @param today текущая дата, от которой считаются объёмы за 7 и 30 дней
+     * @return по строке на каждое растение, включая растения без записей
+     */
+    @Query(value = "SELECT up.id AS \"userPlantId\", up.name AS \"name\", " +
+            "COALESCE(ps.record_count, 0) AS \"recordCount\", " +
+            "MAX(wr.\"date\") AS \"lastDate\", " +
+            "(ARRAY_AGG(wr.volume_watering ORDER BY wr.\"date\" DESC, wr.\"time\" DESC, wr.id DESC) " +
+            "FILTER (WHERE wr.id IS NOT NULL))[1] AS \"lastVolume\", " +
+            "CAST(ps.error_sum AS double precision) / NULLIF(ps.record_count, 0) AS \"avgErrorRateK\", " +
+            "(ARRAY_AGG(wr.error_rate_k ORDER BY wr.\"date\" DESC, wr.\"time\" DESC, wr.id DESC) " +
+            "FILTER (WHERE wr.id IS NOT NULL))[1] AS \"lastErrorRateK\", " +
+            "COALESCE(SUM(wr.volume_watering) FILTER (WHERE wr.\"date\" > CAST(:today AS date) - 7), 0) " +
+            "AS \"volume7Days\", " +
+            "COALESCE(SUM(wr.volume_watering) FILTER (WHERE wr.\"date\" > CAST(:today AS date) - 30), 0) " +
+            "AS \"volume30Days\" " +
+            "FROM \"User_plant\" up " +
+            "LEFT JOIN \"Plant_stats\" ps ON ps.user_plant_id = up.id " +
+            "LEFT JOIN \"Watering_record\" wr ON wr.user_plant_id = up.id " +
+            "WHERE up.user_id = :userId " +
+            "GROUP BY up.id, up.name, ps.record_count, ps.error_sum " +
+            "ORDER BY up.id",
+            nativeQuery = true)
+    List<UserPlantStats> findStatsByUserId(@Param("userId") Integer userId, @Param("today") LocalDate today);
 }
@@ -1,9 +1,13 @@
 package tsygvintsev.watering_diary.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import tsygvintsev.watering_diary.dto.UserView;
 import tsygvintsev.watering_diary.entity.User;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -13,4 +17,11 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByLogin(String login);
     boolean existsByLogin(String login);
+
+    @Query("SELECT u.password FROM User u WHERE u.id = :id")
+    Optional<String> findPasswordById(@Param("id") Integer id);
+
+    @Query("SELECT new tsygvintsev.watering_diary.dto.UserView(u.id, u.login, u.surname, u.name, u.patronymic) " +
+            "FROM User u ORDER BY u.id")
+    List<UserView> findAllViews();
 }
@@ -1,22 +1,78 @@
 package tsygvintsev.watering_diary.repository;
 
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import tsygvintsev.watering_diary.dto.WateringRecordContext;
+import tsygvintsev.watering_diary.dto.WateringRecordHistoryPoint;
 import tsygvintsev.watering_diary.entity.WateringRecord;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * Репозиторий для работы с записями о поливе растений.
+ * Страницы записей выбираются видами через {@link ProjectionQueryBuilder};
+ * методы, отдающие сущности вместе с растением, загружают его графом {@link WateringRecord#WITH_PLANT}.
  */
 @Repository
-public interface WateringRecordRepository extends JpaRepository<WateringRecord, Integer> {
+public interface WateringRecordRepository extends JpaRepository<WateringRecord, Integer>,
+        JpaSpecificationExecutor<WateringRecord> {
     boolean existsByUserPlantIdAndDate(Integer userPlantId, LocalDate date);
     List<WateringRecord> findByUserPlantId(Integer userPlantId);
     Optional<WateringRecord> findFirstByUserPlantIdOrderByDateDesc(Integer userPlantId);
     Optional<WateringRecord> findFirstByUserPlantIdAndDateBeforeOrderByDateDesc(
             Integer userPlantId, LocalDate date);
     List<WateringRecord> findByUserPlantIdInOrderByDateDesc(List<Integer> userPlantIds);
+
+    @Override
+    @EntityGraph(WateringRecord.WITH_PLANT)
+    List<WateringRecord> findAll(Specification<WateringRecord> specification, Sort sort);
+
+    List<WateringRecordHistoryPoint> findHistoryByUserPlantId(Integer userPlantId);
+    List<WateringRecordHistoryPoint> findHistoryByUserPlantIdInAndDateGreaterThanEqual(
+            Collection<Integer> userPlantIds, LocalDate date);
+
+    @Query("SELECT wr FROM WateringRecord wr " +
+            "WHERE wr.userPlantId IN :userPlantIds " +
+            "AND wr.date = (SELECT MAX(last.date) FROM WateringRecord last " +
+            "WHERE last.userPlantId = wr.userPlantId)")
+    List<WateringRecord> findLastByUserPlantIdIn(@Param("userPlantIds") List<Integer> userPlantIds);
+
+    /**
+     * Общая часть запросов контекста: растение, последние условия владельца
+     * и предыдущая запись до :date. Коэффициенты типа и материала берутся из снимка справочников.
+     */
+    String CONTEXT_SELECT = "SELECT up.id AS \"userPlantId\", " +
+            "up.user_id AS \"userId\", " +
+            "up.high AS \"high\", " +
+            "up.pot_size AS \"potSize\", " +
+            "up.soil_loosener_k AS \"soilLoosenerK\", " +
+            "up.plant_type_id AS \"plantTypeId\", " +
+            "up.material_id AS \"materialId\", " +
+            "c.temperature AS \"temperature\", " +
+            "c.watering AS \"humidity\", " +
+            "prev.error_rate_k AS \"previousErrorRateK\", " +
+            "EXISTS (SELECT 1 FROM \"Watering_record\" d " +
+            "WHERE d.user_plant_id = up.id AND d.\"date\" = :date) AS \"duplicateDate\" " +
+            "FROM \"User_plant\" up " +
+            "LEFT JOIN LATERAL (SELECT temperature, watering FROM \"Conditions\" " +
+            "WHERE user_id = up.user_id ORDER BY \"date\" DESC LIMIT 1) c ON TRUE " +
+            "LEFT JOIN LATERAL (SELECT error_rate_k FROM \"Watering_record\" " +
+            "WHERE user_plant_id = up.id AND \"date\" < :date ORDER BY \"date\" DESC LIMIT 1) prev ON TRUE ";
+
+    @Query(value = CONTEXT_SELECT + " WHERE up.id = :userPlantId", nativeQuery = true)
+    Optional<WateringRecordContext> findContext(@Param("userPlantId") Integer userPlantId,
+                                                @Param("date") LocalDate date);
+
+    @Query(value = CONTEXT_SELECT + " WHERE up.id IN (:userPlantIds)", nativeQuery = true)
+    List<WateringRecordContext> findContexts(@Param("userPlantIds") Collection<Integer> userPlantIds,
+                                             @Param("date") LocalDate date);
 }
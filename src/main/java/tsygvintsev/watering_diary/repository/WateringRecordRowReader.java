@@ -0,0 +1,106 @@
+package tsygvintsev.watering_diary.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import tsygvintsev.watering_diary.dto.WateringRecordRow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение записей полива для выгрузки напрямую через JDBC-курсор, без создания сущностей.
+ */
+@Repository
+public class WateringRecordRowReader {
+
+    /** Количество строк, получаемых с сервера за один раз */
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Обработчик строки выгрузки.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void handle(WateringRecordRow row) throws IOException;
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Прочитать отфильтрованные записи пользователя и передать их обработчику по одной.
+     * Должен вызываться внутри транзакции, иначе драйвер PostgreSQL не использует курсор.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
+     * @param handler обработчик строк
+     * @throws IOException при ошибке записи в обработчике
+     */
+    public void forEachRow(Integer plantId, LocalDate dateFrom, LocalDate dateTo, Integer userId,
+                           RowHandler handler) throws IOException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT wr.id, wr.user_plant_id, up.name AS plant_name, pt.name AS plant_type, " +
+                "wr.\"date\", wr.\"time\", wr.volume_watering, wr.error_rate_k " +
+                "FROM \"Watering_record\" wr " +
+                "JOIN \"User_plant\" up ON up.id = wr.user_plant_id " +
+                "LEFT JOIN \"Plant_type\" pt ON pt.id = up.plant_type_id " +
+                "WHERE up.user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+
+        if (plantId != null) {
+            sql.append(" AND wr.user_plant_id = ?");
+            params.add(plantId);
+        }
+
+        if (dateFrom != null) {
+            sql.append(" AND wr.\"date\" >= ?");
+            params.add(dateFrom);
+        }
+
+        if (dateTo != null) {
+            sql.append(" AND wr.\"date\" <= ?");
+            params.add(dateTo);
+        }
+
+        sql.append(" ORDER BY wr.\"date\" DESC, wr.id DESC");
+
+        try {
+            jdbcTemplate.query(
+                    connection -> {
+                        PreparedStatement statement = connection.prepareStatement(sql.toString());
+                        statement.setFetchSize(FETCH_SIZE);
+                        for (int i = 0; i < params.size(); i++) {
+                            statement.setObject(i + 1, params.get(i));
+                        }
+                        return statement;
+                    },
+                    (RowCallbackHandler) resultSet -> {
+                        try {
+                            handler.handle(new WateringRecordRow(
+                                    resultSet.getInt("id"),
+                                    resultSet.getInt("user_plant_id"),
+                                    resultSet.getString("plant_name"),
+                                    resultSet.getString("plant_type"),
+                                    resultSet.getObject("date", LocalDate.class),
+                                    resultSet.getObject("time", LocalTime.class),
+                                    resultSet.getInt("volume_watering"),
+                                    resultSet.getInt("error_rate_k")));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tsygvintsev.watering_diary.repository;
+
+import jakarta.persistence.criteria.Join;
+import org.springframework.data.jpa.domain.Specification;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Условия выборки записей полива для динамических запросов.
+ * Все фильтры применяются на стороне базы данных.
+ */
+public final class WateringRecordSpecifications {
+
+    private WateringRecordSpecifications() {}
+
+    /**
+     * Записи растений пользователя (через User_plant.user_id).
+     *
+     * @param userId ID пользователя
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> ownedBy(Integer userId) {
+        return (root, query, cb) -> {
+            Join<WateringRecord, UserPlant> userPlant = root.join("userPlant");
+            return cb.equal(userPlant.get("userId"), userId);
+        };
+    }
+
+    /**
+     * Записи конкретного растения.
+     *
+     * @param userPlantId ID растения
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> forPlant(Integer userPlantId) {
+        return (root, query, cb) -> cb.equal(root.get("userPlantId"), userPlantId);
+    }
+
+    /**
+     * Записи начиная с даты (включительно).
+     *
+     * @param dateFrom начальная дата
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> dateFrom(LocalDate dateFrom) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("date"), dateFrom);
+    }
+
+    /**
+     * Записи до даты (включительно).
+     *
+     * @param dateTo конечная дата
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> dateTo(LocalDate dateTo) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("date"), dateTo);
+    }
+
+    /**
+     * Записи, идущие после курсора в порядке (дата, ID) от новых к старым.
+     *
+     * @param date дата последней выданной записи
+     * @param id ID последней выданной записи
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> olderThan(LocalDate date, Integer id) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("date"), date),
+                cb.and(cb.equal(root.get("date"), date), cb.lessThan(root.get("id"), id)));
+    }
+
+    /**
+     * Собрать фильтр записей пользователя по необязательным параметрам.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
+     * @return условие выборки
+     */
+    public static Specification<WateringRecord> filter(Integer plantId, LocalDate dateFrom,
+                                                       LocalDate dateTo, Integer userId) {
+        List<Specification<WateringRecord>> specifications = new ArrayList<>();
+        specifications.add(ownedBy(userId));
+
+        if (plantId != null) {
+            specifications.add(forPlant(plantId));
+        }
+
+        if (dateFrom != null) {
+            specifications.add(dateFrom(dateFrom));
+        }
+
+        if (dateTo != null) {
+            specifications.add(dateTo(dateTo));
+        }
+
+        return Specification.allOf(specifications);
+    }
+}
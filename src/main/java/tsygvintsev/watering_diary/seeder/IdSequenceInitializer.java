@@ -0,0 +1,44 @@
+package tsygvintsev.watering_diary.seeder;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+/**
+ * Класс для проверки последовательности идентификаторов записей полива.
+ * Шаг последовательности должен совпадать с allocationSize в {@link WateringRecord},
+ * иначе выделенные Hibernate диапазоны пересекутся. Последовательность создаётся миграцией
+ * db/migration/V1__watering_record_id_sequence.sql; если её нет или шаг другой,
+ * приложение не запускается. Выполняется при старте приложения до приёма запросов.
+ */
+@Component
+public class IdSequenceInitializer implements InitializingBean {
+
+    private static final String MIGRATION = "db/migration/V1__watering_record_id_sequence.sql";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdSequenceInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Long increment = jdbcTemplate.query(
+                "SELECT increment_by FROM pg_sequences WHERE sequencename = ?",
+                rs -> rs.next() ? rs.getLong(1) : null,
+                WateringRecord.ID_SEQUENCE);
+
+        if (increment == null) {
+            throw new IllegalStateException("Не найдена последовательность \"" + WateringRecord.ID_SEQUENCE
+                    + "\". Примените миграцию " + MIGRATION + ".");
+        }
+
+        if (increment != WateringRecord.ID_ALLOCATION_SIZE) {
+            throw new IllegalStateException("Шаг последовательности \"" + WateringRecord.ID_SEQUENCE + "\" равен "
+                    + increment + ", ожидается " + WateringRecord.ID_ALLOCATION_SIZE
+                    + ". Примените миграцию " + MIGRATION + ".");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package tsygvintsev.watering_diary.seeder;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Класс для проверки таблицы накопленных показателей растений.
+ * Таблица создаётся и заполняется миграцией db/migration/V2__plant_stats.sql;
+ * если её нет, приложение не запускается.
+ * Выполняется при старте приложения до приёма запросов.
+ */
+@Component
+public class PlantStatsInitializer implements InitializingBean {
+
+    private static final String MIGRATION = "db/migration/V2__plant_stats.sql";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PlantStatsInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('\"Plant_stats\"') IS NOT NULL", Boolean.class);
+        if (!Boolean.TRUE.equals(exists)) {
+            throw new IllegalStateException("Не найдена таблица \"Plant_stats\". Примените миграцию "
+                    + MIGRATION + ".");
+        }
+    }
+}
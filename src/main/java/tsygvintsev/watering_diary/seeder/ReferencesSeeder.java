@@ -6,6 +6,7 @@ import tsygvintsev.watering_diary.entity.Material;
 import tsygvintsev.watering_diary.entity.PlantType;
 import tsygvintsev.watering_diary.repository.MaterialRepository;
 import tsygvintsev.watering_diary.repository.PlantTypeRepository;
+import tsygvintsev.watering_diary.service.ReferenceDataService;
 
 /**
  * Класс для начальной загрузки данных типов растений и материалов горшков в базу.
@@ -16,17 +17,21 @@ public class ReferencesSeeder implements CommandLineRunner {
 
     private final MaterialRepository materialRepository;
     private final PlantTypeRepository plantTypeRepository;
+    private final ReferenceDataService referenceDataService;
 
     public ReferencesSeeder(MaterialRepository materialRepository,
-                          PlantTypeRepository plantTypeRepository) {
+                          PlantTypeRepository plantTypeRepository,
+                          ReferenceDataService referenceDataService) {
         this.materialRepository = materialRepository;
         this.plantTypeRepository = plantTypeRepository;
+        this.referenceDataService = referenceDataService;
     }
 
     @Override
     public void run(String... args) throws Exception {
         seedMaterials();
         seedPlantTypes();
+        referenceDataService.reload();
     }
 
     private void seedMaterials() {
@@ -0,0 +1,38 @@
+package tsygvintsev.watering_diary.seeder;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Класс для проверки таблиц помесячного и погодового расхода воды.
+ * Таблицы создаются и заполняются миграцией db/migration/V3__usage_rollups.sql;
+ * если какой-то из них нет, приложение не запускается.
+ * Выполняется при старте приложения до приёма запросов.
+ */
+@Component
+public class UsageRollupInitializer implements InitializingBean {
+
+    private static final String MIGRATION = "db/migration/V3__usage_rollups.sql";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UsageRollupInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        checkExists("Usage_monthly");
+        checkExists("Usage_yearly");
+    }
+
+    private void checkExists(String table) {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('\"" + table + "\"') IS NOT NULL", Boolean.class);
+        if (!Boolean.TRUE.equals(exists)) {
+            throw new IllegalStateException("Не найдена таблица \"" + table + "\". Примените миграцию "
+                    + MIGRATION + ".");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.filter.SessionTokenFilter;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка доступа вошедшего пользователя к данным.
+ * ID пользователя берётся из атрибута запроса {@link SessionTokenFilter#USER_ID_ATTRIBUTE}.
+ * Без вошедшего пользователя проверки отказывают (401 UNAUTHORIZED). Внутренние вызовы
+ * вне запроса (фоновые выгрузки) явно выполняются от имени пользователя через
+ * {@link #runAs(Integer, Runnable)}. Ограничений нет только при выключенной
+ * проверке токенов ({@code watering.session.enabled=false}).
+ *
+ * <p>Администраторы перечисляются в настройке {@code watering.admin.user-ids}:
+ * им доступны общие списки и служебные эндпоинты, а также данные всех пользователей.</p>
+ */
+@Service
+public class AccessControlService {
+
+    /** Пользователь, от имени которого выполняется внутренний вызов в этом потоке */
+    private static final ThreadLocal<Integer> RUN_AS_USER_ID = new ThreadLocal<>();
+
+    private final Set<Integer> adminUserIds;
+    private final boolean enabled;
+
+    public AccessControlService(@Value("${watering.admin.user-ids:}") String adminUserIds,
+                                @Value("${watering.session.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.adminUserIds = Arrays.stream(adminUserIds.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(Integer::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * ID пользователя текущего запроса или внутреннего вызова.
+     *
+     * @return ID пользователя или null, если запрос не проверялся фильтром токенов
+     * и вызов не помечен через {@link #runAs(Integer, Runnable)}
+     */
+    public Integer currentUserId() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return RUN_AS_USER_ID.get();
+        }
+        Integer userId = (Integer) attributes.getAttribute(SessionTokenFilter.USER_ID_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        return userId != null ? userId : RUN_AS_USER_ID.get();
+    }
+
+    /**
+     * Выполнить внутренний вызов от имени пользователя: проверки доступа внутри
+     * действия видят его как вошедшего.
+     *
+     * @param userId ID пользователя
+     * @param action действие
+     */
+    public void runAs(Integer userId, Runnable action) {
+        Integer previous = RUN_AS_USER_ID.get();
+        RUN_AS_USER_ID.set(userId);
+        try {
+            action.run();
+        } finally {
+            if (previous != null) {
+                RUN_AS_USER_ID.set(previous);
+            } else {
+                RUN_AS_USER_ID.remove();
+            }
+        }
+    }
+
+    /**
+     * Является ли пользователь администратором.
+     *
+     * @param userId ID пользователя
+     * @return true, если пользователь указан в watering.admin.user-ids
+     */
+    public boolean isAdmin(Integer userId) {
+        return adminUserIds.contains(userId);
+    }
+
+    /**
+     * Проверить, что данные принадлежат текущему пользователю.
+     *
+     * @param ownerId ID владельца данных
+     * @throws ResponseStatusException если пользователь не вошёл (401 UNAUTHORIZED)
+     * или владелец другой (403 FORBIDDEN)
+     */
+    public void checkOwner(Integer ownerId) {
+        Integer userId = requireUserId();
+        if (userId == null || userId.equals(ownerId) || isAdmin(userId)) {
+            return;
+        }
+        throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                "Нет доступа к данным другого пользователя.");
+    }
+
+    /**
+     * Проверить, что текущий пользователь - администратор.
+     *
+     * @throws ResponseStatusException если пользователь не вошёл (401 UNAUTHORIZED)
+     * или не является администратором (403 FORBIDDEN)
+     */
+    public void checkAdmin() {
+        Integer userId = requireUserId();
+        if (userId == null || isAdmin(userId)) {
+            return;
+        }
+        throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                "Действие доступно только администратору.");
+    }
+
+    /**
+     * ID вошедшего пользователя для проверки доступа.
+     *
+     * @return ID пользователя или null, если проверка токенов выключена
+     * @throws ResponseStatusException если пользователя нет (401 UNAUTHORIZED)
+     */
+    private Integer requireUserId() {
+        if (!enabled) {
+            return null;
+        }
+        Integer userId = currentUserId();
+        if (userId == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED,
+                    "Требуется вход в систему.");
+        }
+        return userId;
+    }
+}
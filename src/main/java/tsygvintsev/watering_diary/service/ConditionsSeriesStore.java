@@ -0,0 +1,295 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.entity.Conditions;
+import tsygvintsev.watering_diary.util.ConditionsSeriesFile;
+import tsygvintsev.watering_diary.util.LruCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Внекучевое хранилище истории условий микроклимата.
+ * Для каждого пользователя ряд (день, температура, влажность) хранится в отдельном файле,
+ * отображённом в память. Поиск условий на дату - двоичный, обход диапазона не создаёт объектов.
+ * Хранилище включается свойством watering.conditions-store.enabled и поддерживается
+ * в актуальном состоянии записями через {@link ConditionsService}.
+ */
+@Service
+public class ConditionsSeriesStore {
+
+    private static final String SERIES_SQL =
+            "SELECT user_id, \"date\", temperature, watering FROM \"Conditions\" ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final LruCache<Integer, ConditionsSeriesFile> openSeries;
+
+    /** Блокировка записи рядов; под ней идут запросы к базе, поэтому не synchronized */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public ConditionsSeriesStore(
+            @Value("${watering.conditions-store.enabled:false}") boolean enabled,
+            @Value("${watering.conditions-store.dir:${java.io.tmpdir}/watering-conditions}") String directory,
+            @Value("${watering.conditions-store.max-open-files:1024}") int maxOpenFiles) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.openSeries = new LruCache<>(maxOpenFiles);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Перестроить ряды всех пользователей одним проходом по таблице при старте.
+     * Файлы пользователей, у которых больше нет условий, удаляются.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAll() {
+        if (!enabled) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            try {
+                Files.createDirectories(directory);
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.toList()) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            openSeries.clear();
+
+            SeriesBuilder builder = new SeriesBuilder();
+            jdbcTemplate.query(SERIES_SQL + "ORDER BY user_id, \"date\"", rs -> {
+                int userId = rs.getInt(1);
+                if (builder.userId != null && builder.userId != userId) {
+                    write(builder);
+                    builder.reset();
+                }
+                builder.userId = userId;
+                builder.add(rs.getDate(2).toLocalDate(), rs.getInt(3), rs.getInt(4));
+            });
+            if (builder.userId != null) {
+                write(builder);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Найти условия, действовавшие на дату: последнюю точку не позже даты.
+     * Существование пользователя проверяет вызывающий, иначе для него будет создан пустой файл.
+     *
+     * @param userId ID пользователя
+     * @param date дата
+     * @param consumer получает точку, если она есть
+     * @return true, если точка найдена
+     */
+    public boolean asOf(Integer userId, LocalDate date, ConditionsSeriesFile.PointConsumer consumer) {
+        ConditionsSeriesFile series = series(userId);
+        int index = series.indexAtOrBefore(toDay(date));
+        if (index < 0) {
+            return false;
+        }
+        consumer.accept(series.day(index), series.temperature(index), series.humidity(index));
+        return true;
+    }
+
+    /**
+     * Обойти условия пользователя в диапазоне дат включительно.
+     * Существование пользователя проверяет вызывающий, иначе для него будет создан пустой файл.
+     *
+     * @param userId ID пользователя
+     * @param from первая дата (null - с начала)
+     * @param to последняя дата (null - до конца)
+     * @param consumer обработчик точек
+     */
+    public void scan(Integer userId, LocalDate from, LocalDate to, ConditionsSeriesFile.PointConsumer consumer) {
+        series(userId).forEachInRange(
+                from != null ? toDay(from) : Integer.MIN_VALUE,
+                to != null ? toDay(to) : Integer.MAX_VALUE,
+                consumer);
+    }
+
+    /**
+     * Учесть созданные условия. Новая последняя дата дописывается в конец файла,
+     * иначе ряд пользователя перестраивается.
+     *
+     * @param conditions созданные условия
+     */
+    public void created(Conditions conditions) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            boolean appended = series(conditions.getUserId()).tryAppend(
+                    toDay(conditions.getDate()), conditions.getTemperature(), conditions.getWatering());
+            if (!appended) {
+                rebuild(conditions.getUserId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Учесть изменённые условия: ряд пользователя перестраивается.
+     * Дописывать нельзя: если дата перенесена вперёд, в ряду осталась бы точка со старой датой.
+     *
+     * @param conditions изменённые условия
+     */
+    public void updated(Conditions conditions) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            rebuild(conditions.getUserId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Учесть удалённые условия: ряд пользователя перестраивается.
+     *
+     * @param conditions удалённые условия
+     */
+    public void deleted(Conditions conditions) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            rebuild(conditions.getUserId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Открытый ряд пользователя; при отсутствии файла строится из базы.
+     */
+    private ConditionsSeriesFile series(Integer userId) {
+        if (!enabled) {
+            throw new IllegalStateException("Хранилище рядов условий отключено.");
+        }
+
+        ConditionsSeriesFile series = openSeries.get(userId);
+        if (series != null) {
+            return series;
+        }
+
+        lock.lock();
+        try {
+            series = openSeries.peek(userId);
+            if (series != null) {
+                return series;
+            }
+            Path file = file(userId);
+            if (Files.exists(file)) {
+                try {
+                    series = ConditionsSeriesFile.open(file);
+                    openSeries.put(userId, series);
+                    return series;
+                } catch (IOException e) {
+                    // повреждённый файл перестраивается ниже
+                }
+            }
+            return rebuild(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ConditionsSeriesFile rebuild(Integer userId) {
+        SeriesBuilder builder = new SeriesBuilder();
+        builder.userId = userId;
+        jdbcTemplate.query(SERIES_SQL + "WHERE user_id = ? ORDER BY \"date\"",
+                rs -> {
+                    builder.add(rs.getDate(2).toLocalDate(), rs.getInt(3), rs.getInt(4));
+                },
+                userId);
+        return write(builder);
+    }
+
+    private ConditionsSeriesFile write(SeriesBuilder builder) {
+        try {
+            Files.createDirectories(directory);
+            ConditionsSeriesFile series = ConditionsSeriesFile.create(file(builder.userId),
+                    builder.days, builder.temperatures, builder.humidities, builder.count);
+            openSeries.put(builder.userId, series);
+            return series;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path file(Integer userId) {
+        return directory.resolve("conditions-" + userId + ".bin");
+    }
+
+    private static int toDay(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    /**
+     * Получить статистику открытых файлов.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getStats() {
+        return openSeries.getStats();
+    }
+
+    /**
+     * Накопитель колонок одного пользователя.
+     */
+    private static class SeriesBuilder {
+        private Integer userId;
+        private int[] days = new int[64];
+        private int[] temperatures = new int[64];
+        private int[] humidities = new int[64];
+        private int count;
+
+        void add(LocalDate date, int temperature, int humidity) {
+            if (count == days.length) {
+                days = Arrays.copyOf(days, count * 2);
+                temperatures = Arrays.copyOf(temperatures, count * 2);
+                humidities = Arrays.copyOf(humidities, count * 2);
+            }
+            days[count] = toDay(date);
+            temperatures[count] = temperature;
+            humidities[count] = humidity;
+            count++;
+        }
+
+        void reset() {
+            userId = null;
+            count = 0;
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package tsygvintsev.watering_diary.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.ConditionsPoint;
+import tsygvintsev.watering_diary.dto.ConditionsSeries;
+import tsygvintsev.watering_diary.dto.ConditionsView;
 import tsygvintsev.watering_diary.entity.Conditions;
 import tsygvintsev.watering_diary.repository.ConditionsRepository;
+import tsygvintsev.watering_diary.repository.ProjectionQueryBuilder;
 import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.util.FieldSet;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
 
 /**
  * Сервис для управления условиями микроклимата.
@@ -24,13 +34,32 @@ public class ConditionsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private LatestConditionsCache latestConditionsCache;
+
+    @Autowired
+    private ConditionsSeriesStore conditionsSeriesStore;
+
+    @Autowired
+    private ProjectionQueryBuilder projectionQueryBuilder;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
     /**
      * Получить все записи условий микроклимата.
      *
+     * @param fields выбираемые поля
      * @return список всех условий
      */
-    public List<Conditions> getAllConditions() {
-        return conditionsRepository.findAll();
+    public List<ConditionsView> getAllConditions(FieldSet<ConditionsView> fields) {
+        return projectionQueryBuilder.list(Conditions.class, fields, null, Sort.by("id"), null);
     }
 
     /**
@@ -38,28 +67,117 @@ public class ConditionsService {
      *
      * @param id уникальный идентификатор записи
      * @return найденные условия
-     * @throws ResponseStatusException если запись не найдена
+     * @throws ResponseStatusException если запись не найдена или принадлежит другому пользователю
      */
     public Conditions getConditionsById(Integer id) {
-        return conditionsRepository.findById(id)
+        Conditions conditions = conditionsRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует записи с таким id."));
+        accessControlService.checkOwner(conditions.getUserId());
+        return conditions;
     }
 
     /**
      * Получить все условия микроклимата конкретного пользователя.
      *
      * @param userId ID пользователя
+     * @param fields выбираемые поля
      * @return список условий пользователя
      * @throws ResponseStatusException если пользователь не найден
      */
-    public List<Conditions> getConditionsByUserId(Integer userId) {
+    public List<ConditionsView> getConditionsByUserId(Integer userId, FieldSet<ConditionsView> fields) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+        return projectionQueryBuilder.list(Conditions.class, fields,
+                (root, query, cb) -> cb.equal(root.get("userId"), userId), Sort.by("id"), null);
+    }
+
+    /**
+     * Получить ряд условий пользователя за период в колоночном виде.
+     * При включённом внекучевом хранилище данные читаются из него без обращения к таблице условий.
+     *
+     * @param userId ID пользователя
+     * @param from первая дата (необязательно)
+     * @param to последняя дата (необязательно)
+     * @return ряд условий по возрастанию дат
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    public ConditionsSeries getConditionsSeries(Integer userId, LocalDate from, LocalDate to) {
         if (!userRepository.existsById(userId)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует пользователя с таким id.");
         }
-        return conditionsRepository.findByUserId(userId);
+
+        List<String> dates = new ArrayList<>();
+        IntStream.Builder temperatures = IntStream.builder();
+        IntStream.Builder humidities = IntStream.builder();
+
+        if (conditionsSeriesStore.isEnabled()) {
+            conditionsSeriesStore.scan(userId, from, to, (epochDay, temperature, humidity) -> {
+                dates.add(LocalDate.ofEpochDay(epochDay).toString());
+                temperatures.add(temperature);
+                humidities.add(humidity);
+            });
+        } else {
+            for (Conditions conditions : conditionsRepository.findByUserIdOrderByDate(userId)) {
+                if ((from != null && conditions.getDate().isBefore(from))
+                        || (to != null && conditions.getDate().isAfter(to))) {
+                    continue;
+                }
+                dates.add(conditions.getDate().toString());
+                temperatures.add(conditions.getTemperature());
+                humidities.add(conditions.getWatering());
+            }
+        }
+
+        return new ConditionsSeries(dates.toArray(new String[0]),
+                temperatures.build().toArray(), humidities.build().toArray());
+    }
+
+    /**
+     * Получить условия, действовавшие на дату (последние не позже этой даты).
+     *
+     * @param userId ID пользователя
+     * @param date дата
+     * @return условия на дату
+     * @throws ResponseStatusException если пользователь не найден или условий на эту дату нет
+     */
+    public ConditionsPoint getConditionsAsOf(Integer userId, LocalDate date) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        if (conditionsSeriesStore.isEnabled()) {
+            ConditionsPoint[] found = new ConditionsPoint[1];
+            conditionsSeriesStore.asOf(userId, date, (epochDay, temperature, humidity) ->
+                    found[0] = new ConditionsPoint(LocalDate.ofEpochDay(epochDay), temperature, humidity));
+            if (found[0] != null) {
+                return found[0];
+            }
+        } else {
+            Optional<Conditions> conditions = conditionsRepository
+                    .findFirstByUserIdAndDateLessThanEqualOrderByDateDesc(userId, date);
+            if (conditions.isPresent()) {
+                return new ConditionsPoint(conditions.get().getDate(),
+                        conditions.get().getTemperature(), conditions.get().getWatering());
+            }
+        }
+
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                "Не найдены условия для этого пользователя на эту дату.");
+    }
+
+    /**
+     * Получить статистику кэша последних условий.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getLatestConditionsCacheStats() {
+        return latestConditionsCache.getStats();
     }
 
     /**
@@ -68,13 +186,14 @@ public class ConditionsService {
      * @param conditions объект условий
      * @return созданная запись
      * @throws ResponseStatusException если пользователь не найден, дата старше 7 дней,
-     * часть полей не заполнена или уже есть запись на эту дату
+     * часть полей не заполнена, уже есть запись на эту дату или запись создаётся для другого пользователя
      */
     public Conditions createConditions(Conditions conditions) {
         if (conditions.getUserId() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "ID пользователя не может быть пустым.");
         }
+        accessControlService.checkOwner(conditions.getUserId());
 
         if (conditions.getDate() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
@@ -106,7 +225,12 @@ public class ConditionsService {
                     "У этого пользователя уже есть запись на эту дату.");
         }
 
-        return conditionsRepository.save(conditions);
+        Conditions savedConditions = conditionsRepository.save(conditions);
+        latestConditionsCache.saved(savedConditions);
+        conditionsSeriesStore.created(savedConditions);
+        recommendationCache.evictUser(savedConditions.getUserId());
+        resourceVersionService.conditionsChanged(savedConditions.getUserId());
+        return savedConditions;
     }
 
     /**
@@ -115,7 +239,8 @@ public class ConditionsService {
      * @param id уникальный идентификатор записи
      * @param updatedConditions объект с обновляемыми полями
      * @return обновлённая запись
-     * @throws ResponseStatusException если запись не найдена, дата старше 7 дней или уже есть запись на эту дату
+     * @throws ResponseStatusException если запись не найдена или принадлежит другому пользователю,
+     * дата старше 7 дней или уже есть запись на эту дату
      */
     public Conditions updateConditions(Integer id, Conditions updatedConditions) {
         Conditions conditions = conditionsRepository.findById(id)
@@ -123,6 +248,7 @@ public class ConditionsService {
                         HttpStatus.NOT_FOUND,
                         "Не существует записи с таким id."
                 ));
+        accessControlService.checkOwner(conditions.getUserId());
 
         LocalDate newDate = updatedConditions.getDate();
         LocalDate oldDate = conditions.getDate();
@@ -149,22 +275,32 @@ public class ConditionsService {
             conditions.setWatering(updatedConditions.getWatering());
         }
 
-        return conditionsRepository.save(conditions);
+        Conditions savedConditions = conditionsRepository.save(conditions);
+        latestConditionsCache.saved(savedConditions);
+        conditionsSeriesStore.updated(savedConditions);
+        recommendationCache.evictUser(savedConditions.getUserId());
+        resourceVersionService.conditionsChanged(savedConditions.getUserId());
+        return savedConditions;
     }
 
     /**
      * Удалить запись условий.
      *
      * @param id уникальный идентификатор записи
-     * @throws ResponseStatusException если запись не найдена
+     * @throws ResponseStatusException если запись не найдена или принадлежит другому пользователю
      */
     public Conditions deleteConditions(Integer id) {
         Conditions conditions = conditionsRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует записи с таким id."));
+        accessControlService.checkOwner(conditions.getUserId());
 
         conditionsRepository.delete(conditions);
+        latestConditionsCache.deleted(conditions);
+        conditionsSeriesStore.deleted(conditions);
+        recommendationCache.evictUser(conditions.getUserId());
+        resourceVersionService.conditionsChanged(conditions.getUserId());
         return conditions;
     }
 }
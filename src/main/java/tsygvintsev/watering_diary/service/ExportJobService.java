@@ -0,0 +1,328 @@
+package tsygvintsev.watering_diary.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.ExportJob;
+import tsygvintsev.watering_diary.dto.ExportRequest;
+import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.util.WateringRecordCsvWriter;
+import tsygvintsev.watering_diary.util.WateringRecordExcelExporter;
+import tsygvintsev.watering_diary.util.WateringRecordNdjsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Сервис фоновых выгрузок записей полива.
+ * Выгрузки выполняются в ограниченном пуле потоков, результат складывается
+ * во временный каталог и удаляется по истечении срока хранения.
+ * Срок отсчитывается от завершения выгрузки или начала последнего скачивания;
+ * файл, который сейчас скачивают, не удаляется. Файлы каталога, не принадлежащие
+ * известным выгрузкам (недописанные и оставшиеся от прошлого запуска),
+ * удаляются по времени изменения при старте и при каждой очистке.
+ *
+ * <p>Выгрузки и их файлы хранятся только в экземпляре, который их принял,
+ * поэтому статус и файл доступны лишь на нём (см. README).</p>
+ */
+@Service
+public class ExportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportJobService.class);
+
+    private static final Set<String> FORMATS = Set.of("excel", "csv", "ndjson");
+
+    @Autowired
+    private WateringRecordService wateringRecordService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final Path spoolDir;
+    private final long ttlMillis;
+
+    public ExportJobService(
+            @Value("${watering.export.pool-size:2}") int poolSize,
+            @Value("${watering.export.queue-capacity:20}") int queueCapacity,
+            @Value("${watering.export.spool-dir:${java.io.tmpdir}/watering-exports}") String spoolDir,
+            @Value("${watering.export.ttl-minutes:60}") long ttlMinutes,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Пул остаётся ограниченным и в режиме виртуальных потоков:
+        // он ограничивает число одновременных выгрузок, а не число потоков ОС
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("export-", 1).factory()
+                : runnable -> {
+                    Thread thread = new Thread(runnable, "export-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        this.spoolDir = Files.createDirectories(Path.of(spoolDir));
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        sweepSpool(System.currentTimeMillis());
+    }
+
+    /**
+     * Поставить выгрузку в очередь.
+     *
+     * @param request параметры выгрузки
+     * @return созданная выгрузка
+     * @throws ResponseStatusException если параметры не заполнены, пользователь не найден или не совпадает
+     * с вошедшим, или очередь выгрузок переполнена
+     */
+    public ExportJob submit(ExportRequest request) {
+        if (request.getUserId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ID пользователя не может быть пустым.");
+        }
+        accessControlService.checkOwner(request.getUserId());
+
+        String format = request.getFormat() != null ? request.getFormat() : "excel";
+        if (!FORMATS.contains(format)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Неизвестный формат выгрузки. Допустимо: excel, csv, ndjson.");
+        }
+
+        if (!userRepository.existsById(request.getUserId())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), format, request.getUserId());
+        jobs.put(job.getId(), job);
+
+        try {
+            // Доступ проверен при постановке в очередь, выгрузка выполняется от имени владельца данных
+            executor.execute(() -> accessControlService.runAs(request.getUserId(), () -> run(job, request)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Слишком много выгрузок в очереди. Повторите позже.");
+        }
+
+        return job;
+    }
+
+    /**
+     * Получить выгрузку по ID.
+     *
+     * @param id ID выгрузки
+     * @return выгрузка
+     * @throws ResponseStatusException если выгрузка не найдена, уже удалена или принадлежит другому пользователю
+     */
+    public ExportJob getJob(String id) {
+        ExportJob job = jobs.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует выгрузки с таким id.");
+        }
+        accessControlService.checkOwner(job.getUserId());
+        return job;
+    }
+
+    /**
+     * Начать скачивание готового файла выгрузки.
+     * До вызова {@link #finishDownload(ExportJob)} файл не удаляется.
+     *
+     * @param job выгрузка
+     * @return путь к файлу
+     * @throws ResponseStatusException если выгрузка ещё не завершена
+     */
+    public Path startDownload(ExportJob job) {
+        job.downloadStarted();
+        if (job.getStatus() != ExportJob.Status.DONE || job.file() == null || !Files.exists(job.file())) {
+            job.downloadFinished();
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Выгрузка ещё не готова.");
+        }
+        return job.file();
+    }
+
+    /**
+     * Завершить скачивание файла выгрузки.
+     *
+     * @param job выгрузка
+     */
+    public void finishDownload(ExportJob job) {
+        job.downloadFinished();
+    }
+
+    /**
+     * Имя файла выгрузки для скачивания.
+     *
+     * @param job выгрузка
+     * @return имя файла
+     */
+    public String fileName(ExportJob job) {
+        return "watering_records_" + job.getId() + extension(job.getFormat());
+    }
+
+    /**
+     * Выполнить выгрузку в файл.
+     *
+     * @param job выгрузка
+     * @param request параметры выгрузки
+     */
+    private void run(ExportJob job, ExportRequest request) {
+        job.setStatus(ExportJob.Status.RUNNING);
+        Path file = spoolDir.resolve(job.getId() + extension(job.getFormat()) + ".part");
+
+        try {
+            job.setTotalRows(wateringRecordService.countFilteredRecords(
+                    request.getPlantId(), request.getDateFrom(), request.getDateTo(), request.getUserId()));
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                writeFile(job, request, out);
+            }
+
+            Path target = spoolDir.resolve(job.getId() + extension(job.getFormat()));
+            Files.move(file, target);
+            job.attachFile(target);
+            job.setFinishedAt(System.currentTimeMillis());
+            job.setStatus(ExportJob.Status.DONE);
+        } catch (Exception e) {
+            deleteQuietly(file);
+            // Пользователю отдаётся только подготовленный текст, как в GlobalExceptionHandler:
+            // сообщение прочих исключений может раскрывать пути и SQL
+            if (e instanceof ResponseStatusException statusException) {
+                job.setError(statusException.getReason());
+            } else {
+                log.warn("Export {} failed", job.getId(), e);
+                job.setError("Не удалось сформировать выгрузку.");
+            }
+            job.setFinishedAt(System.currentTimeMillis());
+            job.setStatus(ExportJob.Status.FAILED);
+        }
+    }
+
+    /**
+     * Записать файл в нужном формате.
+     *
+     * @param job выгрузка
+     * @param request параметры выгрузки
+     * @param out поток файла
+     * @throws IOException при ошибке записи
+     */
+    private void writeFile(ExportJob job, ExportRequest request, OutputStream out) throws IOException {
+        switch (job.getFormat()) {
+            case "csv" -> {
+                WateringRecordCsvWriter csvWriter = new WateringRecordCsvWriter(out);
+                wateringRecordService.streamFilteredRows(request.getPlantId(), request.getDateFrom(),
+                        request.getDateTo(), request.getUserId(), row -> {
+                            csvWriter.write(row);
+                            job.rowWritten();
+                        });
+                csvWriter.flush();
+            }
+            case "ndjson" -> {
+                WateringRecordNdjsonWriter ndjsonWriter = new WateringRecordNdjsonWriter(out);
+                wateringRecordService.streamFilteredRows(request.getPlantId(), request.getDateFrom(),
+                        request.getDateTo(), request.getUserId(), row -> {
+                            ndjsonWriter.write(row);
+                            job.rowWritten();
+                        });
+                ndjsonWriter.flush();
+            }
+            default -> wateringRecordService.streamFilteredRecords(request.getPlantId(), request.getDateFrom(),
+                    request.getDateTo(), request.getUserId(),
+                    records -> new WateringRecordExcelExporter(records.peek(record -> job.rowWritten()))
+                            .export(out));
+        }
+    }
+
+    /**
+     * Удалить выгрузки, срок хранения которых истёк, и файлы без выгрузок.
+     */
+    @Scheduled(fixedDelayString = "${watering.export.cleanup-interval-ms:60000}")
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> {
+            boolean finished = job.getStatus() == ExportJob.Status.DONE
+                    || job.getStatus() == ExportJob.Status.FAILED;
+            long lastUsed = Math.max(job.getFinishedAt(), job.lastDownloadAt());
+            if (finished && !job.hasActiveDownloads() && now - lastUsed > ttlMillis) {
+                deleteQuietly(job.file());
+                return true;
+            }
+            return false;
+        });
+        sweepSpool(now);
+    }
+
+    /**
+     * Удалить файлы каталога выгрузок, которые не принадлежат известным выгрузкам
+     * и не менялись дольше срока хранения. Имя файла начинается с ID выгрузки.
+     *
+     * @param now текущее время
+     */
+    private void sweepSpool(long now) {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (jobs.containsKey(dot > 0 ? name.substring(0, dot) : name)) {
+                    continue;
+                }
+                try {
+                    if (now - Files.getLastModifiedTime(file).toMillis() > ttlMillis) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private String extension(String format) {
+        return switch (format) {
+            case "csv" -> ".csv";
+            case "ndjson" -> ".ndjson";
+            default -> ".xlsx";
+        };
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.entity.Conditions;
+import tsygvintsev.watering_diary.repository.ConditionsRepository;
+import tsygvintsev.watering_diary.util.LruCache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш последних условий микроклимата по пользователям.
+ * Все растения пользователя считаются по одним и тем же условиям, поэтому
+ * запрос к базе нужен один раз на пользователя, а не на каждое растение.
+ * Запись обновляется на месте при изменении условий через {@link ConditionsService}.
+ * Отсутствие условий тоже кэшируется.
+ */
+@Service
+public class LatestConditionsCache {
+
+    /**
+     * Последние условия пользователя (null, если условий нет).
+     * Хранится копия без связанного пользователя.
+     */
+    private record Entry(Conditions conditions) {}
+
+    @Autowired
+    private ConditionsRepository conditionsRepository;
+
+    private final LruCache<Integer, Entry> cache;
+
+    /** Согласует сброс поколения с записью в кэш */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Номер поколения, увеличивается при каждом изменении */
+    private final AtomicLong generation = new AtomicLong();
+
+    public LatestConditionsCache(
+            @Value("${watering.conditions-cache.max-size:10000}") int maxSize) {
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Получить последние условия пользователя.
+     *
+     * @param userId ID пользователя
+     * @return последние условия или пустое значение, если условий нет
+     */
+    public Optional<Conditions> get(Integer userId) {
+        Entry entry = cache.get(userId);
+        if (entry != null) {
+            return Optional.ofNullable(entry.conditions());
+        }
+
+        long startGeneration = generation.get();
+        Conditions latest = conditionsRepository.findFirstByUserIdOrderByDateDesc(userId)
+                .map(LatestConditionsCache::copy)
+                .orElse(null);
+
+        lock.lock();
+        try {
+            if (generation.get() == startGeneration) {
+                cache.put(userId, new Entry(latest));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Optional.ofNullable(latest);
+    }
+
+    /**
+     * Учесть сохранённые (созданные или изменённые) условия.
+     * Если они не раньше закэшированных последних, они становятся последними.
+     * Если изменена сама последняя запись и её дата сдвинулась назад, запись сбрасывается.
+     *
+     * @param conditions сохранённые условия
+     */
+    public void saved(Conditions conditions) {
+        Integer userId = conditions.getUserId();
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            Entry entry = cache.peek(userId);
+            if (entry == null) {
+                return;
+            }
+
+            Conditions cached = entry.conditions();
+            if (cached == null || !conditions.getDate().isBefore(cached.getDate())) {
+                cache.put(userId, new Entry(copy(conditions)));
+            } else if (Objects.equals(cached.getId(), conditions.getId())) {
+                cache.remove(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Учесть удалённые условия. Если удалена последняя запись, запись кэша сбрасывается.
+     *
+     * @param conditions удалённые условия
+     */
+    public void deleted(Conditions conditions) {
+        Integer userId = conditions.getUserId();
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            Entry entry = cache.peek(userId);
+            if (entry != null && entry.conditions() != null
+                    && Objects.equals(entry.conditions().getId(), conditions.getId())) {
+                cache.remove(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбросить запись пользователя.
+     *
+     * @param userId ID пользователя
+     */
+    public void evictUser(Integer userId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            cache.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Получить статистику кэша.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+
+    private static Conditions copy(Conditions conditions) {
+        Conditions copy = new Conditions(null, conditions.getUserId(), conditions.getDate(),
+                conditions.getTemperature(), conditions.getWatering());
+        copy.setId(conditions.getId());
+        return copy;
+    }
+}
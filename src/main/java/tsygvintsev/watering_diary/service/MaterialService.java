@@ -19,13 +19,20 @@ public class MaterialService {
     @Autowired
     private MaterialRepository materialRepository;
 
+    @Autowired
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private ReferenceDataService referenceDataService;
+
     /**
      * Получить все материалы.
+     * Данные берутся из снимка справочников.
      *
      * @return список материалов
      */
     public List<Material> getAllMaterials() {
-        return materialRepository.findAll();
+        return referenceDataService.current().getMaterials();
     }
 
     /**
@@ -36,10 +43,12 @@ public class MaterialService {
      * @throws ResponseStatusException если материал не найден
      */
     public Material getMaterialById(Integer id) {
-        return materialRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "Не существует материала с таким id."));
+        Material material = referenceDataService.current().getMaterial(id);
+        if (material == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует материала с таким id.");
+        }
+        return material;
     }
 
     /**
@@ -61,7 +70,9 @@ public class MaterialService {
                     "Материал с таким названием уже существует.");
         }
 
-        return materialRepository.save(material);
+        Material savedMaterial = materialRepository.save(material);
+        referenceDataService.materialSaved(savedMaterial);
+        return savedMaterial;
     }
 
     /**
@@ -88,11 +99,18 @@ public class MaterialService {
             material.setName(updatedMaterial.getName());
         }
 
+        boolean wateringKChanged = updatedMaterial.getWateringK() != null &&
+                !updatedMaterial.getWateringK().equals(material.getWateringK());
         if (updatedMaterial.getWateringK() != null) {
             material.setWateringK(updatedMaterial.getWateringK());
         }
 
-        return materialRepository.save(material);
+        Material savedMaterial = materialRepository.save(material);
+        referenceDataService.materialSaved(savedMaterial);
+        if (wateringKChanged) {
+            recommendationCache.evictMaterial(id);
+        }
+        return savedMaterial;
     }
 
     /**
@@ -108,6 +126,8 @@ public class MaterialService {
                         "Не существует материала с таким id."));
 
         materialRepository.delete(material);
+        referenceDataService.materialDeleted(id);
+        recommendationCache.evictMaterial(id);
         return material;
     }
 }
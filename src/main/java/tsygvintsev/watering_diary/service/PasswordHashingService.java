@@ -0,0 +1,160 @@
+package tsygvintsev.watering_diary.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Сервис хеширования и проверки паролей.
+ * BCrypt выполняется в отдельном ограниченном пуле по числу ядер, а не в потоке запроса,
+ * поэтому всплеск входов не занимает все потоки Tomcat. Если очередь пула заполнена
+ * или ожидание затянулось, запрос сразу отклоняется с 503 SERVICE_UNAVAILABLE.
+ * Стоимость BCrypt задаётся свойством watering.password.strength.
+ */
+@Service
+public class PasswordHashingService {
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final int strength;
+    private final long timeoutMillis;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public PasswordHashingService(
+            @Value("${watering.password.strength:10}") int strength,
+            @Value("${watering.password.pool-size:0}") int poolSize,
+            @Value("${watering.password.queue-capacity:64}") int queueCapacity,
+            @Value("${watering.password.timeout-ms:2000}") long timeoutMillis) {
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.strength = strength;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Захешировать пароль.
+     *
+     * @param rawPassword пароль в открытом виде
+     * @return хеш BCrypt
+     * @throws ResponseStatusException если пул перегружен (503 SERVICE_UNAVAILABLE)
+     */
+    public String encode(String rawPassword) {
+        return call(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * Проверить пароль по хешу.
+     *
+     * @param rawPassword пароль в открытом виде
+     * @param encodedPassword хеш BCrypt
+     * @return true, если пароль совпадает
+     * @throws ResponseStatusException если пул перегружен (503 SERVICE_UNAVAILABLE)
+     */
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return call(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Получить метрики пула хеширования.
+     *
+     * @return размер пула, глубина очереди, задержки хеширования и ожидания, число отказов
+     */
+    public Map<String, Object> getStats() {
+        long count = hashes.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strength", strength);
+        stats.put("poolSize", executor.getMaximumPoolSize());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("hashes", count);
+        stats.put("avgHashMillis", count > 0 ? hashNanos.sum() / count / 1_000_000.0 : 0.0);
+        stats.put("maxHashMillis", maxHashNanos.get() / 1_000_000.0);
+        stats.put("avgQueueWaitMillis", count > 0 ? queueWaitNanos.sum() / count / 1_000_000.0 : 0.0);
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T call(Callable<T> hashing) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    return hashing.call();
+                } finally {
+                    long elapsed = System.nanoTime() - startedAt;
+                    hashes.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                    queueWaitNanos.add(startedAt - submittedAt);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw overloaded();
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            throw overloaded();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw overloaded();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ResponseStatusException overloaded() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Сервер перегружен проверкой паролей. Повторите позже.");
+    }
+}
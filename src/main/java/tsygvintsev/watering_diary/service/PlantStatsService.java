@@ -0,0 +1,316 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.PlantStats;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.UserRepository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Сервис накопленных показателей растений (таблица Plant_stats).
+ * Для каждого растения хранятся количество записей, сумма объёмов, сумма и сумма квадратов
+ * погрешности и дата последнего полива. Таблица обновляется приращениями в той же транзакции,
+ * что и записи полива, поэтому чтение среднего и дисперсии не зависит от длины истории.
+ * Дата последнего полива при удалении последней записи перечитывается по индексу
+ * с учётом последней архивной даты растения.
+ * Полный пересчёт учитывает и записи, перенесённые в архив ({@link WateringRecordArchive}).
+ */
+@Service
+public class PlantStatsService {
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO \"Plant_stats\" (user_plant_id, record_count, volume_sum, error_sum, error_sq_sum, last_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (user_plant_id) DO UPDATE SET " +
+            "record_count = \"Plant_stats\".record_count + EXCLUDED.record_count, " +
+            "volume_sum = \"Plant_stats\".volume_sum + EXCLUDED.volume_sum, " +
+            "error_sum = \"Plant_stats\".error_sum + EXCLUDED.error_sum, " +
+            "error_sq_sum = \"Plant_stats\".error_sq_sum + EXCLUDED.error_sq_sum, " +
+            "last_date = GREATEST(\"Plant_stats\".last_date, EXCLUDED.last_date)";
+
+    private static final String REMOVE_SQL =
+            "UPDATE \"Plant_stats\" SET " +
+            "record_count = record_count - 1, " +
+            "volume_sum = volume_sum - ?, " +
+            "error_sum = error_sum - ?, " +
+            "error_sq_sum = error_sq_sum - ?, " +
+            "last_date = CASE WHEN last_date = ? " +
+            "THEN GREATEST((SELECT MAX(wr.\"date\") FROM \"Watering_record\" wr WHERE wr.user_plant_id = ?), " +
+            "CAST(? AS date)) " +
+            "ELSE last_date END " +
+            "WHERE user_plant_id = ?";
+
+    /** Полный пересчёт показателей по таблице записей */
+    private static final String RECOMPUTE_SQL =
+            "SELECT user_plant_id, COUNT(*) AS record_count, " +
+            "SUM(volume_watering) AS volume_sum, " +
+            "SUM(error_rate_k) AS error_sum, " +
+            "SUM(CAST(error_rate_k AS bigint) * error_rate_k) AS error_sq_sum, " +
+            "MAX(\"date\") AS last_date " +
+            "FROM \"Watering_record\" GROUP BY user_plant_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    /**
+     * Приращения показателей по растениям, применяемые одним пакетом.
+     */
+    public static class Delta {
+        private final Map<Integer, long[]> sums = new LinkedHashMap<>();
+        private final Map<Integer, LocalDate> lastDates = new LinkedHashMap<>();
+
+        /**
+         * Учесть добавленную запись.
+         *
+         * @param userPlantId ID растения
+         * @param date дата полива
+         * @param volume объём полива
+         * @param errorRate погрешность
+         * @return это же приращение
+         */
+        public Delta add(Integer userPlantId, LocalDate date, int volume, int errorRate) {
+            long[] plantSums = sums.computeIfAbsent(userPlantId, id -> new long[4]);
+            plantSums[0]++;
+            plantSums[1] += volume;
+            plantSums[2] += errorRate;
+            plantSums[3] += (long) errorRate * errorRate;
+            lastDates.merge(userPlantId, date, (a, b) -> a.isAfter(b) ? a : b);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return sums.isEmpty();
+        }
+    }
+
+    /**
+     * Учесть созданную запись полива.
+     *
+     * @param wateringRecord сохранённая запись
+     */
+    public void recordAdded(WateringRecord wateringRecord) {
+        apply(new Delta().add(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK()));
+    }
+
+    /**
+     * Учесть созданные записи полива одним пакетом.
+     *
+     * @param wateringRecords сохранённые записи
+     */
+    public void recordsAdded(List<WateringRecord> wateringRecords) {
+        Delta delta = new Delta();
+        for (WateringRecord wateringRecord : wateringRecords) {
+            delta.add(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                    wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK());
+        }
+        apply(delta);
+    }
+
+    /**
+     * Применить накопленные приращения: по одному upsert на растение в одном JDBC-пакете.
+     *
+     * @param delta приращения
+     */
+    public void apply(Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(delta.sums.size());
+        delta.sums.forEach((userPlantId, plantSums) -> args.add(new Object[] {
+                userPlantId, plantSums[0], plantSums[1], plantSums[2], plantSums[3],
+                Date.valueOf(delta.lastDates.get(userPlantId))}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, args);
+    }
+
+    /**
+     * Учесть удалённую запись полива.
+     * Изменение записи в базе должно быть уже сброшено (flush), иначе дата
+     * последнего полива может перечитаться по старым данным.
+     *
+     * @param userPlantId ID растения
+     * @param date дата удалённой записи
+     * @param volume объём удалённой записи
+     * @param errorRate погрешность удалённой записи
+     */
+    public void recordRemoved(Integer userPlantId, LocalDate date, int volume, int errorRate) {
+        jdbcTemplate.update(REMOVE_SQL, volume, errorRate, (long) errorRate * errorRate,
+                Date.valueOf(date), userPlantId, archivedLastDate(userPlantId, date), userPlantId);
+    }
+
+    /**
+     * Последняя архивная дата растения, если удаляется запись с датой последнего полива.
+     * В оперативной таблице может не остаться записей растения, тогда без архива
+     * дата последнего полива стала бы пустой.
+     *
+     * @param userPlantId ID растения
+     * @param date дата удалённой записи
+     * @return последняя архивная дата или null, если архив не нужен или пуст
+     */
+    private Date archivedLastDate(Integer userPlantId, LocalDate date) {
+        List<Integer> owners = jdbcTemplate.queryForList(
+                "SELECT up.user_id FROM \"User_plant\" up " +
+                "JOIN \"Plant_stats\" s ON s.user_plant_id = up.id " +
+                "WHERE up.id = ? AND s.last_date = ?",
+                Integer.class, userPlantId, Date.valueOf(date));
+        if (owners.isEmpty()) {
+            return null;
+        }
+        try (Stream<WateringRecord> archived = wateringRecordArchive.scan(owners.get(0), userPlantId, null, null)) {
+            return archived.findFirst()
+                    .map(record -> Date.valueOf(record.getDate()))
+                    .orElse(null);
+        }
+    }
+
+    /**
+     * Учесть изменённую запись полива как удаление старой версии и добавление новой.
+     * Изменение записи в базе должно быть уже сброшено (flush).
+     *
+     * @param userPlantId ID растения
+     * @param oldDate дата до изменения
+     * @param oldVolume объём до изменения
+     * @param oldErrorRate погрешность до изменения
+     * @param updated запись после изменения
+     */
+    public void recordUpdated(Integer userPlantId, LocalDate oldDate, int oldVolume, int oldErrorRate,
+                              WateringRecord updated) {
+        if (oldDate.equals(updated.getDate())
+                && oldVolume == updated.getVolumeWatering()
+                && oldErrorRate == updated.getErrorRateK()) {
+            return;
+        }
+        recordRemoved(userPlantId, oldDate, oldVolume, oldErrorRate);
+        recordAdded(updated);
+    }
+
+    /**
+     * Получить показатели всех растений пользователя.
+     *
+     * @param userId ID пользователя
+     * @return показатели по каждому растению, включая растения без записей
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    public List<PlantStats> getPlantStatsByUserId(Integer userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        LocalDate today = LocalDate.now();
+        return jdbcTemplate.query(
+                "SELECT up.id, s.record_count, s.volume_sum, s.error_sum, s.error_sq_sum, s.last_date " +
+                "FROM \"User_plant\" up " +
+                "LEFT JOIN \"Plant_stats\" s ON s.user_plant_id = up.id " +
+                "WHERE up.user_id = ? ORDER BY up.id",
+                (rs, rowNum) -> {
+                    Date lastDate = rs.getDate(6);
+                    return PlantStats.of(rs.getInt(1), rs.getLong(2), rs.getLong(3), rs.getLong(4),
+                            rs.getLong(5), lastDate != null ? lastDate.toLocalDate() : null, today);
+                },
+                userId);
+    }
+
+    /**
+     * Сверить накопленные показатели с полным пересчётом по записям полива и архиву.
+     *
+     * @return количество проверенных растений и ID растений с расхождениями
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> verify() {
+        Delta archived = archivedDelta();
+
+        Map<Integer, long[]> stored = new LinkedHashMap<>();
+        Map<Integer, LocalDate> storedDates = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT user_plant_id, record_count, volume_sum, error_sum, error_sq_sum, last_date " +
+                "FROM \"Plant_stats\" WHERE record_count <> 0", rs -> {
+            stored.put(rs.getInt(1), new long[] {rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)});
+            Date lastDate = rs.getDate(6);
+            storedDates.put(rs.getInt(1), lastDate != null ? lastDate.toLocalDate() : null);
+        });
+
+        List<Integer> mismatched = new ArrayList<>();
+        int[] checked = {0};
+        jdbcTemplate.query(RECOMPUTE_SQL, rs -> {
+            int userPlantId = rs.getInt(1);
+            long[] expected = {rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)};
+            LocalDate expectedDate = rs.getDate(6).toLocalDate();
+            long[] archivedSums = archived.sums.remove(userPlantId);
+            if (archivedSums != null) {
+                Arrays.setAll(expected, i -> expected[i] + archivedSums[i]);
+                LocalDate archivedDate = archived.lastDates.get(userPlantId);
+                expectedDate = archivedDate.isAfter(expectedDate) ? archivedDate : expectedDate;
+            }
+            long[] actual = stored.remove(userPlantId);
+            checked[0]++;
+            if (actual == null
+                    || !Arrays.equals(expected, actual)
+                    || !Objects.equals(expectedDate, storedDates.get(userPlantId))) {
+                mismatched.add(userPlantId);
+            }
+        });
+        // Растения, все записи которых в архиве
+        archived.sums.forEach((userPlantId, expected) -> {
+            long[] actual = stored.remove(userPlantId);
+            checked[0]++;
+            if (actual == null
+                    || !Arrays.equals(expected, actual)
+                    || !Objects.equals(archived.lastDates.get(userPlantId), storedDates.get(userPlantId))) {
+                mismatched.add(userPlantId);
+            }
+        });
+        // Оставшиеся строки относятся к растениям, у которых записей уже нет
+        mismatched.addAll(stored.keySet());
+        checked[0] += stored.size();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("checked", checked[0]);
+        report.put("mismatched", mismatched);
+        report.put("consistent", mismatched.isEmpty());
+        return report;
+    }
+
+    /**
+     * Пересчитать таблицу показателей целиком: по таблице записей, затем приращениями из архива.
+     * Таблица блокируется на время пересчёта, параллельные приращения ждут его окончания.
+     *
+     * @return количество растений с записями в таблице
+     */
+    @Transactional
+    public int rebuild() {
+        jdbcTemplate.execute("LOCK TABLE \"Plant_stats\" IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM \"Plant_stats\"");
+        int plants = jdbcTemplate.update(
+                "INSERT INTO \"Plant_stats\" (user_plant_id, record_count, volume_sum, error_sum, error_sq_sum, last_date) " +
+                RECOMPUTE_SQL);
+        apply(archivedDelta());
+        return plants;
+    }
+
+    private Delta archivedDelta() {
+        Delta delta = new Delta();
+        wateringRecordArchive.forEachArchived(record -> delta.add(record.getUserPlantId(), record.getDate(),
+                record.getVolumeWatering(), record.getErrorRateK()));
+        return delta;
+    }
+}
@@ -19,13 +19,23 @@ public class PlantTypeService {
     @Autowired
     private PlantTypeRepository plantTypeRepository;
 
+    @Autowired
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private WateringDueScheduler wateringDueScheduler;
+
+    @Autowired
+    private ReferenceDataService referenceDataService;
+
     /**
      * Получить все типы растений, отсортированные по названию.
+     * Данные берутся из снимка справочников.
      *
      * @return список типов растений
      */
     public List<PlantType> getAllPlantTypes() {
-        return plantTypeRepository.findAllByOrderByNameAsc();
+        return referenceDataService.current().getPlantTypes();
     }
 
     /**
@@ -36,10 +46,12 @@ public class PlantTypeService {
      * @throws ResponseStatusException если тип не найден
      */
     public PlantType getPlantTypeById(Integer id) {
-        return plantTypeRepository.findById(id)
-                .orElseThrow(() -> new ResponseStatusException(
-                        HttpStatus.NOT_FOUND,
-                        "Не существует типа растения с таким id."));
+        PlantType plantType = referenceDataService.current().getPlantType(id);
+        if (plantType == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует типа растения с таким id.");
+        }
+        return plantType;
     }
 
     /**
@@ -61,7 +73,9 @@ public class PlantTypeService {
                     "Тип растения с таким названием уже существует.");
         }
 
-        return plantTypeRepository.save(plantType);
+        PlantType savedPlantType = plantTypeRepository.save(plantType);
+        referenceDataService.plantTypeSaved(savedPlantType);
+        return savedPlantType;
     }
 
     /**
@@ -91,11 +105,19 @@ public class PlantTypeService {
         if (updatedPlantType.getDescription() != null) {
             plantType.setDescription(updatedPlantType.getDescription());
         }
+        boolean wateringKChanged = updatedPlantType.getWateringK() != null &&
+                !updatedPlantType.getWateringK().equals(plantType.getWateringK());
         if (updatedPlantType.getWateringK() != null) {
             plantType.setWateringK(updatedPlantType.getWateringK());
         }
 
-        return plantTypeRepository.save(plantType);
+        PlantType savedPlantType = plantTypeRepository.save(plantType);
+        referenceDataService.plantTypeSaved(savedPlantType);
+        if (wateringKChanged) {
+            recommendationCache.evictPlantType(id);
+            wateringDueScheduler.plantTypeChanged(id);
+        }
+        return savedPlantType;
     }
 
     /**
@@ -111,6 +133,8 @@ public class PlantTypeService {
                         "Не существует типа растения с таким id."));
 
         plantTypeRepository.delete(plantType);
+        referenceDataService.plantTypeDeleted(id);
+        recommendationCache.evictPlantType(id);
         return plantType;
     }
 }
@@ -0,0 +1,117 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.entity.Material;
+import tsygvintsev.watering_diary.entity.PlantType;
+import tsygvintsev.watering_diary.repository.MaterialRepository;
+import tsygvintsev.watering_diary.repository.PlantTypeRepository;
+import tsygvintsev.watering_diary.util.ReferenceSnapshot;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Сервис снимка справочников типов растений и материалов.
+ * Чтения справочников и коэффициенты для расчёта полива берутся из снимка без обращения к базе.
+ * Снимок загружается при старте после начального заполнения справочников
+ * и заменяется целиком при каждом изменении через {@link PlantTypeService} и {@link MaterialService}.
+ */
+@Service
+public class ReferenceDataService {
+
+    @Autowired
+    private PlantTypeRepository plantTypeRepository;
+
+    @Autowired
+    private MaterialRepository materialRepository;
+
+    private volatile ReferenceSnapshot snapshot;
+
+    /** Блокировка замены снимка; reload обращается к базе, поэтому не synchronized */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Текущий снимок справочников.
+     * Если снимок ещё не загружен (запрос пришёл до окончания старта), загружает его.
+     *
+     * @return снимок
+     */
+    public ReferenceSnapshot current() {
+        ReferenceSnapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    /**
+     * Перечитать справочники из базы и заменить снимок.
+     *
+     * @return новый снимок
+     */
+    public ReferenceSnapshot reload() {
+        lock.lock();
+        try {
+            long version = snapshot != null ? snapshot.getVersion() + 1 : 1;
+            snapshot = ReferenceSnapshot.of(version,
+                    plantTypeRepository.findAll(),
+                    materialRepository.findAll());
+            return snapshot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Заменить снимок после сохранения типа растения.
+     *
+     * @param plantType сохранённый тип растения
+     */
+    public void plantTypeSaved(PlantType plantType) {
+        lock.lock();
+        try {
+            snapshot = current().withPlantType(plantType);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Заменить снимок после удаления типа растения.
+     *
+     * @param id ID удалённого типа растения
+     */
+    public void plantTypeDeleted(Integer id) {
+        lock.lock();
+        try {
+            snapshot = current().withoutPlantType(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Заменить снимок после сохранения материала.
+     *
+     * @param material сохранённый материал
+     */
+    public void materialSaved(Material material) {
+        lock.lock();
+        try {
+            snapshot = current().withMaterial(material);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Заменить снимок после удаления материала.
+     *
+     * @param id ID удалённого материала
+     */
+    public void materialDeleted(Integer id) {
+        lock.lock();
+        try {
+            snapshot = current().withoutMaterial(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
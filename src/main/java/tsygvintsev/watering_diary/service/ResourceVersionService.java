@@ -0,0 +1,119 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.util.TransactionHooks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики версий данных для ETag.
+ * Каждая запись увеличивает счётчик своего набора данных, а GET-запросы строят ETag
+ * из счётчиков, поэтому проверка If-None-Match не требует ни запросов к базе, ни сериализации.
+ * Внутри транзакции счётчик увеличивается после фиксации, чтобы новая версия
+ * никогда не отдавалась вместе со старыми данными.
+ *
+ * <p>Счётчики хранятся в памяти процесса и другим экземплярам приложения не видны:
+ * запись через один экземпляр не меняет ETag на другом. Поэтому приложение работает
+ * одним экземпляром или с привязкой запросов пользователя к экземпляру (см. README).</p>
+ */
+@Service
+public class ResourceVersionService {
+
+    @Autowired
+    private ReferenceDataService referenceDataService;
+
+    /** Метка запуска: после перезапуска счётчики начинаются заново, и старые ETag не должны совпасть */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    /** Версия пользователей: пользователь вложен в ответы с растениями, условиями и записями */
+    private final AtomicLong users = new AtomicLong();
+
+    private final Map<Integer, AtomicLong> userPlantsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> conditionsByUser = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> recordsByUserPlant = new ConcurrentHashMap<>();
+
+    /**
+     * Изменились данные пользователя (логин, пароль) или пользователь удалён.
+     */
+    public void usersChanged() {
+        TransactionHooks.afterCommit(users::incrementAndGet);
+    }
+
+    /**
+     * Изменился список растений пользователя.
+     *
+     * @param userId ID пользователя
+     */
+    public void userPlantsChanged(Integer userId) {
+        TransactionHooks.afterCommit(() -> counter(userPlantsByUser, userId).incrementAndGet());
+    }
+
+    /**
+     * Изменились условия пользователя.
+     *
+     * @param userId ID пользователя
+     */
+    public void conditionsChanged(Integer userId) {
+        TransactionHooks.afterCommit(() -> counter(conditionsByUser, userId).incrementAndGet());
+    }
+
+    /**
+     * Изменились записи полива растения или само растение.
+     *
+     * @param userPlantId ID растения
+     */
+    public void recordsChanged(Integer userPlantId) {
+        TransactionHooks.afterCommit(() -> counter(recordsByUserPlant, userPlantId).incrementAndGet());
+    }
+
+    /**
+     * ETag справочников типов растений и материалов.
+     *
+     * @return значение ETag
+     */
+    public String referencesETag() {
+        return epoch + "-r" + referenceDataService.current().getVersion();
+    }
+
+    /**
+     * ETag списка растений пользователя.
+     *
+     * @param userId ID пользователя
+     * @return значение ETag
+     */
+    public String userPlantsETag(Integer userId) {
+        return referencesETag() + "-u" + users.get() + "-p" + version(userPlantsByUser, userId);
+    }
+
+    /**
+     * ETag списка условий пользователя.
+     *
+     * @param userId ID пользователя
+     * @return значение ETag
+     */
+    public String conditionsETag(Integer userId) {
+        return epoch + "-u" + users.get() + "-c" + version(conditionsByUser, userId);
+    }
+
+    /**
+     * ETag записей полива растения.
+     *
+     * @param userPlantId ID растения
+     * @return значение ETag
+     */
+    public String recordsETag(Integer userPlantId) {
+        return referencesETag() + "-u" + users.get() + "-w" + version(recordsByUserPlant, userPlantId);
+    }
+
+    private static AtomicLong counter(Map<Integer, AtomicLong> counters, Integer key) {
+        return counters.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    private static long version(Map<Integer, AtomicLong> counters, Integer key) {
+        AtomicLong counter = counters.get(key);
+        return counter != null ? counter.get() : 0;
+    }
+}
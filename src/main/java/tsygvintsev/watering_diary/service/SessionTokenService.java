@@ -0,0 +1,227 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.util.LruCache;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сервис сессионных токенов.
+ * Токен имеет вид {@code userId.expiresAt.signature}, где подпись - HMAC-SHA256
+ * от первых двух частей и поколения пользователя - отпечатка SHA-256 его хеша пароля.
+ * Поколение в токен не входит: смена пароля или удаление пользователя меняют его,
+ * и все выданные ранее токены перестают приниматься, в том числе из кэша проверенных.
+ * Поколения кэшируются, поэтому проверка токена обычно не обращается ни к базе, ни к BCrypt,
+ * а заданный секрет позволяет принимать токены после перезапуска
+ * без хранилища сессий.
+ *
+ * <p>Секрет задаётся свойством watering.session.secret (переменная SESSION_SECRET).
+ * Если он не задан, генерируется случайный ключ: токены тогда действуют только
+ * на этом экземпляре и до его перезапуска.</p>
+ */
+@Service
+public class SessionTokenService {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Проверенный токен: ID пользователя, момент истечения в секундах и поколение пользователя.
+     */
+    private record Verified(Integer userId, long expiresAt, String generation) {}
+
+    /**
+     * Выданный токен.
+     *
+     * @param token значение токена
+     * @param userId ID пользователя
+     * @param expiresAt момент истечения
+     */
+    public record IssuedToken(String token, Integer userId, Instant expiresAt) {}
+
+    private final Mac prototype;
+    private final Duration ttl;
+
+    /** Недавно проверенные токены: повторная проверка не пересчитывает HMAC */
+    private final LruCache<String, Verified> verified;
+
+    /** Поколения пользователей по ID */
+    private final LruCache<Integer, String> generations;
+
+    /** Число сбросов поколений: поколение, прочитанное до сброса, не кэшируется */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    private UserRepository userRepository;
+
+    public SessionTokenService(
+            @Value("${watering.session.secret:}") String secret,
+            @Value("${watering.session.ttl-hours:12}") long ttlHours,
+            @Value("${watering.session.cache-size:10000}") int cacheSize) {
+        byte[] key;
+        if (secret == null || secret.isBlank()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Не удалось инициализировать подпись токенов.", e);
+        }
+        this.ttl = Duration.ofHours(ttlHours);
+        this.verified = new LruCache<>(cacheSize);
+        this.generations = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * Выдать токен пользователю.
+     *
+     * @param userId ID пользователя
+     * @return токен и момент его истечения
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    public IssuedToken issue(Integer userId) {
+        String generation = generation(userId);
+        if (generation == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+        long expiresAt = Instant.now().plus(ttl).getEpochSecond();
+        String payload = userId + "." + expiresAt;
+        String token = payload + "." + encode(sign(payload, generation));
+        return new IssuedToken(token, userId, Instant.ofEpochSecond(expiresAt));
+    }
+
+    /**
+     * Отозвать токены пользователя после смены пароля или удаления:
+     * следующая проверка перечитает поколение из базы.
+     *
+     * @param userId ID пользователя
+     */
+    public void userChanged(Integer userId) {
+        invalidations.incrementAndGet();
+        generations.remove(userId);
+    }
+
+    /**
+     * Проверить токен.
+     *
+     * @param token значение токена
+     * @return ID пользователя или null, если токен неверен или истёк
+     */
+    public Integer verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        long now = Instant.now().getEpochSecond();
+        Verified cached = verified.get(token);
+        if (cached != null) {
+            if (cached.expiresAt() > now && cached.generation().equals(generation(cached.userId()))) {
+                return cached.userId();
+            }
+            verified.remove(token);
+            return null;
+        }
+
+        int signatureStart = token.lastIndexOf('.');
+        int expiresStart = signatureStart > 0 ? token.lastIndexOf('.', signatureStart - 1) : -1;
+        if (expiresStart <= 0) {
+            return null;
+        }
+
+        String payload = token.substring(0, signatureStart);
+        byte[] signature;
+        Integer userId;
+        long expiresAt;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+            userId = Integer.valueOf(token.substring(0, expiresStart));
+            expiresAt = Long.parseLong(token.substring(expiresStart + 1, signatureStart));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (expiresAt <= now) {
+            return null;
+        }
+        String generation = generation(userId);
+        if (generation == null || !MessageDigest.isEqual(sign(payload, generation), signature)) {
+            return null;
+        }
+
+        verified.put(token, new Verified(userId, expiresAt, generation));
+        return userId;
+    }
+
+    /**
+     * Получить статистику кэша проверенных токенов.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getStats() {
+        return verified.getStats();
+    }
+
+    /**
+     * Поколение пользователя: отпечаток хеша пароля.
+     *
+     * @param userId ID пользователя
+     * @return поколение или null, если пользователь не найден
+     */
+    private String generation(Integer userId) {
+        String cached = generations.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = invalidations.get();
+        String generation = userRepository.findPasswordById(userId)
+                .map(SessionTokenService::fingerprint)
+                .orElse(null);
+        // Сброс во время чтения мог застать старый хеш: такое поколение не кэшируется
+        if (generation != null && invalidations.get() == stamp) {
+            generations.put(userId, generation);
+        }
+        return generation;
+    }
+
+    private byte[] sign(String payload, String generation) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            return mac.doFinal((payload + "." + generation).getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Не удалось подписать токен.", e);
+        }
+    }
+
+    private static String fingerprint(String passwordHash) {
+        try {
+            return encode(MessageDigest.getInstance("SHA-256")
+                    .digest(passwordHash.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Не удалось вычислить поколение пользователя.", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
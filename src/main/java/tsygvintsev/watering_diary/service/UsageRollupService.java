@@ -0,0 +1,260 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.UsageReport;
+import tsygvintsev.watering_diary.dto.UsageRow;
+import tsygvintsev.watering_diary.entity.PlantType;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.util.ReferenceSnapshot;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сервис помесячных и погодовых сводок расхода воды (таблицы Usage_monthly и Usage_yearly).
+ * Для каждого растения и периода хранятся количество поливов, суммарный объём и сумма погрешностей.
+ * Таблицы обновляются приращениями в той же транзакции, что и записи полива,
+ * поэтому отчёт о расходе не группирует таблицу записей.
+ */
+@Service
+public class UsageRollupService {
+
+    /** Таблица сводки для каждой гранулярности */
+    private static final Map<String, String> TABLES = Map.of(
+            "month", "\"Usage_monthly\"",
+            "year", "\"Usage_yearly\"");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ReferenceDataService referenceDataService;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    /**
+     * Приращения сводок, применяемые одним пакетом на таблицу.
+     */
+    public static class Delta {
+        private final Map<String, long[]> monthly = new LinkedHashMap<>();
+        private final Map<String, long[]> yearly = new LinkedHashMap<>();
+
+        /**
+         * Учесть добавленную (знак 1) или удалённую (знак -1) запись.
+         *
+         * @param userPlantId ID растения
+         * @param date дата полива
+         * @param volume объём полива
+         * @param errorRate погрешность
+         * @param sign 1 или -1
+         * @return это же приращение
+         */
+        public Delta add(Integer userPlantId, LocalDate date, int volume, int errorRate, int sign) {
+            accumulate(monthly, userPlantId + ":" + date.withDayOfMonth(1), volume, errorRate, sign);
+            accumulate(yearly, userPlantId + ":" + date.withDayOfYear(1), volume, errorRate, sign);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return monthly.isEmpty();
+        }
+
+        private static void accumulate(Map<String, long[]> sums, String key, int volume, int errorRate, int sign) {
+            long[] periodSums = sums.computeIfAbsent(key, k -> new long[3]);
+            periodSums[0] += sign;
+            periodSums[1] += (long) sign * volume;
+            periodSums[2] += (long) sign * errorRate;
+        }
+    }
+
+    /**
+     * Учесть созданную запись полива.
+     *
+     * @param wateringRecord сохранённая запись
+     */
+    public void recordAdded(WateringRecord wateringRecord) {
+        apply(new Delta().add(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK(), 1));
+    }
+
+    /**
+     * Учесть созданные записи полива одним пакетом.
+     *
+     * @param wateringRecords сохранённые записи
+     */
+    public void recordsAdded(List<WateringRecord> wateringRecords) {
+        Delta delta = new Delta();
+        for (WateringRecord wateringRecord : wateringRecords) {
+            delta.add(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                    wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK(), 1);
+        }
+        apply(delta);
+    }
+
+    /**
+     * Учесть удалённую запись полива.
+     *
+     * @param userPlantId ID растения
+     * @param date дата записи
+     * @param volume объём записи
+     * @param errorRate погрешность записи
+     */
+    public void recordRemoved(Integer userPlantId, LocalDate date, int volume, int errorRate) {
+        apply(new Delta().add(userPlantId, date, volume, errorRate, -1));
+    }
+
+    /**
+     * Учесть изменённую запись полива.
+     *
+     * @param userPlantId ID растения
+     * @param oldDate дата до изменения
+     * @param oldVolume объём до изменения
+     * @param oldErrorRate погрешность до изменения
+     * @param updated запись после изменения
+     */
+    public void recordUpdated(Integer userPlantId, LocalDate oldDate, int oldVolume, int oldErrorRate,
+                              WateringRecord updated) {
+        Delta delta = new Delta()
+                .add(userPlantId, oldDate, oldVolume, oldErrorRate, -1)
+                .add(userPlantId, updated.getDate(), updated.getVolumeWatering(), updated.getErrorRateK(), 1);
+        apply(delta);
+    }
+
+    /**
+     * Применить накопленные приращения: по одному upsert на растение и период в JDBC-пакете.
+     *
+     * @param delta приращения
+     */
+    public void apply(Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        upsert(TABLES.get("month"), delta.monthly);
+        upsert(TABLES.get("year"), delta.yearly);
+    }
+
+    private void upsert(String table, Map<String, long[]> sums) {
+        List<Object[]> args = new ArrayList<>(sums.size());
+        sums.forEach((key, periodSums) -> {
+            if (periodSums[0] == 0 && periodSums[1] == 0 && periodSums[2] == 0) {
+                return;
+            }
+            int separator = key.indexOf(':');
+            args.add(new Object[] {
+                    Integer.valueOf(key.substring(0, separator)),
+                    Date.valueOf(LocalDate.parse(key.substring(separator + 1))),
+                    periodSums[0], periodSums[1], periodSums[2]});
+        });
+        if (args.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO " + table + " (user_plant_id, period, record_count, volume_sum, error_sum) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (user_plant_id, period) DO UPDATE SET " +
+                "record_count = " + table + ".record_count + EXCLUDED.record_count, " +
+                "volume_sum = " + table + ".volume_sum + EXCLUDED.volume_sum, " +
+                "error_sum = " + table + ".error_sum + EXCLUDED.error_sum",
+                args);
+    }
+
+    /**
+     * Получить расход воды пользователя по периодам, по растениям и по типам растений.
+     *
+     * @param userId ID пользователя
+     * @param granularity month или year
+     * @return отчёт о расходе
+     * @throws ResponseStatusException если гранулярность неизвестна или пользователь не найден
+     */
+    public UsageReport getUsage(Integer userId, String granularity) {
+        String table = TABLES.get(granularity);
+        if (table == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Неизвестный период. Допустимо: month, year.");
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        ReferenceSnapshot references = referenceDataService.current();
+        List<UsageRow> plants = new ArrayList<>();
+        Map<String, long[]> byType = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                "SELECT r.user_plant_id, up.name, up.plant_type_id, r.period, " +
+                "r.record_count, r.volume_sum, r.error_sum " +
+                "FROM " + table + " r " +
+                "JOIN \"User_plant\" up ON up.id = r.user_plant_id " +
+                "WHERE up.user_id = ? AND r.record_count > 0 " +
+                "ORDER BY r.period, r.user_plant_id",
+                rs -> {
+                    LocalDate period = rs.getDate(4).toLocalDate();
+                    long count = rs.getLong(5);
+                    long volume = rs.getLong(6);
+                    long errorSum = rs.getLong(7);
+                    plants.add(new UsageRow(rs.getInt(1), rs.getString(2), period,
+                            count, volume, (double) errorSum / count));
+
+                    long[] typeSums = byType.computeIfAbsent(rs.getInt(3) + ":" + period, k -> new long[3]);
+                    typeSums[0] += count;
+                    typeSums[1] += volume;
+                    typeSums[2] += errorSum;
+                },
+                userId);
+
+        List<UsageRow> plantTypes = new ArrayList<>(byType.size());
+        byType.forEach((key, typeSums) -> {
+            int separator = key.indexOf(':');
+            Integer plantTypeId = Integer.valueOf(key.substring(0, separator));
+            PlantType plantType = references.getPlantType(plantTypeId);
+            plantTypes.add(new UsageRow(plantTypeId, plantType != null ? plantType.getName() : null,
+                    LocalDate.parse(key.substring(separator + 1)),
+                    typeSums[0], typeSums[1], (double) typeSums[2] / typeSums[0]));
+        });
+        plantTypes.sort(Comparator.comparing(UsageRow::period).thenComparing(UsageRow::id));
+
+        return new UsageReport(granularity, plants, plantTypes);
+    }
+
+    /**
+     * Построить сводки заново по всей таблице записей и архиву (фоновое заполнение).
+     * Таблицы блокируются на время пересчёта, параллельные приращения ждут его окончания.
+     *
+     * @return количество строк в каждой таблице
+     */
+    @Transactional
+    public Map<String, Integer> backfill() {
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        for (String granularity : List.of("month", "year")) {
+            String table = TABLES.get(granularity);
+            jdbcTemplate.execute("LOCK TABLE " + table + " IN EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM " + table);
+            rows.put(granularity, jdbcTemplate.update(
+                    "INSERT INTO " + table + " (user_plant_id, period, record_count, volume_sum, error_sum) " +
+                    "SELECT user_plant_id, CAST(date_trunc('" + granularity + "', \"date\") AS date), " +
+                    "COUNT(*), SUM(volume_watering), SUM(error_rate_k) " +
+                    "FROM \"Watering_record\" GROUP BY 1, 2"));
+        }
+
+        Delta archived = new Delta();
+        wateringRecordArchive.forEachArchived(record -> archived.add(record.getUserPlantId(), record.getDate(),
+                record.getVolumeWatering(), record.getErrorRateK(), 1));
+        apply(archived);
+        return rows;
+    }
+}
@@ -1,16 +1,22 @@
 package tsygvintsev.watering_diary.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.DuePlant;
+import tsygvintsev.watering_diary.dto.UserPlantStats;
+import tsygvintsev.watering_diary.dto.UserPlantView;
 import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.repository.ProjectionQueryBuilder;
 import tsygvintsev.watering_diary.repository.UserPlantRepository;
 import tsygvintsev.watering_diary.repository.UserRepository;
-import tsygvintsev.watering_diary.repository.PlantTypeRepository;
-import tsygvintsev.watering_diary.repository.MaterialRepository;
+import tsygvintsev.watering_diary.util.FieldSet;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Сервис для управления растениями пользователей.
@@ -25,18 +31,34 @@ public class UserPlantService {
     private UserRepository userRepository;
 
     @Autowired
-    private PlantTypeRepository plantTypeRepository;
+    private ReferenceDataService referenceDataService;
 
     @Autowired
-    private MaterialRepository materialRepository;
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private WateringDueScheduler wateringDueScheduler;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private ProjectionQueryBuilder projectionQueryBuilder;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
 
     /**
-     * Получить список всех растений пользователей.
+     * Получить список всех растений пользователей, отсортированных по названию.
      *
+     * @param fields выбираемые поля
      * @return список всех растений
      */
-    public List<UserPlant> getAllUserPlants() {
-        return userPlantRepository.findAll();
+    public List<UserPlantView> getAllUserPlants(FieldSet<UserPlantView> fields) {
+        return projectionQueryBuilder.list(UserPlant.class, fields, null, Sort.by("name", "id"), null);
     }
 
     /**
@@ -44,27 +66,78 @@ public class UserPlantService {
      *
      * @param id уникальный идентификатор растения
      * @return найденное растение
-     * @throws ResponseStatusException если растение не найдено
+     * @throws ResponseStatusException если растение не найдено или принадлежит другому пользователю
      */
     public UserPlant getUserPlantById(Integer id) {
-        return userPlantRepository.findById(id)
+        UserPlant userPlant = userPlantRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует растения с таким id."));
+        accessControlService.checkOwner(userPlant.getUserId());
+        return userPlant;
     }
 
     /**
      * Получить все растения конкретного пользователя.
      *
      * @param userId ID пользователя
+     * @param fields выбираемые поля
      * @return список растений пользователя
      */
-    public List<UserPlant> getUserPlantsByUserId(Integer userId) {
+    public List<UserPlantView> getUserPlantsByUserId(Integer userId, FieldSet<UserPlantView> fields) {
         if (!userRepository.existsById(userId)) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует пользователя с таким id.");
         }
-        return userPlantRepository.findByUserId(userId);
+        return projectionQueryBuilder.list(UserPlant.class, fields,
+                (root, query, cb) -> cb.equal(root.get("userId"), userId), Sort.by("id"), null);
+    }
+
+    /**
+     * Получить сводку по записям полива каждого растения пользователя.
+     * Считается в базе одним запросом, поэтому размер ответа зависит
+     * от числа растений, а не от длины истории.
+     *
+     * @param userId ID пользователя
+     * @return сводка по каждому растению
+     * @throws ResponseStatusException если пользователь не найден
+     */
+    public List<UserPlantStats> getUserPlantStats(Integer userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+        return userPlantRepository.findStatsByUserId(userId, LocalDate.now());
+    }
+
+    /**
+     * Получить растения пользователя, которые пора поливать.
+     * Данные берутся из планировщика сроков без запросов к записям полива.
+     *
+     * @param userId ID пользователя
+     * @param days на сколько дней вперёд смотреть (0 - срок сегодня или уже прошёл)
+     * @return растения по возрастанию срока полива
+     * @throws ResponseStatusException если пользователь не найден или days отрицательно
+     */
+    public List<DuePlant> getDuePlants(Integer userId, int days) {
+        if (days < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Количество дней не может быть отрицательным.");
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+        return wateringDueScheduler.getDueByUserId(userId, LocalDate.now().plusDays(days));
+    }
+
+    /**
+     * Передать обработчику все растения всех пользователей, срок полива которых наступил.
+     *
+     * @param consumer обработчик растений
+     */
+    public void forEachDuePlant(Consumer<DuePlant> consumer) {
+        wateringDueScheduler.forEachDue(LocalDate.now(), consumer);
     }
 
     /**
@@ -73,7 +146,7 @@ public class UserPlantService {
      * @param userPlant объект растения
      * @return созданное растение
      * @throws ResponseStatusException если пользователь, тип растения или материал не найдены,
-     * а также если пусты или уже заняты
+     * а также если пусты или уже заняты, или растение создаётся для другого пользователя
      */
     public UserPlant createUserPlant(UserPlant userPlant) {
         if (userPlant.getName() == null || userPlant.getName().isBlank()) {
@@ -90,6 +163,7 @@ public class UserPlantService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "ID пользователя не может быть пустым.");
         }
+        accessControlService.checkOwner(userPlant.getUserId());
 
         if (userPlant.getMaterialId() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
@@ -101,12 +175,12 @@ public class UserPlantService {
                     "Не существует пользователя с таким id.");
         }
 
-        if (!plantTypeRepository.existsById(userPlant.getPlantTypeId())) {
+        if (referenceDataService.current().getPlantType(userPlant.getPlantTypeId()) == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует типа растения с таким id.");
         }
 
-        if (!materialRepository.existsById(userPlant.getMaterialId())) {
+        if (referenceDataService.current().getMaterial(userPlant.getMaterialId()) == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует материала с таким id.");
         }
@@ -119,7 +193,10 @@ public class UserPlantService {
                     "У этого пользователя уже есть растение с таким названием и типом.");
         }
 
-        return userPlantRepository.save(userPlant);
+        UserPlant savedUserPlant = userPlantRepository.save(userPlant);
+        wateringDueScheduler.plantChanged(savedUserPlant.getId());
+        resourceVersionService.userPlantsChanged(savedUserPlant.getUserId());
+        return savedUserPlant;
     }
 
     /**
@@ -129,7 +206,7 @@ public class UserPlantService {
      * @param updatedUserPlant объект с обновляемыми полями
      * @return обновлённое растение
      * @throws ResponseStatusException если растение, тип материала или тип растения не найдены,
-     * а также если пусто название растения или у пользователя оно уже есть
+     * а также если пусто название растения, у пользователя оно уже есть или растение принадлежит другому пользователю
      */
     public UserPlant updateUserPlant(Integer id, UserPlant updatedUserPlant) {
         UserPlant userPlant = userPlantRepository.findById(id)
@@ -137,6 +214,7 @@ public class UserPlantService {
                         HttpStatus.NOT_FOUND,
                         "Не существует растения с таким id."
                 ));
+        accessControlService.checkOwner(userPlant.getUserId());
 
         String newName = updatedUserPlant.getName() != null ?
                 updatedUserPlant.getName() : userPlant.getName();
@@ -150,13 +228,13 @@ public class UserPlantService {
         }
 
         if (updatedUserPlant.getPlantTypeId() != null &&
-                !plantTypeRepository.existsById(updatedUserPlant.getPlantTypeId())) {
+                referenceDataService.current().getPlantType(updatedUserPlant.getPlantTypeId()) == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует типа растения с таким id.");
         }
 
         if (updatedUserPlant.getMaterialId() != null &&
-                !materialRepository.existsById(updatedUserPlant.getMaterialId())) {
+                referenceDataService.current().getMaterial(updatedUserPlant.getMaterialId()) == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     "Не существует материала с таким id.");
         }
@@ -190,22 +268,33 @@ public class UserPlantService {
             userPlant.setSoilLoosenerk(updatedUserPlant.getSoilLoosenerk());
         }
 
-        return userPlantRepository.save(userPlant);
+        UserPlant savedUserPlant = userPlantRepository.save(userPlant);
+        wateringDueScheduler.plantChanged(id);
+        recommendationCache.evictUserPlant(id);
+        resourceVersionService.userPlantsChanged(savedUserPlant.getUserId());
+        resourceVersionService.recordsChanged(id);
+        return savedUserPlant;
     }
 
     /**
      * Удалить растение.
      *
      * @param id уникальный идентификатор растения
-     * @throws ResponseStatusException если растение не найдено
+     * @throws ResponseStatusException если растение не найдено или принадлежит другому пользователю
      */
     public UserPlant deleteUserPlant(Integer id) {
         UserPlant userPlant = userPlantRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует растения с таким id."));
+        accessControlService.checkOwner(userPlant.getUserId());
 
         userPlantRepository.delete(userPlant);
+        wateringDueScheduler.plantRemoved(id);
+        wateringRecordArchive.plantRemoved(userPlant.getUserId(), id);
+        recommendationCache.evictUserPlant(id);
+        resourceVersionService.userPlantsChanged(userPlant.getUserId());
+        resourceVersionService.recordsChanged(id);
         return userPlant;
     }
 }
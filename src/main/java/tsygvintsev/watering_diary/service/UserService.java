@@ -4,11 +4,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.UserView;
 import tsygvintsev.watering_diary.entity.User;
 import tsygvintsev.watering_diary.repository.UserRepository;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * Сервис для управления пользователями.
@@ -20,15 +22,31 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    @Autowired
+    private WateringDueScheduler wateringDueScheduler;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private LatestConditionsCache latestConditionsCache;
+
+    @Autowired
+    private PasswordHashingService passwordHashingService;
+
+    @Autowired
+    private SessionTokenService sessionTokenService;
 
     /**
      * Получить список всех пользователей.
      *
      * @return список всех пользователей
      */
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    public List<UserView> getAllUsers() {
+        return userRepository.findAllViews();
     }
 
     /**
@@ -38,9 +56,32 @@ public class UserService {
      * @return true если авторизация успешна
      */
     public boolean authenticate(String login, String rawPassword) {
+        return authenticateUser(login, rawPassword).isPresent();
+    }
+
+    /**
+     * Авторизация пользователя с возвратом найденного пользователя.
+     *
+     * @param login логин
+     * @param rawPassword пароль в открытом виде
+     * @return пользователь или пустое значение, если логин или пароль неверны
+     * @throws ResponseStatusException если пул проверки паролей перегружен (503 SERVICE_UNAVAILABLE)
+     */
+    public Optional<User> authenticateUser(String login, String rawPassword) {
+        if (login == null || rawPassword == null) {
+            return Optional.empty();
+        }
         return userRepository.findByLogin(login)
-                .filter(user -> passwordEncoder.matches(rawPassword, user.getPassword()))
-                .isPresent();
+                .filter(user -> passwordHashingService.matches(rawPassword, user.getPassword()));
+    }
+
+    /**
+     * Получить метрики пула хеширования паролей.
+     *
+     * @return глубина очереди, задержки хеширования и число отказов
+     */
+    public Map<String, Object> getPasswordHashingStats() {
+        return passwordHashingService.getStats();
     }
 
     /**
@@ -92,7 +133,7 @@ public class UserService {
                     "Пароль должен быть не меньше 6 символов.");
         }
 
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        user.setPassword(passwordHashingService.encode(user.getPassword()));
 
         return userRepository.save(user);
     }
@@ -117,7 +158,7 @@ public class UserService {
                 throw new ResponseStatusException(HttpStatus.CONFLICT,
                         "Пароль должен быть не меньше 6 символов.");
             }
-            user.setPassword(passwordEncoder.encode(updatedUser.getPassword()));
+            user.setPassword(passwordHashingService.encode(updatedUser.getPassword()));
         }
         if (updatedUser.getName() != null) {
             user.setName(updatedUser.getName());
@@ -129,7 +170,12 @@ public class UserService {
             user.setPatronymic(updatedUser.getPatronymic());
         }
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        if (updatedUser.getPassword() != null) {
+            sessionTokenService.userChanged(id);
+        }
+        resourceVersionService.usersChanged();
+        return savedUser;
     }
 
     /**
@@ -143,5 +189,10 @@ public class UserService {
                 "Не существует пользователя с таким id."));
 
         userRepository.delete(user);
+        sessionTokenService.userChanged(id);
+        latestConditionsCache.evictUser(id);
+        wateringDueScheduler.userRemoved(id);
+        wateringRecordArchive.userRemoved(id);
+        resourceVersionService.usersChanged();
     }
 }
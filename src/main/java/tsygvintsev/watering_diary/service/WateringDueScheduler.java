@@ -0,0 +1,451 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.dto.DuePlant;
+import tsygvintsev.watering_diary.entity.PlantType;
+import tsygvintsev.watering_diary.util.TransactionHooks;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Планировщик сроков полива.
+ * Для каждого растения оценивается дата следующего полива: последний полив плюс интервал,
+ * который берётся из истории поливов (средний интервал между первым и последним поливом)
+ * с поправкой на коэффициент полива типа растения. Все растения всех пользователей лежат
+ * в упорядоченном по сроку множестве, поэтому изменение записи стоит O(log n),
+ * а выборка растений, которые пора поливать, не обращается к таблице записей.
+ *
+ * <p>Состояние загружается одним проходом при старте и дальше обновляется
+ * после фиксации транзакций, изменяющих записи и растения. Перечитывание растений
+ * из базы идёт без блокировки: она берётся только для применения результата.
+ * Каждое перечитывание получает номер, и результат, начатый раньше уже применённого
+ * или раньше удаления растения, отбрасывается.</p>
+ */
+@Service
+public class WateringDueScheduler {
+
+    /** Столько записей нужно, чтобы интервал из истории начал учитываться */
+    private static final int MIN_HISTORY_RECORDS = 3;
+
+    /** Доля интервала из истории в итоговой оценке */
+    private static final double HISTORY_WEIGHT = 0.7;
+
+    private static final String PLANT_SQL =
+            "SELECT up.id, up.user_id, up.plant_type_id, " +
+            "MIN(wr.\"date\"), MAX(wr.\"date\"), COUNT(wr.id) " +
+            "FROM \"User_plant\" up " +
+            "LEFT JOIN \"Watering_record\" wr ON wr.user_plant_id = up.id ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReferenceDataService referenceDataService;
+
+    /**
+     * Состояние растения. Поля меняются только под блокировкой.
+     */
+    private static final class PlantEntry {
+        final int userPlantId;
+        int userId;
+        Integer plantTypeId;
+        LocalDate firstDate;
+        LocalDate lastDate;
+        long recordCount;
+        int intervalDays;
+        long dueDay;
+
+        PlantEntry(int userPlantId) {
+            this.userPlantId = userPlantId;
+        }
+
+        long key() {
+            return key(dueDay, userPlantId);
+        }
+
+        static long key(long dueDay, int userPlantId) {
+            return (dueDay << 32) | (userPlantId & 0xFFFFFFFFL);
+        }
+    }
+
+    private final Map<Integer, PlantEntry> plants = new HashMap<>();
+    private final Map<Integer, Set<Integer>> plantsByUser = new HashMap<>();
+
+    /** Ключи (день срока, ID растения) по возрастанию */
+    private final TreeSet<Long> queue = new TreeSet<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Номер последнего начатого перечитывания. Меняется под блокировкой */
+    private long reloadSequence;
+
+    /** Количество незавершённых перечитываний по растениям */
+    private final Map<Integer, Integer> pendingReloads = new HashMap<>();
+
+    /** Номер последнего применённого перечитывания или удаления растения, пока есть незавершённые */
+    private final Map<Integer, Long> appliedReloads = new HashMap<>();
+
+    /**
+     * Строка состояния растения из базы.
+     */
+    private record PlantRow(int userPlantId, int userId, Integer plantTypeId,
+                            LocalDate firstDate, LocalDate lastDate, long recordCount) {
+    }
+
+    /**
+     * Загрузить сроки всех растений одним запросом при старте.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAll() {
+        lock.lock();
+        try {
+            plants.clear();
+            plantsByUser.clear();
+            queue.clear();
+            jdbcTemplate.query(PLANT_SQL + "GROUP BY up.id, up.user_id, up.plant_type_id",
+                    rs -> {
+                        put(rs.getInt(1), rs.getInt(2), (Integer) rs.getObject(3),
+                                toLocalDate(rs.getDate(4)), toLocalDate(rs.getDate(5)), rs.getLong(6));
+                    });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Учесть новую запись полива после фиксации транзакции.
+     * Если растение уже известно, пересчёт идёт без запросов к базе.
+     *
+     * @param userPlantId ID растения
+     * @param date дата полива
+     */
+    public void recordAdded(Integer userPlantId, LocalDate date) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                PlantEntry entry = plants.get(userPlantId);
+                // Пока растение перечитывается, приращение к старому состоянию потеряло бы результат
+                if (entry != null && !pendingReloads.containsKey(userPlantId)) {
+                    LocalDate firstDate = entry.firstDate == null || date.isBefore(entry.firstDate)
+                            ? date : entry.firstDate;
+                    LocalDate lastDate = entry.lastDate == null || date.isAfter(entry.lastDate)
+                            ? date : entry.lastDate;
+                    put(userPlantId, entry.userId, entry.plantTypeId, firstDate, lastDate, entry.recordCount + 1);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            reload(List.of(userPlantId));
+        });
+    }
+
+    /**
+     * Перечитать растение после фиксации транзакции: запись полива изменена или удалена,
+     * растение создано или изменено.
+     *
+     * @param userPlantId ID растения
+     */
+    public void plantChanged(Integer userPlantId) {
+        TransactionHooks.afterCommit(() -> reload(List.of(userPlantId)));
+    }
+
+    /**
+     * Перечитать растения одним запросом после фиксации транзакции, например после импорта.
+     *
+     * @param userPlantIds ID растений
+     */
+    public void plantChanged(Collection<Integer> userPlantIds) {
+        if (userPlantIds.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = List.copyOf(userPlantIds);
+        TransactionHooks.afterCommit(() -> reload(ids));
+    }
+
+    /**
+     * Убрать растение после фиксации транзакции.
+     *
+     * @param userPlantId ID растения
+     */
+    public void plantRemoved(Integer userPlantId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                remove(userPlantId);
+                supersedeReloads(userPlantId);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Убрать все растения пользователя после фиксации транзакции.
+     *
+     * @param userId ID пользователя
+     */
+    public void userRemoved(Integer userId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                Set<Integer> userPlants = plantsByUser.get(userId);
+                if (userPlants != null) {
+                    for (Integer userPlantId : new ArrayList<>(userPlants)) {
+                        remove(userPlantId);
+                        supersedeReloads(userPlantId);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Пересчитать сроки растений типа после изменения его коэффициента полива.
+     *
+     * @param plantTypeId ID типа растения
+     */
+    public void plantTypeChanged(Integer plantTypeId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                for (PlantEntry entry : new ArrayList<>(plants.values())) {
+                    if (plantTypeId.equals(entry.plantTypeId)) {
+                        put(entry.userPlantId, entry.userId, entry.plantTypeId,
+                                entry.firstDate, entry.lastDate, entry.recordCount);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Растения пользователя, срок полива которых наступит не позже даты.
+     *
+     * @param userId ID пользователя
+     * @param until последняя дата срока включительно
+     * @return растения по возрастанию срока
+     */
+    public List<DuePlant> getDueByUserId(Integer userId, LocalDate until) {
+        long untilDay = until.toEpochDay();
+        List<DuePlant> due = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Integer userPlantId : plantsByUser.getOrDefault(userId, Set.of())) {
+                PlantEntry entry = plants.get(userPlantId);
+                if (entry.dueDay <= untilDay) {
+                    due.add(toDuePlant(entry));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        due.sort((a, b) -> a.dueDate().compareTo(b.dueDate()));
+        return due;
+    }
+
+    /**
+     * Передать обработчику все растения, срок полива которых наступил к дате,
+     * по возрастанию срока. Растения выбираются порциями, блокировка
+     * не удерживается во время работы обработчика.
+     *
+     * @param until последняя дата срока включительно
+     * @param consumer обработчик растений
+     */
+    public void forEachDue(LocalDate until, Consumer<DuePlant> consumer) {
+        long upperKey = PlantEntry.key(until.toEpochDay() + 1, 0);
+        Long fromKey = null;
+        List<DuePlant> chunk = new ArrayList<>(256);
+        do {
+            chunk.clear();
+            lock.lock();
+            try {
+                NavigableSet<Long> range = fromKey == null
+                        ? queue.headSet(upperKey, false)
+                        : queue.subSet(fromKey, false, upperKey, false);
+                for (Long key : range) {
+                    chunk.add(toDuePlant(plants.get((int) key.longValue())));
+                    fromKey = key;
+                    if (chunk.size() == 256) {
+                        break;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            chunk.forEach(consumer);
+        } while (chunk.size() == 256);
+    }
+
+    /**
+     * Размер планировщика.
+     *
+     * @return количество растений
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return plants.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Перечитать растения одним запросом. Запрос выполняется без блокировки,
+     * под блокировкой применяются только результаты, которые не устарели.
+     * Вызывается без удерживаемой блокировки.
+     */
+    private void reload(List<Integer> userPlantIds) {
+        long ticket;
+        lock.lock();
+        try {
+            ticket = ++reloadSequence;
+            userPlantIds.forEach(userPlantId -> pendingReloads.merge(userPlantId, 1, Integer::sum));
+        } finally {
+            lock.unlock();
+        }
+
+        // null, если запрос не удался: тогда состояние не меняется
+        Map<Integer, PlantRow> rows = null;
+        try {
+            Map<Integer, PlantRow> loaded = new HashMap<>();
+            for (PlantRow row : jdbcTemplate.query(
+                    PLANT_SQL + "WHERE up.id = ANY(?) GROUP BY up.id, up.user_id, up.plant_type_id",
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", userPlantIds.toArray())),
+                    (rs, rowNum) -> new PlantRow(rs.getInt(1), rs.getInt(2), (Integer) rs.getObject(3),
+                            toLocalDate(rs.getDate(4)), toLocalDate(rs.getDate(5)), rs.getLong(6)))) {
+                loaded.put(row.userPlantId(), row);
+            }
+            rows = loaded;
+        } finally {
+            lock.lock();
+            try {
+                for (Integer userPlantId : userPlantIds) {
+                    Long applied = appliedReloads.get(userPlantId);
+                    if (rows != null && (applied == null || applied < ticket)) {
+                        PlantRow row = rows.get(userPlantId);
+                        if (row != null) {
+                            put(row.userPlantId(), row.userId(), row.plantTypeId(),
+                                    row.firstDate(), row.lastDate(), row.recordCount());
+                        } else {
+                            remove(userPlantId);
+                        }
+                        appliedReloads.put(userPlantId, ticket);
+                    }
+                    if (pendingReloads.merge(userPlantId, -1, Integer::sum) == 0) {
+                        pendingReloads.remove(userPlantId);
+                        appliedReloads.remove(userPlantId);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Отбросить результаты перечитываний, начатых до удаления растения.
+     * Вызывается под блокировкой.
+     */
+    private void supersedeReloads(Integer userPlantId) {
+        if (pendingReloads.containsKey(userPlantId)) {
+            appliedReloads.put(userPlantId, ++reloadSequence);
+        }
+    }
+
+    private void put(int userPlantId, int userId, Integer plantTypeId,
+                     LocalDate firstDate, LocalDate lastDate, long recordCount) {
+        PlantEntry entry = plants.get(userPlantId);
+        if (entry != null) {
+            queue.remove(entry.key());
+            if (entry.userId != userId) {
+                removeFromUser(entry.userId, userPlantId);
+            }
+        } else {
+            entry = new PlantEntry(userPlantId);
+            plants.put(userPlantId, entry);
+        }
+
+        entry.userId = userId;
+        entry.plantTypeId = plantTypeId;
+        entry.firstDate = firstDate;
+        entry.lastDate = lastDate;
+        entry.recordCount = recordCount;
+        entry.intervalDays = estimateInterval(entry);
+        entry.dueDay = lastDate != null
+                ? lastDate.toEpochDay() + entry.intervalDays
+                : LocalDate.now().toEpochDay();
+
+        queue.add(entry.key());
+        plantsByUser.computeIfAbsent(userId, id -> new HashSet<>()).add(userPlantId);
+    }
+
+    private void remove(Integer userPlantId) {
+        PlantEntry entry = plants.remove(userPlantId);
+        if (entry != null) {
+            queue.remove(entry.key());
+            removeFromUser(entry.userId, userPlantId);
+        }
+    }
+
+    private void removeFromUser(int userId, Integer userPlantId) {
+        Set<Integer> userPlants = plantsByUser.get(userId);
+        if (userPlants != null) {
+            userPlants.remove(userPlantId);
+            if (userPlants.isEmpty()) {
+                plantsByUser.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Оценить интервал между поливами.
+     * Базовый интервал по типу: от 14 дней при коэффициенте 0 до 3 дней при коэффициенте 100.
+     * При достаточной истории он смешивается со средним интервалом из истории.
+     */
+    private int estimateInterval(PlantEntry entry) {
+        PlantType plantType = entry.plantTypeId != null
+                ? referenceDataService.current().getPlantType(entry.plantTypeId)
+                : null;
+        int wateringK = plantType != null && plantType.getWateringK() != null ? plantType.getWateringK() : 50;
+        double typeInterval = 14 - Math.min(100, Math.max(0, wateringK)) * 0.11;
+
+        double interval = typeInterval;
+        if (entry.recordCount >= MIN_HISTORY_RECORDS && entry.firstDate != null) {
+            double historyInterval = (double) (entry.lastDate.toEpochDay() - entry.firstDate.toEpochDay())
+                    / (entry.recordCount - 1);
+            interval = HISTORY_WEIGHT * historyInterval + (1 - HISTORY_WEIGHT) * typeInterval;
+        }
+        return (int) Math.max(1, Math.round(interval));
+    }
+
+    private static DuePlant toDuePlant(PlantEntry entry) {
+        return new DuePlant(entry.userPlantId, entry.userId, LocalDate.ofEpochDay(entry.dueDay),
+                entry.lastDate, entry.intervalDays);
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+}
@@ -0,0 +1,160 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.util.LruCache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Кэш рекомендованных объёмов полива по растениям пользователей.
+ * Запись сбрасывается при изменении любого входного параметра расчёта:
+ * самого растения, коэффициентов типа растения и материала,
+ * условий владельца и записей полива растения.
+ */
+@Service
+public class WateringRecommendationCache {
+
+    /**
+     * Закэшированная рекомендация вместе с ключами зависимостей.
+     */
+    private record Entry(Integer userId, Integer plantTypeId, Integer materialId, Integer volume) {}
+
+    private final LruCache<Integer, Entry> cache;
+
+    /** Согласует сброс поколения с записью в кэш */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Номер поколения, увеличивается при каждом сбросе */
+    private final AtomicLong generation = new AtomicLong();
+
+    public WateringRecommendationCache(
+            @Value("${watering.recommendation-cache.max-size:10000}") int maxSize) {
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * Получить рекомендацию из кэша.
+     *
+     * @param userPlantId ID растения
+     * @return объём полива в мл или null, если записи нет
+     */
+    public Integer get(Integer userPlantId) {
+        Entry entry = cache.get(userPlantId);
+        return entry != null ? entry.volume() : null;
+    }
+
+    /**
+     * Получить владельца растения, рекомендация которого есть в кэше.
+     *
+     * @param userPlantId ID растения
+     * @return ID пользователя или null, если записи нет
+     */
+    public Integer getUserId(Integer userPlantId) {
+        Entry entry = cache.peek(userPlantId);
+        return entry != null ? entry.userId() : null;
+    }
+
+    /**
+     * Текущее поколение кэша. Запоминается до начала расчёта
+     * и передаётся в {@link #put(UserPlant, Integer, long)}.
+     *
+     * @return номер поколения
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Сохранить рекомендацию, если с начала расчёта не было сбросов.
+     *
+     * @param userPlant растение
+     * @param volume рассчитанный объём в мл
+     * @param startGeneration поколение на момент начала расчёта
+     */
+    public void put(UserPlant userPlant, Integer volume, long startGeneration) {
+        Entry entry = new Entry(userPlant.getUserId(), userPlant.getPlantTypeId(),
+                userPlant.getMaterialId(), volume);
+        lock.lock();
+        try {
+            if (generation.get() == startGeneration) {
+                cache.put(userPlant.getId(), entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбросить рекомендацию растения.
+     *
+     * @param userPlantId ID растения
+     */
+    public void evictUserPlant(Integer userPlantId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            cache.remove(userPlantId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбросить рекомендации всех растений пользователя.
+     *
+     * @param userId ID пользователя
+     */
+    public void evictUser(Integer userId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            cache.removeIf(entry -> Objects.equals(entry.userId(), userId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбросить рекомендации всех растений заданного типа.
+     *
+     * @param plantTypeId ID типа растения
+     */
+    public void evictPlantType(Integer plantTypeId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            cache.removeIf(entry -> Objects.equals(entry.plantTypeId(), plantTypeId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбросить рекомендации всех растений в горшках из заданного материала.
+     *
+     * @param materialId ID материала
+     */
+    public void evictMaterial(Integer materialId) {
+        lock.lock();
+        try {
+            generation.incrementAndGet();
+            cache.removeIf(entry -> Objects.equals(entry.materialId(), materialId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Получить статистику кэша.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+}
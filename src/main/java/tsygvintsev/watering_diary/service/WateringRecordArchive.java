@@ -0,0 +1,578 @@
+package tsygvintsev.watering_diary.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.util.LruCache;
+import tsygvintsev.watering_diary.util.MergingIterator;
+import tsygvintsev.watering_diary.util.TransactionHooks;
+import tsygvintsev.watering_diary.util.WateringRecordSegment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Архив старых записей полива.
+ * Записи старше горизонта (watering.archive.horizon-days) переносятся из таблицы Watering_record
+ * в сжатые сегменты на диске, по каталогу на пользователя (см. {@link WateringRecordSegment}).
+ * Последняя запись каждого растения всегда остаётся в таблице: от неё считаются погрешность
+ * следующего полива и срок полива. Накопленные показатели и сводки расхода при переносе
+ * не меняются, записи в них уже учтены.
+ *
+ * <p>Перенос идёт порциями: записи удаляются из таблицы и пишутся во временный файл
+ * в одной транзакции, файл переименовывается после фиксации. Если приложение остановилось
+ * между фиксацией и переименованием, временный файл принимается при следующем старте;
+ * если транзакция не зафиксирована, он удаляется.</p>
+ *
+ * <p>При удалении растения его записи вычищаются из сегментов после фиксации удаления.
+ * Если приложение остановилось раньше, записи остаются в файлах, но не выдаются:
+ * обход архива пропускает записи растений, которых уже нет.</p>
+ */
+@Service
+public class WateringRecordArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(WateringRecordArchive.class);
+
+    /** Порядок записей в выдаче: по дате и ID от новых к старым */
+    public static final Comparator<WateringRecord> NEWEST_FIRST =
+            Comparator.comparing(WateringRecord::getDate).thenComparing(WateringRecord::getId).reversed();
+
+    /** Максимальное количество записей в одном сегменте */
+    private static final int MAX_SEGMENT_RECORDS = 50_000;
+
+    /** Горизонт не может быть короче окна, в котором записи ещё можно создавать и изменять */
+    private static final int MIN_HORIZON_DAYS = 30;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PURGE_SUFFIX = ".purge";
+
+    private static final String PLANT_IDS_SQL = "SELECT id FROM \"User_plant\" WHERE user_id = ?";
+
+    private static final String CANDIDATE_USERS_SQL =
+            "SELECT DISTINCT up.user_id FROM \"Watering_record\" wr " +
+            "JOIN \"User_plant\" up ON up.id = wr.user_plant_id " +
+            "WHERE wr.\"date\" < ? AND EXISTS (SELECT 1 FROM \"Watering_record\" n " +
+            "WHERE n.user_plant_id = wr.user_plant_id AND n.\"date\" > wr.\"date\")";
+
+    private static final String MOVE_SQL =
+            "DELETE FROM \"Watering_record\" WHERE id IN (" +
+            "SELECT wr.id FROM \"Watering_record\" wr " +
+            "JOIN \"User_plant\" up ON up.id = wr.user_plant_id " +
+            "WHERE up.user_id = ? AND wr.\"date\" < ? AND EXISTS (SELECT 1 FROM \"Watering_record\" n " +
+            "WHERE n.user_plant_id = wr.user_plant_id AND n.\"date\" > wr.\"date\") " +
+            "ORDER BY wr.\"date\", wr.id LIMIT ? FOR UPDATE OF wr) " +
+            "RETURNING id, user_plant_id, \"date\", \"time\", volume_watering, error_rate_k";
+
+    private static final RowMapper<WateringRecord> RECORD_MAPPER = (rs, rowNum) -> {
+        WateringRecord record = new WateringRecord(rs.getInt("user_plant_id"),
+                rs.getObject("date", LocalDate.class), rs.getObject("time", LocalTime.class),
+                rs.getInt("volume_watering"), rs.getInt("error_rate_k"));
+        record.setId(rs.getInt("id"));
+        return record;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int horizonDays;
+    private final LruCache<Integer, List<WateringRecordSegment>> openSegments;
+
+    /** Блокировка каталогов архива: перенос, восстановление и открытие сегментов */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong archivedRecords = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    public WateringRecordArchive(
+            @Value("${watering.archive.enabled:false}") boolean enabled,
+            @Value("${watering.archive.dir:data/watering-archive}") String directory,
+            @Value("${watering.archive.horizon-days:365}") int horizonDays,
+            @Value("${watering.archive.max-open-users:1024}") int maxOpenUsers) {
+        if (horizonDays < MIN_HORIZON_DAYS) {
+            throw new IllegalArgumentException(
+                    "watering.archive.horizon-days должен быть не меньше " + MIN_HORIZON_DAYS);
+        }
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.horizonDays = horizonDays;
+        this.openSegments = new LruCache<>(maxOpenUsers);
+    }
+
+    /**
+     * Довести до конца переносы, прерванные остановкой приложения,
+     * и удалить файлы недописанных очисток.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        lock.lock();
+        try (Stream<Path> userDirectories = Files.list(directory)) {
+            for (Path userDirectory : userDirectories.toList()) {
+                try (Stream<Path> files = Files.list(userDirectory)) {
+                    for (Path file : files.toList()) {
+                        if (file.toString().endsWith(TEMP_SUFFIX)) {
+                            recoverTemp(file);
+                        } else if (file.toString().endsWith(PURGE_SUFFIX)) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                }
+            }
+            openSegments.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recoverTemp(Path file) throws IOException {
+        Integer firstId = null;
+        try {
+            Iterator<WateringRecord> records = WateringRecordSegment.open(file).iterator();
+            while (records.hasNext()) {
+                int id = records.next().getId();
+                firstId = firstId == null ? id : Math.min(firstId, id);
+            }
+        } catch (IOException e) {
+            // недописанный файл: транзакция переноса не могла быть зафиксирована
+            firstId = null;
+        }
+
+        boolean stillHot = firstId == null || Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM \"Watering_record\" WHERE id = ?)", Boolean.class, firstId));
+        if (stillHot) {
+            Files.deleteIfExists(file);
+            log.info("Discarded uncommitted archive segment {}", file);
+        } else {
+            Path segment = segmentPath(file.getParent(), firstId);
+            Files.move(file, segment, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Recovered committed archive segment {}", segment);
+        }
+    }
+
+    /**
+     * Плановый перенос старых записей, если архив включён.
+     */
+    @Scheduled(initialDelayString = "${watering.archive.compaction-interval-ms:21600000}",
+            fixedDelayString = "${watering.archive.compaction-interval-ms:21600000}")
+    public void scheduledCompaction() {
+        if (enabled) {
+            compact();
+        }
+    }
+
+    /**
+     * Перенести в архив записи старше горизонта у всех пользователей.
+     *
+     * @return количество перенесённых записей, пользователей и записанных сегментов
+     * @throws ResponseStatusException если перенос уже выполняется (409)
+     */
+    public Map<String, Object> compact() {
+        if (!lock.tryLock()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Перенос записей в архив уже выполняется.");
+        }
+        try {
+            LocalDate cutoff = LocalDate.now().minusDays(horizonDays);
+            List<Integer> userIds = jdbcTemplate.queryForList(CANDIDATE_USERS_SQL, Integer.class, cutoff);
+
+            long moved = 0;
+            int segments = 0;
+            for (Integer userId : userIds) {
+                int batch;
+                do {
+                    batch = compactUser(userId, cutoff);
+                    moved += batch;
+                    segments += batch > 0 ? 1 : 0;
+                } while (batch == MAX_SEGMENT_RECORDS);
+            }
+            archivedRecords.addAndGet(moved);
+            compactions.incrementAndGet();
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("cutoff", cutoff);
+            report.put("users", userIds.size());
+            report.put("segments", segments);
+            report.put("records", moved);
+            return report;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int compactUser(Integer userId, LocalDate cutoff) {
+        Path userDirectory = userDirectory(userId);
+        Path temp = userDirectory.resolve("pending" + SEGMENT_SUFFIX + TEMP_SUFFIX);
+        try {
+            Files.createDirectories(userDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<WateringRecord> records;
+        try {
+            records = new TransactionTemplate(transactionManager).execute(status -> {
+                List<WateringRecord> moved = new ArrayList<>(
+                        jdbcTemplate.query(MOVE_SQL, RECORD_MAPPER, userId, cutoff, MAX_SEGMENT_RECORDS));
+                if (!moved.isEmpty()) {
+                    moved.sort(NEWEST_FIRST);
+                    try {
+                        WateringRecordSegment.write(temp, moved);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return moved;
+            });
+        } catch (RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        Path segmentPath = segmentPath(userDirectory,
+                records.stream().mapToInt(WateringRecord::getId).min().getAsInt());
+        try {
+            Files.move(temp, segmentPath, StandardCopyOption.ATOMIC_MOVE);
+            List<WateringRecordSegment> segments = openSegments.peek(userId);
+            if (segments != null) {
+                List<WateringRecordSegment> updated = new ArrayList<>(segments);
+                updated.add(WateringRecordSegment.open(segmentPath));
+                openSegments.put(userId, List.copyOf(updated));
+            }
+        } catch (IOException e) {
+            // записи уже удалены из таблицы: временный файл будет принят при следующем старте
+            throw new UncheckedIOException(e);
+        }
+        return records.size();
+    }
+
+    /**
+     * Архивные записи пользователя по фильтру, по (дата, ID) от новых к старым.
+     * Сегменты распаковываются лениво, по мере чтения потока.
+     *
+     * @param userId ID пользователя
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @return поток записей без связанного растения
+     */
+    public Stream<WateringRecord> scan(Integer userId, Integer plantId, LocalDate dateFrom, LocalDate dateTo) {
+        List<Iterator<WateringRecord>> sources = new ArrayList<>();
+        for (WateringRecordSegment segment : segments(userId)) {
+            if (segment.mayContain(plantId, dateFrom, dateTo)) {
+                sources.add(new LazySegmentIterator(segment));
+            }
+        }
+        if (sources.isEmpty()) {
+            return Stream.empty();
+        }
+
+        Stream<WateringRecord> records = stream(sources.size() == 1
+                ? sources.get(0)
+                : new MergingIterator<>(NEWEST_FIRST, sources));
+        if (plantId != null) {
+            records = records.filter(record -> plantId.equals(record.getUserPlantId()));
+        }
+        if (dateTo != null) {
+            records = records.dropWhile(record -> record.getDate().isAfter(dateTo));
+        }
+        if (dateFrom != null) {
+            records = records.takeWhile(record -> !record.getDate().isBefore(dateFrom));
+        }
+        return records;
+    }
+
+    /**
+     * Слить упорядоченные потоки оперативных и архивных записей по (дата, ID) от новых к старым.
+     *
+     * @param hot записи из таблицы в том же порядке
+     * @param archived архивные записи
+     * @return общий поток
+     */
+    public static Stream<WateringRecord> merge(Stream<WateringRecord> hot, Stream<WateringRecord> archived) {
+        return merge(NEWEST_FIRST, hot, archived);
+    }
+
+    /**
+     * Слить упорядоченные потоки оперативных и архивных записей в заданном порядке,
+     * например когда записи таблицы выбраны сразу в виде для ответа.
+     *
+     * @param order порядок обоих потоков
+     * @param hot записи из таблицы
+     * @param archived архивные записи
+     * @param <T> тип элементов
+     * @return общий поток
+     */
+    public static <T> Stream<T> merge(Comparator<? super T> order, Stream<T> hot, Stream<T> archived) {
+        return stream(new MergingIterator<>(order, List.of(hot.iterator(), archived.iterator())))
+                .onClose(hot::close)
+                .onClose(archived::close);
+    }
+
+    /**
+     * Обойти все архивные записи всех пользователей, например для пересчёта накопленных показателей.
+     * Записи удалённых растений пропускаются.
+     *
+     * @param consumer обработчик записей
+     */
+    public void forEachArchived(Consumer<WateringRecord> consumer) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> userDirectories = Files.list(directory)) {
+            for (Path userDirectory : userDirectories.toList()) {
+                Integer userId = parseUserId(userDirectory);
+                if (userId != null) {
+                    Set<Integer> plantIds = new HashSet<>(
+                            jdbcTemplate.queryForList(PLANT_IDS_SQL, Integer.class, userId));
+                    for (WateringRecordSegment segment : segments(userId)) {
+                        segment.iterator().forEachRemaining(record -> {
+                            if (plantIds.contains(record.getUserPlantId())) {
+                                consumer.accept(record);
+                            }
+                        });
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Удалить архив пользователя после фиксации транзакции удаления пользователя.
+     *
+     * @param userId ID пользователя
+     */
+    public void userRemoved(Integer userId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                openSegments.remove(userId);
+                Path userDirectory = userDirectory(userId);
+                if (Files.isDirectory(userDirectory)) {
+                    try (Stream<Path> files = Files.list(userDirectory)) {
+                        for (Path file : files.toList()) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                    Files.deleteIfExists(userDirectory);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to remove archive of user {}", userId, e);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Удалить архивные записи растения после фиксации транзакции удаления растения.
+     * Сегменты с записями растения переписываются без них, опустевшие сегменты удаляются.
+     *
+     * @param userId ID владельца растения
+     * @param userPlantId ID растения
+     */
+    public void plantRemoved(Integer userId, Integer userPlantId) {
+        TransactionHooks.afterCommit(() -> {
+            lock.lock();
+            try {
+                for (WateringRecordSegment segment : segments(userId)) {
+                    if (segment.mayContain(userPlantId, null, null)) {
+                        purge(segment, userPlantId);
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to remove archived records of plant {}", userPlantId, e);
+            } finally {
+                openSegments.remove(userId);
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Переписать сегмент без записей растения. Старое отображение файла остаётся
+     * действительным для уже начатых чтений.
+     */
+    private static void purge(WateringRecordSegment segment, Integer userPlantId) throws IOException {
+        List<WateringRecord> kept = new ArrayList<>(segment.count());
+        segment.iterator().forEachRemaining(record -> {
+            if (!userPlantId.equals(record.getUserPlantId())) {
+                kept.add(record);
+            }
+        });
+        if (kept.isEmpty()) {
+            Files.deleteIfExists(segment.path());
+            return;
+        }
+
+        Path temp = segment.path().resolveSibling(segment.path().getFileName() + PURGE_SUFFIX);
+        try {
+            WateringRecordSegment.write(temp, kept);
+            Files.move(temp, segment.path(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Получить статистику архива.
+     *
+     * @return настройки, счётчики переносов и статистика открытых каталогов
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("horizonDays", horizonDays);
+        stats.put("compactions", compactions.get());
+        stats.put("archivedRecords", archivedRecords.get());
+        stats.put("openUsers", openSegments.getStats());
+        return stats;
+    }
+
+    /**
+     * Открытые сегменты пользователя; при первом обращении каталог читается с диска.
+     */
+    private List<WateringRecordSegment> segments(Integer userId) {
+        List<WateringRecordSegment> segments = openSegments.get(userId);
+        if (segments != null) {
+            return segments;
+        }
+
+        lock.lock();
+        try {
+            segments = openSegments.peek(userId);
+            if (segments != null) {
+                return segments;
+            }
+            Path userDirectory = userDirectory(userId);
+            List<WateringRecordSegment> opened = new ArrayList<>();
+            if (Files.isDirectory(userDirectory)) {
+                try (Stream<Path> files = Files.list(userDirectory)) {
+                    for (Path file : files.filter(f -> f.toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                        opened.add(WateringRecordSegment.open(file));
+                    }
+                }
+            }
+            segments = List.copyOf(opened);
+            openSegments.put(userId, segments);
+            return segments;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path userDirectory(Integer userId) {
+        return directory.resolve("user-" + userId);
+    }
+
+    /** Имя сегмента - наименьший ID его записей: каждая запись переносится один раз */
+    private static Path segmentPath(Path userDirectory, int firstId) {
+        return userDirectory.resolve("segment-" + firstId + SEGMENT_SUFFIX);
+    }
+
+    private static Integer parseUserId(Path userDirectory) {
+        String name = userDirectory.getFileName().toString();
+        if (!name.startsWith("user-")) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(name.substring("user-".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // временный файл будет удалён при следующем старте
+        }
+    }
+
+    /**
+     * Итератор сегмента, распаковывающий его при первом обращении.
+     */
+    private static final class LazySegmentIterator implements Iterator<WateringRecord> {
+        private final WateringRecordSegment segment;
+        private Iterator<WateringRecord> records;
+
+        LazySegmentIterator(WateringRecordSegment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return records().hasNext();
+        }
+
+        @Override
+        public WateringRecord next() {
+            return records().next();
+        }
+
+        private Iterator<WateringRecord> records() {
+            if (records == null) {
+                try {
+                    records = segment.iterator();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return records;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package tsygvintsev.watering_diary.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.ImportReport;
+import tsygvintsev.watering_diary.dto.WateringRecordContext;
+import tsygvintsev.watering_diary.dto.WateringRecordHistoryPoint;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.UserPlantRepository;
+import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.repository.WateringRecordRepository;
+import tsygvintsev.watering_diary.util.TabularFileParser;
+import tsygvintsev.watering_diary.util.TransactionHooks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Сервис импорта записей полива из CSV и XLSX.
+ * Файл читается потоково, записи вставляются JDBC-пакетами.
+ * Данные для расчёта погрешности загружаются один раз на растение, а не на каждую строку.
+ * Ошибочные строки не прерывают импорт и попадают в отчёт.
+ */
+@Service
+public class WateringRecordImportService {
+
+    /** Размер JDBC-пакета вставки */
+    private static final int BATCH_SIZE = 500;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO \"Watering_record\" (id, user_plant_id, \"date\", \"time\", volume_watering, error_rate_k) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Резервирует несколько диапазонов идентификаторов за один запрос.
+     * Каждое значение - верхняя граница диапазона, как у оптимизатора pooled в Hibernate.
+     */
+    private static final String ALLOCATE_IDS_SQL =
+            "SELECT nextval('\"" + WateringRecord.ID_SEQUENCE + "\"') FROM generate_series(1, ?)";
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("M/d/yy"));
+
+    private static final List<DateTimeFormatter> TIME_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("H:mm"),
+            DateTimeFormatter.ofPattern("H:mm:ss"));
+
+    @Autowired
+    private WateringRecordRepository wateringRecordRepository;
+
+    @Autowired
+    private UserPlantRepository userPlantRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WateringRecordService wateringRecordService;
+
+    @Autowired
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private PlantStatsService plantStatsService;
+
+    @Autowired
+    private UsageRollupService usageRollupService;
+
+    @Autowired
+    private WateringDueScheduler wateringDueScheduler;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    /**
+     * Импортировать записи полива пользователя из файла.
+     * Первая строка файла - заголовок. Колонки: userPlantId или plantName (Имя растения),
+     * date (Дата), time (Время), volumeWatering (Объём полива (мл)).
+     * Ограничение на давность даты не применяется: импорт предназначен для переноса истории.
+     *
+     * @param file CSV или XLSX файл
+     * @param userId ID пользователя
+     * @return отчёт об импорте
+     * @throws ResponseStatusException если пользователь не найден или не совпадает с вошедшим, файл пуст,
+     * не читается или в заголовке нет обязательных колонок
+     */
+    @Transactional
+    public ImportReport importRecords(MultipartFile file, Integer userId) {
+        accessControlService.checkOwner(userId);
+
+        if (file == null || file.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Файл для импорта не может быть пустым.");
+        }
+
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        ImportSession session = new ImportSession(userId, userPlantRepository.findByUserIdOrderById(userId));
+        String fileName = file.getOriginalFilename() != null
+                ? file.getOriginalFilename().toLowerCase(Locale.ROOT)
+                : "";
+
+        try {
+            if (fileName.endsWith(".xlsx")) {
+                Path tempFile = Files.createTempFile("watering-import-", ".xlsx");
+                try {
+                    file.transferTo(tempFile);
+                    TabularFileParser.parseXlsx(tempFile, session);
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            } else {
+                try (InputStream inputStream = file.getInputStream()) {
+                    TabularFileParser.parseCsv(inputStream, session);
+                }
+            }
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Не удалось прочитать файл.");
+        }
+
+        session.flush();
+        TransactionHooks.afterCommit(() -> session.touchedPlantIds.forEach(recommendationCache::evictUserPlant));
+        session.touchedPlantIds.forEach(resourceVersionService::recordsChanged);
+        wateringDueScheduler.plantChanged(session.touchedPlantIds);
+
+        return session.report;
+    }
+
+    /**
+     * Строка, готовая к вставке.
+     */
+    private record PendingRecord(Integer userPlantId, LocalDate date, LocalTime time,
+                                 Integer volumeWatering, Integer errorRateK) {}
+
+    /**
+     * Данные растения, загружаемые один раз за импорт.
+     *
+     * @param context параметры, коэффициенты и последние условия
+     * @param history даты и погрешности записей растения (существующих, включая архивные, и уже импортированных)
+     */
+    private record PlantState(WateringRecordContext context, TreeMap<LocalDate, Integer> history) {}
+
+    /**
+     * Состояние одного импорта: разбор заголовка, кэш растений и накопление пакета.
+     */
+    private class ImportSession implements TabularFileParser.RowHandler {
+        private final Integer userId;
+        private final ImportReport report = new ImportReport();
+        private final Map<Integer, UserPlant> plantsById = new HashMap<>();
+        private final Map<String, List<UserPlant>> plantsByName = new HashMap<>();
+        private final Map<Integer, PlantState> plantStates = new HashMap<>();
+        private final Set<Integer> touchedPlantIds = new HashSet<>();
+        private final List<PendingRecord> batch = new ArrayList<>(BATCH_SIZE);
+
+        private int plantIdColumn = -1;
+        private int plantNameColumn = -1;
+        private int dateColumn = -1;
+        private int timeColumn = -1;
+        private int volumeColumn = -1;
+        private boolean headerRead;
+
+        ImportSession(Integer userId, List<UserPlant> userPlants) {
+            this.userId = userId;
+            for (UserPlant userPlant : userPlants) {
+                plantsById.put(userPlant.getId(), userPlant);
+                plantsByName.computeIfAbsent(normalize(userPlant.getName()), name -> new ArrayList<>())
+                        .add(userPlant);
+            }
+        }
+
+        @Override
+        public void row(int rowNumber, List<String> cells) {
+            if (!headerRead) {
+                readHeader(cells);
+                headerRead = true;
+                return;
+            }
+
+            String error = importRow(cells);
+            if (error != null) {
+                report.reject(rowNumber, error);
+            }
+        }
+
+        private void readHeader(List<String> cells) {
+            for (int i = 0; i < cells.size(); i++) {
+                switch (normalize(cells.get(i))) {
+                    case "userplantid", "id растения" -> plantIdColumn = i;
+                    case "plantname", "имя растения" -> plantNameColumn = i;
+                    case "date", "дата" -> dateColumn = i;
+                    case "time", "время" -> timeColumn = i;
+                    case "volumewatering", "объём полива (мл)", "объем полива (мл)" -> volumeColumn = i;
+                    default -> { }
+                }
+            }
+
+            if ((plantIdColumn < 0 && plantNameColumn < 0)
+                    || dateColumn < 0 || timeColumn < 0 || volumeColumn < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "В заголовке файла нет обязательных колонок: userPlantId или plantName, " +
+                                "date, time, volumeWatering.");
+            }
+        }
+
+        /**
+         * Проверить строку, рассчитать погрешность и добавить в пакет.
+         *
+         * @param cells значения ячеек
+         * @return причина отклонения или null
+         */
+        private String importRow(List<String> cells) {
+            UserPlant userPlant;
+            String plantId = cell(cells, plantIdColumn);
+            if (!plantId.isEmpty()) {
+                try {
+                    userPlant = plantsById.get(Integer.valueOf(plantId));
+                } catch (NumberFormatException e) {
+                    return "Некорректный ID растения.";
+                }
+            } else {
+                List<UserPlant> byName = plantsByName.getOrDefault(normalize(cell(cells, plantNameColumn)), List.of());
+                if (byName.size() > 1) {
+                    return "У пользователя несколько растений с таким названием, укажите userPlantId.";
+                }
+                userPlant = byName.isEmpty() ? null : byName.get(0);
+            }
+
+            if (userPlant == null) {
+                return "Не существует растения с таким id у этого пользователя.";
+            }
+
+            LocalDate date = parseDate(cell(cells, dateColumn));
+            if (date == null) {
+                return "Некорректная дата.";
+            }
+
+            LocalTime time = parseTime(cell(cells, timeColumn));
+            if (time == null) {
+                return "Некорректное время.";
+            }
+
+            Integer volume;
+            try {
+                volume = Integer.valueOf(cell(cells, volumeColumn));
+            } catch (NumberFormatException e) {
+                return "Некорректный объём полива.";
+            }
+
+            PlantState state = plantStates.computeIfAbsent(userPlant.getId(), this::loadPlantState);
+            WateringRecordContext context = state.context();
+            if (context == null || context.getPlantTypeId() == null
+                    || context.getMaterialId() == null || context.getTemperature() == null) {
+                return "Некоторые данные для этого растения не заполнены.";
+            }
+
+            if (state.history().containsKey(date)) {
+                return "Запись о поливе этого растения на эту дату уже существует.";
+            }
+
+            Map.Entry<LocalDate, Integer> previous = state.history().lowerEntry(date);
+            Integer errorRate = wateringRecordService.calculateErrorRate(
+                    context, previous != null ? previous.getValue() : null, volume);
+
+            state.history().put(date, errorRate);
+            batch.add(new PendingRecord(userPlant.getId(), date, time, volume, errorRate));
+            touchedPlantIds.add(userPlant.getId());
+
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+            return null;
+        }
+
+        /**
+         * Загрузить данные растения: одним запросом параметры и условия,
+         * вторым - даты и погрешности его записей. Архивные записи тоже учитываются:
+         * иначе импорт истории повторил бы перенесённые даты и брал бы погрешность не той записи.
+         */
+        private PlantState loadPlantState(Integer userPlantId) {
+            WateringRecordContext context = wateringRecordRepository
+                    .findContext(userPlantId, LocalDate.now())
+                    .orElse(null);
+
+            TreeMap<LocalDate, Integer> history = new TreeMap<>();
+            for (WateringRecordHistoryPoint point : wateringRecordRepository.findHistoryByUserPlantId(userPlantId)) {
+                history.put(point.getDate(), point.getErrorRateK());
+            }
+            try (Stream<WateringRecord> archived = wateringRecordArchive.scan(userId, userPlantId, null, null)) {
+                archived.forEach(record -> history.putIfAbsent(record.getDate(), record.getErrorRateK()));
+            }
+            return new PlantState(context, history);
+        }
+
+        /**
+         * Вставить накопленный пакет.
+         */
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Iterator<Integer> ids = allocateIds(batch.size()).iterator();
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, BATCH_SIZE, (statement, record) -> {
+                statement.setInt(1, ids.next());
+                statement.setInt(2, record.userPlantId());
+                statement.setDate(3, Date.valueOf(record.date()));
+                statement.setTime(4, Time.valueOf(record.time()));
+                statement.setInt(5, record.volumeWatering());
+                statement.setInt(6, record.errorRateK());
+            });
+
+            PlantStatsService.Delta delta = new PlantStatsService.Delta();
+            UsageRollupService.Delta usageDelta = new UsageRollupService.Delta();
+            for (PendingRecord record : batch) {
+                delta.add(record.userPlantId(), record.date(), record.volumeWatering(), record.errorRateK());
+                usageDelta.add(record.userPlantId(), record.date(), record.volumeWatering(), record.errorRateK(), 1);
+            }
+            plantStatsService.apply(delta);
+            usageRollupService.apply(usageDelta);
+
+            report.addImported(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * Зарезервировать идентификаторы записей из общей с Hibernate последовательности.
+     *
+     * @param count количество идентификаторов
+     * @return идентификаторы в порядке возрастания
+     */
+    private List<Integer> allocateIds(int count) {
+        int size = WateringRecord.ID_ALLOCATION_SIZE;
+        List<Integer> upperBounds = jdbcTemplate.queryForList(
+                ALLOCATE_IDS_SQL, Integer.class, (count + size - 1) / size);
+
+        List<Integer> ids = new ArrayList<>(count);
+        for (Integer upperBound : upperBounds) {
+            for (int id = upperBound - size + 1; id <= upperBound && ids.size() < count; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static String cell(List<String> cells, int column) {
+        return column >= 0 && column < cells.size() ? cells.get(column).trim() : "";
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static LocalDate parseDate(String value) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value, format);
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return null;
+    }
+
+    private static LocalTime parseTime(String value) {
+        for (DateTimeFormatter format : TIME_FORMATS) {
+            try {
+                return LocalTime.parse(value, format);
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return null;
+    }
+}
@@ -1,22 +1,49 @@
 package tsygvintsev.watering_diary.service;
 
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.dto.WateringRecordContext;
+import tsygvintsev.watering_diary.dto.WateringRecordHistoryPoint;
+import tsygvintsev.watering_diary.dto.WateringRecordPage;
+import tsygvintsev.watering_diary.dto.WateringRecordRow;
+import tsygvintsev.watering_diary.dto.WateringRecordView;
 import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.ProjectionQueryBuilder;
 import tsygvintsev.watering_diary.repository.WateringRecordRepository;
+import tsygvintsev.watering_diary.repository.WateringRecordRowReader;
+import tsygvintsev.watering_diary.repository.WateringRecordSpecifications;
 import tsygvintsev.watering_diary.repository.UserPlantRepository;
 import tsygvintsev.watering_diary.entity.UserPlant;
 import tsygvintsev.watering_diary.entity.PlantType;
 import tsygvintsev.watering_diary.entity.Material;
 import tsygvintsev.watering_diary.entity.Conditions;
-import tsygvintsev.watering_diary.repository.PlantTypeRepository;
-import tsygvintsev.watering_diary.repository.MaterialRepository;
-import tsygvintsev.watering_diary.repository.ConditionsRepository;
+import tsygvintsev.watering_diary.repository.UserRepository;
+import tsygvintsev.watering_diary.util.FieldSet;
+import tsygvintsev.watering_diary.util.RecordCursor;
+import tsygvintsev.watering_diary.util.ReferenceSnapshot;
+import tsygvintsev.watering_diary.util.RecordStreamWriter;
+import tsygvintsev.watering_diary.util.TransactionHooks;
+import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.List;
+import java.util.TreeMap;
 
 /**
  * Сервис для управления записями полива.
@@ -32,21 +59,87 @@ public class WateringRecordService {
     private UserPlantRepository userPlantRepository;
 
     @Autowired
-    private PlantTypeRepository plantTypeRepository;
+    private ReferenceDataService referenceDataService;
 
     @Autowired
-    private MaterialRepository materialRepository;
+    private LatestConditionsCache latestConditionsCache;
 
     @Autowired
-    private ConditionsRepository conditionsRepository;
+    private UserRepository userRepository;
+
+    @Autowired
+    private WateringRecommendationCache recommendationCache;
+
+    @Autowired
+    private PlantStatsService plantStatsService;
+
+    @Autowired
+    private UsageRollupService usageRollupService;
+
+    @Autowired
+    private WateringDueScheduler wateringDueScheduler;
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private WateringRecordRowReader wateringRecordRowReader;
+
+    @Autowired
+    private WateringRecordArchive wateringRecordArchive;
+
+    @Autowired
+    private ProjectionQueryBuilder projectionQueryBuilder;
+
+    @Autowired
+    private AccessControlService accessControlService;
+
+    /** Размер страницы записей по умолчанию */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /** Максимальный размер страницы записей */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /** Максимальное количество записей в одном пакетном создании */
+    public static final int MAX_BATCH_SIZE = 500;
 
     /**
-     * Получить все записи полива.
+     * Разобрать параметр {@code fields} для страниц записей.
+     * Дата и ID выбираются всегда: по ним строится курсор и сливаются архивные записи.
      *
-     * @return список всех записей полива
+     * @param fields список полей через запятую (необязательно)
+     * @return набор полей записи
+     * @throws ResponseStatusException если запрошено неизвестное поле
      */
-    public List<WateringRecord> getAllWateringRecords() {
-        return wateringRecordRepository.findAll();
+    public static FieldSet<WateringRecordView> pageFields(String fields) {
+        return FieldSet.parse(WateringRecordView.class, fields, "date", "id");
+    }
+
+    /**
+     * Получить страницу всех записей полива (от новых к старым).
+     * Выдаются только записи из таблицы, без архива.
+     *
+     * @param cursor курсор предыдущей страницы (необязательно)
+     * @param limit размер страницы (необязательно)
+     * @param fields выбираемые поля
+     * @return страница записей полива
+     * @throws ResponseStatusException если курсор или размер страницы некорректны
+     */
+    public WateringRecordPage getAllWateringRecords(String cursor, Integer limit,
+                                                    FieldSet<WateringRecordView> fields) {
+        int pageSize = resolvePageSize(limit);
+
+        Specification<WateringRecord> where = null;
+        if (cursor != null && !cursor.isBlank()) {
+            RecordCursor after = RecordCursor.decode(cursor);
+            where = WateringRecordSpecifications.olderThan(after.date(), after.id());
+        }
+
+        return toPage(projectionQueryBuilder.list(WateringRecord.class, fields, where,
+                Sort.by(Sort.Direction.DESC, "date", "id"), pageSize + 1), pageSize);
     }
 
     /**
@@ -54,65 +147,240 @@ public class WateringRecordService {
      *
      * @param id уникальный идентификатор записи
      * @return найденная запись
-     * @throws ResponseStatusException если запись не найдена
+     * @throws ResponseStatusException если запись не найдена или принадлежит другому пользователю
      */
     public WateringRecord getWateringRecordById(Integer id) {
-        return wateringRecordRepository.findById(id)
+        WateringRecord wateringRecord = wateringRecordRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует записи о поливе с таким id."));
+        checkPlantOwner(wateringRecord.getUserPlantId());
+        return wateringRecord;
     }
 
     /**
-     * Получить все записи полива для конкретного растения.
+     * Проверить, что растение существует и принадлежит текущему пользователю.
+     * Вызывается до проверки If-None-Match, чтобы условный запрос не отдавал версию
+     * чужих или несуществующих данных.
      *
      * @param userPlantId ID растения
-     * @return список записей полива растения
+     * @throws ResponseStatusException если растение не найдено или принадлежит другому пользователю
      */
-    public List<WateringRecord> getWateringRecordsByUserPlantId(Integer userPlantId) {
-        if (!userPlantRepository.existsById(userPlantId)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Не существует растения пользователя с таким id.");
+    public void checkPlantAccess(Integer userPlantId) {
+        Integer userId = userPlantRepository.findUserIdById(userPlantId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Не существует растения пользователя с таким id."));
+        accessControlService.checkOwner(userId);
+    }
+
+    /**
+     * Проверить, что растение принадлежит текущему пользователю.
+     *
+     * @param userPlantId ID растения
+     * @throws ResponseStatusException если растение принадлежит другому пользователю
+     */
+    private void checkPlantOwner(Integer userPlantId) {
+        userPlantRepository.findUserIdById(userPlantId).ifPresent(accessControlService::checkOwner);
+    }
+
+    /**
+     * Получить страницу записей полива конкретного растения (от новых к старым).
+     * Записи из таблицы сливаются с архивными.
+     *
+     * @param userPlantId ID растения
+     * @param cursor курсор предыдущей страницы (необязательно)
+     * @param limit размер страницы (необязательно)
+     * @param fields выбираемые поля
+     * @return страница записей полива растения
+     * @throws ResponseStatusException если растение не найдено или принадлежит другому пользователю,
+     * курсор или размер страницы некорректны
+     */
+    public WateringRecordPage getWateringRecordsByUserPlantId(Integer userPlantId, String cursor, Integer limit,
+                                                              FieldSet<WateringRecordView> fields) {
+        Integer userId = userPlantRepository.findUserIdById(userPlantId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Не существует растения пользователя с таким id."));
+        accessControlService.checkOwner(userId);
+
+        int pageSize = resolvePageSize(limit);
+
+        Specification<WateringRecord> where = WateringRecordSpecifications.forPlant(userPlantId);
+        Stream<WateringRecord> archived;
+        if (cursor == null || cursor.isBlank()) {
+            archived = wateringRecordArchive.scan(userId, userPlantId, null, null);
+        } else {
+            RecordCursor after = RecordCursor.decode(cursor);
+            where = where.and(WateringRecordSpecifications.olderThan(after.date(), after.id()));
+            archived = wateringRecordArchive.scan(userId, userPlantId, null, after.date())
+                    .filter(record -> record.getDate().isBefore(after.date()) || record.getId() < after.id());
+        }
+        List<WateringRecordView> records = projectionQueryBuilder.list(WateringRecord.class, fields, where,
+                Sort.by(Sort.Direction.DESC, "date", "id"), pageSize + 1);
+
+        try (Stream<WateringRecordView> merged = WateringRecordArchive.merge(WateringRecordView.NEWEST_FIRST,
+                records.stream(), archived.map(WateringRecordView::of))) {
+            return toPage(merged.limit(pageSize + 1L).toList(), pageSize);
         }
-        return wateringRecordRepository.findByUserPlantId(userPlantId);
     }
 
     /**
-     * Получить отфильтрованные записи полива.
+     * Проверить размер страницы.
+     *
+     * @param limit запрошенный размер страницы
+     * @return размер страницы
+     * @throws ResponseStatusException если размер вне допустимого диапазона
+     */
+    private int resolvePageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ".");
+        }
+
+        return limit;
+    }
+
+    /**
+     * Сформировать страницу из выборки размером pageSize + 1.
+     *
+     * @param records выборка записей
+     * @param pageSize размер страницы
+     * @return страница с курсором, если есть следующая
+     */
+    private WateringRecordPage toPage(List<WateringRecordView> records, int pageSize) {
+        if (records.size() <= pageSize) {
+            return new WateringRecordPage(records, null);
+        }
+
+        List<WateringRecordView> items = records.subList(0, pageSize);
+        WateringRecordView last = items.get(pageSize - 1);
+        return new WateringRecordPage(items, new RecordCursor(last.date(), last.id()).encode());
+    }
+
+    /**
+     * Получить отфильтрованные записи полива вместе с архивными (от новых к старым).
      *
      * @param plantId ID растения (необязательно)
      * @param dateFrom начальная дата (необязательно)
      * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
      * @return список записей полива
      */
     public List<WateringRecord> getFilteredRecords(Integer plantId, LocalDate dateFrom, LocalDate dateTo, Integer userId) {
-        List<UserPlant> userPlants = userPlantRepository.findByUserIdOrderById(userId);
-        List<Integer> userPlantIds = userPlants.stream()
-                .map(UserPlant::getId)
-                .collect(Collectors.toList());
-
-        List<WateringRecord> records = wateringRecordRepository
-                .findByUserPlantIdInOrderByDateDesc(userPlantIds);
+        List<WateringRecord> records = wateringRecordRepository.findAll(
+                WateringRecordSpecifications.filter(plantId, dateFrom, dateTo, userId),
+                Sort.by(Sort.Direction.DESC, "date", "id"));
+        try (Stream<WateringRecord> merged = WateringRecordArchive.merge(records.stream(),
+                archivedRecords(plantId, dateFrom, dateTo, userId))) {
+            return merged.toList();
+        }
+    }
 
-        if (plantId != null) {
-            records = records.stream()
-                    .filter(r -> r.getUserPlantId().equals(plantId))
-                    .collect(Collectors.toList());
+    /**
+     * Посчитать количество отфильтрованных записей полива.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
+     * @return количество записей
+     */
+    public long countFilteredRecords(Integer plantId, LocalDate dateFrom, LocalDate dateTo, Integer userId) {
+        long hot = wateringRecordRepository.count(
+                WateringRecordSpecifications.filter(plantId, dateFrom, dateTo, userId));
+        try (Stream<WateringRecord> archived = archivedRecords(plantId, dateFrom, dateTo, userId)) {
+            return hot + archived.count();
         }
+    }
 
-        if (dateFrom != null) {
-            records = records.stream()
-                    .filter(r -> !r.getDate().isBefore(dateFrom))
-                    .collect(Collectors.toList());
+    /**
+     * Передать отфильтрованные записи полива потоком, не загружая их все в память.
+     * Записи читаются курсором внутри транзакции вместе с растением и его типом
+     * и отсоединяются от контекста сразу после чтения; архивные записи вливаются в поток по дате.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
+     * @param writer получатель потока записей
+     * @throws IOException при ошибке записи
+     */
+    @Transactional(readOnly = true)
+    public void streamFilteredRecords(Integer plantId, LocalDate dateFrom, LocalDate dateTo, Integer userId,
+                                      RecordStreamWriter writer) throws IOException {
+        try (Stream<WateringRecord> records = wateringRecordRepository.findBy(
+                WateringRecordSpecifications.filter(plantId, dateFrom, dateTo, userId),
+                query -> query.sortBy(Sort.by(Sort.Direction.DESC, "date", "id"))
+                        .project("userPlant", "userPlant.plantType")
+                        .stream());
+             Stream<WateringRecord> merged = WateringRecordArchive.merge(records.peek(entityManager::detach),
+                     archivedRecords(plantId, dateFrom, dateTo, userId))) {
+            writer.write(merged);
         }
+    }
 
-        if (dateTo != null) {
-            records = records.stream()
-                    .filter(r -> !r.getDate().isAfter(dateTo))
-                    .collect(Collectors.toList());
+    /**
+     * Передать отфильтрованные записи полива построчно прямо из JDBC-курсора, без создания сущностей.
+     * Архивные записи вставляются между строками курсора по дате.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @param userId ID пользователя
+     * @param handler обработчик строк
+     * @throws IOException при ошибке записи
+     */
+    @Transactional(readOnly = true)
+    public void streamFilteredRows(Integer plantId, LocalDate dateFrom, LocalDate dateTo, Integer userId,
+                                   WateringRecordRowReader.RowHandler handler) throws IOException {
+        try (Stream<WateringRecord> archivedStream = archivedRecords(plantId, dateFrom, dateTo, userId)) {
+            Iterator<WateringRecord> archived = archivedStream.iterator();
+            WateringRecord[] next = {archived.hasNext() ? archived.next() : null};
+
+            wateringRecordRowReader.forEachRow(plantId, dateFrom, dateTo, userId, row -> {
+                while (next[0] != null && (next[0].getDate().isAfter(row.date())
+                        || (next[0].getDate().equals(row.date()) && next[0].getId() > row.id()))) {
+                    handler.handle(toRow(next[0]));
+                    next[0] = archived.hasNext() ? archived.next() : null;
+                }
+                handler.handle(row);
+            });
+            while (next[0] != null) {
+                handler.handle(toRow(next[0]));
+                next[0] = archived.hasNext() ? archived.next() : null;
+            }
         }
+    }
 
-        return records;
+    /**
+     * Архивные записи пользователя по фильтру с привязанными растениями.
+     * Записи удалённых растений пропускаются.
+     */
+    private Stream<WateringRecord> archivedRecords(Integer plantId, LocalDate dateFrom, LocalDate dateTo,
+                                                   Integer userId) {
+        Stream<WateringRecord> archived = wateringRecordArchive.scan(userId, plantId, dateFrom, dateTo);
+        Map<Integer, UserPlant> plants = new HashMap<>();
+        boolean[] loaded = {false};
+        return archived
+                .peek(record -> {
+                    if (!loaded[0]) {
+                        userPlantRepository.findWithReferencesByUserId(userId)
+                                .forEach(userPlant -> plants.put(userPlant.getId(), userPlant));
+                        loaded[0] = true;
+                    }
+                    record.setUserPlant(plants.get(record.getUserPlantId()));
+                })
+                .filter(record -> record.getUserPlant() != null);
+    }
+
+    private static WateringRecordRow toRow(WateringRecord record) {
+        UserPlant userPlant = record.getUserPlant();
+        return new WateringRecordRow(record.getId(), record.getUserPlantId(), userPlant.getName(),
+                userPlant.getPlantType() != null ? userPlant.getPlantType().getName() : null,
+                record.getDate(), record.getTime(), record.getVolumeWatering(), record.getErrorRateK());
     }
 
     /**
@@ -120,50 +388,146 @@ public class WateringRecordService {
      *
      * @param wateringRecord объект записи
      * @return созданная запись с рассчитанной погрешностью
-     * @throws ResponseStatusException если дата полива старше 7 дней, часть полей не заполнена, растение не найдено,
-     * а также если запись полива на эту дату этого растения уже существует
+     * @throws ResponseStatusException если дата полива старше 7 дней, часть полей не заполнена, растение не найдено
+     * или принадлежит другому пользователю, а также если запись полива на эту дату этого растения уже существует
      */
+    @Transactional
     public WateringRecord createWateringRecord(WateringRecord wateringRecord) {
-        if (wateringRecord.getUserPlantId() == null) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "ID растения не может быть пустым.");
+        checkRequiredFields(wateringRecord);
+
+        WateringRecordContext context = loadContext(
+                wateringRecord.getUserPlantId(),
+                wateringRecord.getDate());
+        accessControlService.checkOwner(context.getUserId());
+
+        if (context.getDuplicateDate()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Запись о поливе этого растения на эту дату уже существует.");
         }
 
-        if (wateringRecord.getDate() == null) {
+        if (wateringRecord.getDate().isBefore(LocalDate.now().minusDays(7))) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Дата не может быть пустой.");
+                    "Данные устарели. Дата полива старше 7 дней.");
         }
 
-        if (wateringRecord.getTime() == null) {
+        wateringRecord = applyErrorRate(wateringRecord, context);
+
+        WateringRecord savedRecord = wateringRecordRepository.save(wateringRecord);
+        plantStatsService.recordAdded(savedRecord);
+        usageRollupService.recordAdded(savedRecord);
+        wateringDueScheduler.recordAdded(savedRecord.getUserPlantId(), savedRecord.getDate());
+        TransactionHooks.afterCommit(() -> recommendationCache.evictUserPlant(savedRecord.getUserPlantId()));
+        resourceVersionService.recordsChanged(savedRecord.getUserPlantId());
+        return savedRecord;
+    }
+
+    /**
+     * Создать несколько записей полива в одной транзакции.
+     * Данные для расчёта всех растений загружаются двумя запросами, записи вставляются
+     * JDBC-пакетами. При ошибке в любой записи не сохраняется ни одна.
+     *
+     * @param wateringRecords список записей
+     * @return созданные записи в исходном порядке
+     * @throws ResponseStatusException если список пуст или слишком велик, а также по тем же причинам,
+     * что и {@link #createWateringRecord(WateringRecord)}, с указанием номера записи
+     */
+    @Transactional
+    public List<WateringRecord> createWateringRecords(List<WateringRecord> wateringRecords) {
+        if (wateringRecords == null || wateringRecords.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Время не может быть пустым.");
+                    "Список записей не может быть пустым.");
         }
 
-        if (wateringRecord.getVolumeWatering() == null) {
+        if (wateringRecords.size() > MAX_BATCH_SIZE) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Объем полива не может быть пустым.");
+                    "Слишком много записей. Максимум: " + MAX_BATCH_SIZE + ".");
         }
 
-        if (!userPlantRepository.existsById(wateringRecord.getUserPlantId())) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Не существует растения с таким id.");
+        LocalDate oldestAllowed = LocalDate.now().minusDays(7);
+        Set<Integer> userPlantIds = new HashSet<>();
+        LocalDate minDate = null;
+        for (int i = 0; i < wateringRecords.size(); i++) {
+            WateringRecord wateringRecord = wateringRecords.get(i);
+            try {
+                checkRequiredFields(wateringRecord);
+            } catch (ResponseStatusException e) {
+                throw batchError(i, e);
+            }
+
+            if (wateringRecord.getDate().isBefore(oldestAllowed)) {
+                throw batchError(i, new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Данные устарели. Дата полива старше 7 дней."));
+            }
+            userPlantIds.add(wateringRecord.getUserPlantId());
+            if (minDate == null || wateringRecord.getDate().isBefore(minDate)) {
+                minDate = wateringRecord.getDate();
+            }
         }
 
-        if (wateringRecordRepository.existsByUserPlantIdAndDate(
-                wateringRecord.getUserPlantId(),
-                wateringRecord.getDate())) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT,
-                    "Запись о поливе этого растения на эту дату уже существует.");
+        // Погрешность до самой ранней даты пакета берётся из контекста, дальше - из истории
+        Map<Integer, WateringRecordContext> contexts = new HashMap<>();
+        Map<Integer, TreeMap<LocalDate, Integer>> histories = new HashMap<>();
+        for (WateringRecordContext context : wateringRecordRepository.findContexts(userPlantIds, minDate)) {
+            contexts.put(context.getUserPlantId(), context);
+            histories.put(context.getUserPlantId(), new TreeMap<>());
         }
 
-        if (wateringRecord.getDate().isBefore(LocalDate.now().minusDays(7))) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Данные устарели. Дата полива старше 7 дней.");
+        for (WateringRecordHistoryPoint point : wateringRecordRepository
+                .findHistoryByUserPlantIdInAndDateGreaterThanEqual(userPlantIds, minDate)) {
+            histories.get(point.getUserPlantId()).put(point.getDate(), point.getErrorRateK());
         }
 
-        wateringRecord = autoCalculateErrorRate(wateringRecord);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < wateringRecords.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> wateringRecords.get(i).getDate()));
+
+        for (Integer i : order) {
+            WateringRecord wateringRecord = wateringRecords.get(i);
+            WateringRecordContext context = contexts.get(wateringRecord.getUserPlantId());
+            TreeMap<LocalDate, Integer> history = histories.get(wateringRecord.getUserPlantId());
+
+            if (context == null) {
+                throw batchError(i, new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Не существует растения с таким id."));
+            }
+
+            try {
+                accessControlService.checkOwner(context.getUserId());
+            } catch (ResponseStatusException e) {
+                throw batchError(i, e);
+            }
+
+            if (history.containsKey(wateringRecord.getDate())) {
+                throw batchError(i, new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Запись о поливе этого растения на эту дату уже существует."));
+            }
 
-        return wateringRecordRepository.save(wateringRecord);
+            if (context.getPlantTypeId() == null
+                    || context.getMaterialId() == null
+                    || context.getTemperature() == null) {
+                throw batchError(i, new ResponseStatusException(HttpStatus.CONFLICT,
+                        "Некоторые данные для этого растения не заполнены."));
+            }
+
+            Map.Entry<LocalDate, Integer> previous = history.lowerEntry(wateringRecord.getDate());
+            Integer errorRate = calculateErrorRate(context,
+                    previous != null ? previous.getValue() : context.getPreviousErrorRateK(),
+                    wateringRecord.getVolumeWatering());
+
+            wateringRecord.setId(null);
+            wateringRecord.setErrorRateK(errorRate);
+            history.put(wateringRecord.getDate(), errorRate);
+        }
+
+        List<WateringRecord> savedRecords = wateringRecordRepository.saveAll(wateringRecords);
+        plantStatsService.recordsAdded(savedRecords);
+        usageRollupService.recordsAdded(savedRecords);
+        savedRecords.forEach(record -> wateringDueScheduler.recordAdded(record.getUserPlantId(), record.getDate()));
+        TransactionHooks.afterCommit(() -> userPlantIds.forEach(recommendationCache::evictUserPlant));
+        userPlantIds.forEach(resourceVersionService::recordsChanged);
+        return savedRecords;
     }
 
     /**
@@ -173,24 +537,31 @@ public class WateringRecordService {
      * @param id уникальный идентификатор записи
      * @param updatedWateringRecord объект с обновляемыми полями
      * @return обновлённая запись
-     * @throws ResponseStatusException если дата полива старше 7 дней, запись полива не найдена,
-     * а также если запись полива на эту дату этого растения уже существует
+     * @throws ResponseStatusException если дата полива старше 7 дней, запись полива не найдена
+     * или принадлежит другому пользователю, а также если запись полива на эту дату этого растения уже существует
      */
+    @Transactional
     public WateringRecord updateWateringRecord(Integer id, WateringRecord updatedWateringRecord) {
         WateringRecord wateringRecord = wateringRecordRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует записи о поливе с таким id."
                 ));
+        LocalDate previousDate = wateringRecord.getDate();
+        int previousVolume = wateringRecord.getVolumeWatering();
+        int previousErrorRate = wateringRecord.getErrorRateK();
 
         LocalDate newDate = updatedWateringRecord.getDate();
         LocalDate oldDate = wateringRecord.getDate();
 
+        WateringRecordContext context = loadContext(
+                wateringRecord.getUserPlantId(),
+                newDate != null ? newDate : oldDate);
+        accessControlService.checkOwner(context.getUserId());
+
         if (newDate != null &&
                 !newDate.equals(oldDate)) {
-            if (wateringRecordRepository.existsByUserPlantIdAndDate(
-                    wateringRecord.getUserPlantId(),
-                    newDate)) {
+            if (context.getDuplicateDate()) {
                 throw new ResponseStatusException(HttpStatus.CONFLICT,
                         "Запись о поливе этого растения на эту дату уже существует.");
             }
@@ -211,24 +582,44 @@ public class WateringRecordService {
             wateringRecord.setVolumeWatering(updatedWateringRecord.getVolumeWatering());
         }
 
-        wateringRecord = autoCalculateErrorRate(wateringRecord);
+        wateringRecord = applyErrorRate(wateringRecord, context);
 
-        return wateringRecordRepository.save(wateringRecord);
+        WateringRecord savedRecord = wateringRecordRepository.saveAndFlush(wateringRecord);
+        plantStatsService.recordUpdated(savedRecord.getUserPlantId(),
+                previousDate, previousVolume, previousErrorRate, savedRecord);
+        usageRollupService.recordUpdated(savedRecord.getUserPlantId(),
+                previousDate, previousVolume, previousErrorRate, savedRecord);
+        if (!previousDate.equals(savedRecord.getDate())) {
+            wateringDueScheduler.plantChanged(savedRecord.getUserPlantId());
+        }
+        TransactionHooks.afterCommit(() -> recommendationCache.evictUserPlant(savedRecord.getUserPlantId()));
+        resourceVersionService.recordsChanged(savedRecord.getUserPlantId());
+        return savedRecord;
     }
 
     /**
      * Удалить запись полива.
      *
      * @param id уникальный идентификатор записи
-     * @throws ResponseStatusException если запись не найдена
+     * @throws ResponseStatusException если запись не найдена или принадлежит другому пользователю
      */
+    @Transactional
     public WateringRecord deleteWateringRecord(Integer id) {
         WateringRecord wateringRecord = wateringRecordRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует записи о поливе с таким id."));
+        checkPlantOwner(wateringRecord.getUserPlantId());
 
         wateringRecordRepository.delete(wateringRecord);
+        wateringRecordRepository.flush();
+        plantStatsService.recordRemoved(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK());
+        usageRollupService.recordRemoved(wateringRecord.getUserPlantId(), wateringRecord.getDate(),
+                wateringRecord.getVolumeWatering(), wateringRecord.getErrorRateK());
+        wateringDueScheduler.plantChanged(wateringRecord.getUserPlantId());
+        TransactionHooks.afterCommit(() -> recommendationCache.evictUserPlant(wateringRecord.getUserPlantId()));
+        resourceVersionService.recordsChanged(wateringRecord.getUserPlantId());
         return wateringRecord;
     }
 
@@ -251,38 +642,213 @@ public class WateringRecordService {
      * @param userPlantId ID растения
      * @param wateringRecord последняя запись полива
      * @return рекомендуемый объём полива в мл
-     * @throws ResponseStatusException если растение, тип растения, материал или условия не найдены
+     * @throws ResponseStatusException если растение, тип растения, материал или условия не найдены,
+     * а также если растение принадлежит другому пользователю
      */
     public Integer calculateWateringVolume(Integer userPlantId, WateringRecord wateringRecord) {
         UserPlant userPlant = userPlantRepository.findById(userPlantId)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не существует растения с таким id."));
+        accessControlService.checkOwner(userPlant.getUserId());
+
+        return calculateWateringVolume(userPlant, wateringRecord);
+    }
+
+    /**
+     * Получить текущую рекомендацию по объёму полива растения.
+     * Расчёт ведётся от последней записи полива, результат кэшируется
+     * до изменения входных данных.
+     *
+     * @param userPlantId ID растения
+     * @return рекомендуемый объём полива в мл
+     * @throws ResponseStatusException если растение, тип растения, материал или условия не найдены,
+     * а также если растение принадлежит другому пользователю
+     */
+    public Integer getRecommendedVolume(Integer userPlantId) {
+        Integer cached = recommendationCache.get(userPlantId);
+        Integer cachedUserId = recommendationCache.getUserId(userPlantId);
+        if (cached != null && cachedUserId != null) {
+            accessControlService.checkOwner(cachedUserId);
+            return cached;
+        }
+
+        long generation = recommendationCache.generation();
 
-        PlantType plantType = plantTypeRepository.findById(userPlant.getPlantTypeId())
+        UserPlant userPlant = userPlantRepository.findById(userPlantId)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
-                        "Не существует типа растения с таким id."));
+                        "Не существует растения с таким id."));
+        accessControlService.checkOwner(userPlant.getUserId());
+
+        Integer volume = calculateWateringVolume(userPlant,
+                getLastWateringRecordByUserPlantId(userPlantId));
+
+        recommendationCache.put(userPlant, volume, generation);
+        return volume;
+    }
+
+    /**
+     * Получить статистику кэша рекомендаций.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getRecommendationCacheStats() {
+        return recommendationCache.getStats();
+    }
 
-        Material material = materialRepository.findById(userPlant.getMaterialId())
+    /**
+     * Рассчитать объём полива для уже загруженного растения.
+     *
+     * @param userPlant растение
+     * @param wateringRecord последняя запись полива
+     * @return рекомендуемый объём полива в мл
+     * @throws ResponseStatusException если тип растения, материал или условия не найдены
+     */
+    private Integer calculateWateringVolume(UserPlant userPlant, WateringRecord wateringRecord) {
+        ReferenceSnapshot references = referenceDataService.current();
+        PlantType plantType = requirePlantType(references, userPlant.getPlantTypeId());
+        Material material = requireMaterial(references, userPlant.getMaterialId());
+
+        Conditions conditions = latestConditionsCache.get(userPlant.getUserId())
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
-                        "Не существует материала с таким id."));
+                        "Не найдены условия для этого пользователя."));
+
+        return computeWateringVolume(userPlant, plantType, material, conditions, wateringRecord);
+    }
 
-        Conditions conditions = conditionsRepository.findFirstByUserIdOrderByDateDesc(
-                        userPlant.getUserId())
+    /**
+     * Рассчитать рекомендуемый объём полива для всех растений пользователя.
+     * Растения и последние записи полива загружаются двумя запросами,
+     * последние условия и коэффициенты типов и материалов берутся из кэша и снимка справочников.
+     *
+     * @param userId ID пользователя
+     * @return рекомендуемые объёмы полива в мл по ID растения (в порядке ID)
+     * @throws ResponseStatusException если пользователь или условия не найдены
+     */
+    public Map<Integer, Integer> calculateWateringVolumesByUserId(Integer userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует пользователя с таким id.");
+        }
+
+        long generation = recommendationCache.generation();
+
+        List<UserPlant> userPlants = userPlantRepository.findWithReferencesByUserId(userId);
+        Map<Integer, Integer> volumes = new LinkedHashMap<>();
+        if (userPlants.isEmpty()) {
+            return volumes;
+        }
+
+        Conditions conditions = latestConditionsCache.get(userId)
                 .orElseThrow(() -> new ResponseStatusException(
                         HttpStatus.NOT_FOUND,
                         "Не найдены условия для этого пользователя."));
 
-        int high = userPlant.getHigh() != null ? userPlant.getHigh() : 30;
-        int potSize = userPlant.getPotSize() != null ? userPlant.getPotSize() : 15;
-        int soilLoosenerk = userPlant.getSoilLoosenerk() != null ? userPlant.getSoilLoosenerk() : 10;
-        int plantWateringK = plantType.getWateringK() != null ? plantType.getWateringK() : 50;
-        int materialWateringK = material.getWateringK() != null ? material.getWateringK() : 50;
-        int temperature = conditions.getTemperature();
-        int humidity = conditions.getWatering();
-        int errorRate = wateringRecord != null ? wateringRecord.getErrorRateK(): 0;
+        List<Integer> userPlantIds = userPlants.stream()
+                .map(UserPlant::getId)
+                .collect(Collectors.toList());
+
+        Map<Integer, WateringRecord> lastRecords = wateringRecordRepository
+                .findLastByUserPlantIdIn(userPlantIds).stream()
+                .collect(Collectors.toMap(WateringRecord::getUserPlantId, Function.identity()));
+
+        ReferenceSnapshot references = referenceDataService.current();
+        for (UserPlant userPlant : userPlants) {
+            Integer volume = computeWateringVolume(
+                    userPlant,
+                    requirePlantType(references, userPlant.getPlantTypeId()),
+                    requireMaterial(references, userPlant.getMaterialId()),
+                    conditions,
+                    lastRecords.get(userPlant.getId()));
+            recommendationCache.put(userPlant, volume, generation);
+            volumes.put(userPlant.getId(), volume);
+        }
+
+        return volumes;
+    }
+
+    /**
+     * Найти тип растения в снимке справочников.
+     *
+     * @param references снимок справочников
+     * @param plantTypeId ID типа растения
+     * @return тип растения
+     * @throws ResponseStatusException если тип растения не найден
+     */
+    private PlantType requirePlantType(ReferenceSnapshot references, Integer plantTypeId) {
+        PlantType plantType = references.getPlantType(plantTypeId);
+        if (plantType == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует типа растения с таким id.");
+        }
+        return plantType;
+    }
+
+    /**
+     * Найти материал в снимке справочников.
+     *
+     * @param references снимок справочников
+     * @param materialId ID материала
+     * @return материал
+     * @throws ResponseStatusException если материал не найден
+     */
+    private Material requireMaterial(ReferenceSnapshot references, Integer materialId) {
+        Material material = references.getMaterial(materialId);
+        if (material == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Не существует материала с таким id.");
+        }
+        return material;
+    }
+
+    /**
+     * Формула расчёта объёма полива по уже загруженным данным.
+     *
+     * @param userPlant растение
+     * @param plantType тип растения
+     * @param material материал горшка
+     * @param conditions условия микроклимата
+     * @param wateringRecord последняя запись полива (может быть null)
+     * @return рекомендуемый объём полива в мл
+     */
+    private Integer computeWateringVolume(UserPlant userPlant, PlantType plantType, Material material,
+                                          Conditions conditions, WateringRecord wateringRecord) {
+        return computeWateringVolume(
+                userPlant.getHigh(),
+                userPlant.getPotSize(),
+                userPlant.getSoilLoosenerk(),
+                plantType.getWateringK(),
+                material.getWateringK(),
+                conditions.getTemperature(),
+                conditions.getWatering(),
+                wateringRecord != null ? wateringRecord.getErrorRateK() : null);
+    }
+
+    /**
+     * Формула расчёта объёма полива.
+     * Для незаполненных параметров растения и коэффициентов используются значения по умолчанию.
+     *
+     * @param userHigh высота растения в см
+     * @param userPotSize размер горшка в см
+     * @param userSoilLoosenerk коэффициент разрыхлителей в %
+     * @param plantTypeWateringK коэффициент полива типа растения
+     * @param materialTypeWateringK коэффициент полива материала
+     * @param temperature температура в градусах Цельсия
+     * @param humidity влажность в %
+     * @param previousErrorRate погрешность предыдущего полива (может быть null)
+     * @return рекомендуемый объём полива в мл
+     */
+    private Integer computeWateringVolume(Integer userHigh, Integer userPotSize, Integer userSoilLoosenerk,
+                                          Integer plantTypeWateringK, Integer materialTypeWateringK,
+                                          int temperature, int humidity, Integer previousErrorRate) {
+        int high = userHigh != null ? userHigh : 30;
+        int potSize = userPotSize != null ? userPotSize : 15;
+        int soilLoosenerk = userSoilLoosenerk != null ? userSoilLoosenerk : 10;
+        int plantWateringK = plantTypeWateringK != null ? plantTypeWateringK : 50;
+        int materialWateringK = materialTypeWateringK != null ? materialTypeWateringK : 50;
+        int errorRate = previousErrorRate != null ? previousErrorRate : 0;
 
         double correctionFactor;
 
@@ -333,29 +899,119 @@ public class WateringRecordService {
      *
      * @param wateringRecord запись полива
      * @return погрешность в мл
-     * @throws ResponseStatusException часть данных полива не заполнена
+     * @throws ResponseStatusException растение не найдено или часть данных полива не заполнена
      */
     public WateringRecord autoCalculateErrorRate(WateringRecord wateringRecord) {
-        try {
-            LocalDate recordDate = wateringRecord.getDate();
-            Integer userPlantId = wateringRecord.getUserPlantId();
+        WateringRecordContext context = loadContext(
+                wateringRecord.getUserPlantId(),
+                wateringRecord.getDate());
 
-            WateringRecord previousRecord = wateringRecordRepository
-                    .findFirstByUserPlantIdAndDateBeforeOrderByDateDesc(userPlantId, recordDate)
-                    .orElse(null);
+        return applyErrorRate(wateringRecord, context);
+    }
 
-            Integer recommendedVolume = calculateWateringVolume(
-                    userPlantId, previousRecord);
+    /**
+     * Проверить обязательные поля новой записи.
+     *
+     * @param wateringRecord запись полива
+     * @throws ResponseStatusException если растение, дата, время или объём не заполнены
+     */
+    private void checkRequiredFields(WateringRecord wateringRecord) {
+        if (wateringRecord.getUserPlantId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ID растения не может быть пустым.");
+        }
 
-            Integer errorRate = recommendedVolume - wateringRecord.getVolumeWatering();
+        if (wateringRecord.getDate() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Дата не может быть пустой.");
+        }
 
-            wateringRecord.setErrorRateK(errorRate);
+        if (wateringRecord.getTime() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Время не может быть пустым.");
+        }
 
-        } catch (ResponseStatusException e) {
+        if (wateringRecord.getVolumeWatering() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Объем полива не может быть пустым.");
+        }
+    }
+
+    /**
+     * Дополнить ошибку номером записи в пакете.
+     *
+     * @param index индекс записи
+     * @param cause исходная ошибка
+     * @return ошибка с тем же статусом
+     */
+    private ResponseStatusException batchError(int index, ResponseStatusException cause) {
+        return new ResponseStatusException(cause.getStatusCode(),
+                "Запись " + (index + 1) + ": " + cause.getReason());
+    }
+
+    /**
+     * Загрузить одним запросом всё, что нужно для проверки и расчёта погрешности записи:
+     * растение, коэффициенты типа и материала, последние условия владельца,
+     * предыдущую запись полива и признак занятой даты.
+     *
+     * @param userPlantId ID растения
+     * @param date дата записи полива
+     * @return данные для расчёта
+     * @throws ResponseStatusException если растение не найдено
+     */
+    private WateringRecordContext loadContext(Integer userPlantId, LocalDate date) {
+        return wateringRecordRepository.findContext(userPlantId, date)
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND,
+                        "Не существует растения с таким id."));
+    }
+
+    /**
+     * Рассчитать погрешность полива по загруженным данным.
+     *
+     * @param wateringRecord запись полива
+     * @param context данные для расчёта
+     * @return запись с заполненной погрешностью
+     * @throws ResponseStatusException если тип растения, материал или условия не найдены
+     */
+    private WateringRecord applyErrorRate(WateringRecord wateringRecord, WateringRecordContext context) {
+        if (context.getPlantTypeId() == null
+                || context.getMaterialId() == null
+                || context.getTemperature() == null) {
             throw new ResponseStatusException(HttpStatus.CONFLICT,
                     "Некоторые данные для этого растения не заполнены.");
         }
 
+        wateringRecord.setErrorRateK(calculateErrorRate(
+                context, context.getPreviousErrorRateK(), wateringRecord.getVolumeWatering()));
+
         return wateringRecord;
     }
+
+    /**
+     * Рассчитать погрешность полива относительно рекомендации.
+     * Используется и при создании отдельной записи, и при импорте.
+     *
+     * @param context параметры растения, коэффициенты и условия
+     * @param previousErrorRateK погрешность предыдущей записи (может быть null)
+     * @param volumeWatering фактический объём полива в мл
+     * @return погрешность в мл
+     */
+    Integer calculateErrorRate(WateringRecordContext context, Integer previousErrorRateK, Integer volumeWatering) {
+        ReferenceSnapshot references = referenceDataService.current();
+        PlantType plantType = references.getPlantType(context.getPlantTypeId());
+        Material material = references.getMaterial(context.getMaterialId());
+
+        Integer recommendedVolume = computeWateringVolume(
+                context.getHigh(),
+                context.getPotSize(),
+                context.getSoilLoosenerK(),
+                plantType != null ? plantType.getWateringK() : null,
+                material != null ? material.getWateringK() : null,
+                context.getTemperature(),
+                context.getHumidity(),
+                previousErrorRateK);
+
+        return recommendedVolume - volumeWatering;
+    }
 }
@@ -0,0 +1,197 @@
+package tsygvintsev.watering_diary.util;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Временной ряд условий микроклимата одного пользователя в файле, отображённом в память.
+ * Данные лежат вне кучи тремя колонками int: день (epoch day), температура, влажность.
+ * Дни в колонке строго возрастают, поэтому поиск по дате - двоичный.
+ *
+ * <p>Формат файла: заголовок (магическое число, версия, ёмкость, количество точек),
+ * затем колонки дней, температур и влажности длиной в ёмкость.</p>
+ *
+ * <p>Чтение потокобезопасно. Запись ({@link #tryAppend}) должна выполняться
+ * одним потоком за раз; читатели видят новую точку после обновления счётчика.</p>
+ */
+public final class ConditionsSeriesFile {
+
+    /** Обработчик точки ряда без создания объектов */
+    @FunctionalInterface
+    public interface PointConsumer {
+        void accept(int epochDay, int temperature, int humidity);
+    }
+
+    private static final int MAGIC = 0x57434E44;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MIN_CAPACITY = 64;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int temperatureOffset;
+    private final int humidityOffset;
+    private volatile int count;
+
+    private ConditionsSeriesFile(MappedByteBuffer buffer, int capacity, int count) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.temperatureOffset = HEADER_BYTES + 4 * capacity;
+        this.humidityOffset = HEADER_BYTES + 8 * capacity;
+        this.count = count;
+    }
+
+    /**
+     * Записать ряд в новый файл и открыть его.
+     * Файл сначала пишется рядом под временным именем и затем атомарно переименовывается.
+     *
+     * @param path путь к файлу
+     * @param days дни по возрастанию
+     * @param temperatures температуры
+     * @param humidities влажность
+     * @param count количество точек
+     * @return открытый ряд
+     * @throws IOException при ошибке записи
+     */
+    public static ConditionsSeriesFile create(Path path, int[] days, int[] temperatures, int[] humidities,
+                                              int count) throws IOException {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(count, 1)) << 1);
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 12L * capacity);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, capacity);
+
+        ConditionsSeriesFile series = new ConditionsSeriesFile(buffer, capacity, 0);
+        for (int i = 0; i < count; i++) {
+            series.put(i, days[i], temperatures[i], humidities[i]);
+        }
+        series.publish(count);
+        buffer.force();
+
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return series;
+    }
+
+    /**
+     * Открыть существующий файл ряда.
+     *
+     * @param path путь к файлу
+     * @return открытый ряд
+     * @throws IOException если файл не читается или повреждён
+     */
+    public static ConditionsSeriesFile open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Повреждён файл ряда условий: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int capacity = buffer.getInt(8);
+        int count = buffer.getInt(COUNT_OFFSET);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                || capacity < 0 || count < 0 || count > capacity
+                || buffer.capacity() < HEADER_BYTES + 12L * capacity) {
+            throw new IOException("Повреждён файл ряда условий: " + path);
+        }
+        return new ConditionsSeriesFile(buffer, capacity, count);
+    }
+
+    /**
+     * Дописать точку в конец ряда.
+     *
+     * @return false, если место закончилось или день не позже последнего;
+     * тогда ряд нужно перестроить целиком
+     */
+    public boolean tryAppend(int epochDay, int temperature, int humidity) {
+        int size = count;
+        if (size == capacity || (size > 0 && day(size - 1) >= epochDay)) {
+            return false;
+        }
+        put(size, epochDay, temperature, humidity);
+        publish(size + 1);
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int day(int index) {
+        return buffer.getInt(HEADER_BYTES + 4 * index);
+    }
+
+    public int temperature(int index) {
+        return buffer.getInt(temperatureOffset + 4 * index);
+    }
+
+    public int humidity(int index) {
+        return buffer.getInt(humidityOffset + 4 * index);
+    }
+
+    /**
+     * Найти последнюю точку не позже заданного дня.
+     *
+     * @param epochDay день
+     * @return индекс точки или -1, если все точки позже
+     */
+    public int indexAtOrBefore(int epochDay) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (day(mid) <= epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Обойти точки в диапазоне дней включительно.
+     *
+     * @param fromDay первый день
+     * @param toDay последний день
+     * @param consumer обработчик точек
+     */
+    public void forEachInRange(int fromDay, int toDay, PointConsumer consumer) {
+        int size = count;
+        int start = indexAtOrBefore(fromDay - 1) + 1;
+        for (int i = start; i < size; i++) {
+            int day = day(i);
+            if (day > toDay) {
+                break;
+            }
+            consumer.accept(day, temperature(i), humidity(i));
+        }
+    }
+
+    private void put(int index, int epochDay, int temperature, int humidity) {
+        buffer.putInt(HEADER_BYTES + 4 * index, epochDay);
+        buffer.putInt(temperatureOffset + 4 * index, temperature);
+        buffer.putInt(humidityOffset + 4 * index, humidity);
+    }
+
+    private void publish(int size) {
+        buffer.putInt(COUNT_OFFSET, size);
+        count = size;
+    }
+}
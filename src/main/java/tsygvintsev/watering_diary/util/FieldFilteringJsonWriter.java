@@ -0,0 +1,47 @@
+package tsygvintsev.watering_diary.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ser.std.SimpleBeanPropertyFilter;
+import tools.jackson.databind.ser.std.SimpleFilterProvider;
+
+/**
+ * Записывает ответы с видами в JSON, оставляя в видах только поля из {@link FieldSet}.
+ * Поля, выбранные лишь для служебных нужд (например, ключ курсора), в ответ не попадают.
+ *
+ * <p>Сериализацией занимается ObjectMapper приложения: виды помечены
+ * {@code @JsonFilter(FieldFilteringJsonWriter.FILTER)}, и под этим именем
+ * подставляется фильтр запрошенных полей. Обёртки (например, страница с курсором)
+ * фильтра не имеют и пишутся целиком.</p>
+ */
+@Component
+public class FieldFilteringJsonWriter {
+
+    /** Имя фильтра в {@code @JsonFilter} видов */
+    public static final String FILTER = "fieldSet";
+
+    private final ObjectMapper objectMapper;
+
+    public FieldFilteringJsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Ответ с видами или обёрткой над ними.
+     *
+     * @param body список видов или объект, содержащий виды
+     * @param fields набор полей вида
+     * @return ResponseEntity с JSON и статусом 200 OK
+     */
+    public ResponseEntity<String> ok(Object body, FieldSet<?> fields) {
+        SimpleFilterProvider filters = new SimpleFilterProvider()
+                .addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields.outputNames()));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(objectMapper.writer(filters).writeValueAsString(body), headers, HttpStatus.OK);
+    }
+}
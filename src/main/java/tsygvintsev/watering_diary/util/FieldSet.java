@@ -0,0 +1,127 @@
+package tsygvintsev.watering_diary.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Набор полей вида, запрошенных параметром {@code fields=} (sparse fieldsets).
+ * Имена полей совпадают с компонентами записи вида и с атрибутами сущности,
+ * поэтому один набор сужает и список выборки SQL, и ответ.
+ *
+ * <p>Выбираются запрошенные поля и обязательные (например, ключ курсора страницы),
+ * в ответ пишутся только запрошенные. Без параметра выбираются и пишутся все поля.</p>
+ *
+ * @param <V> тип вида
+ */
+public final class FieldSet<V extends Record> {
+
+    private final Class<V> type;
+    private final RecordComponent[] components;
+    private final Constructor<V> constructor;
+    private final List<RecordComponent> selected;
+    private final Set<String> output;
+
+    private FieldSet(Class<V> type, Set<String> requested, Set<String> required) {
+        this.type = type;
+        this.components = type.getRecordComponents();
+        try {
+            this.constructor = type.getDeclaredConstructor(Arrays.stream(components)
+                    .map(RecordComponent::getType).toArray(Class<?>[]::new));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Нет канонического конструктора: " + type.getName(), e);
+        }
+        this.selected = Arrays.stream(components)
+                .filter(c -> requested.contains(c.getName()) || required.contains(c.getName()))
+                .toList();
+        this.output = Arrays.stream(components)
+                .map(RecordComponent::getName)
+                .filter(requested::contains)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Разобрать параметр {@code fields} для вида.
+     *
+     * @param type класс записи вида
+     * @param fields список полей через запятую (необязательно)
+     * @param required поля, которые выбираются всегда, даже если не запрошены
+     * @param <V> тип вида
+     * @return набор полей
+     * @throws ResponseStatusException если запрошено неизвестное поле (400 BAD_REQUEST)
+     */
+    public static <V extends Record> FieldSet<V> parse(Class<V> type, String fields, String... required) {
+        List<String> names = Arrays.stream(type.getRecordComponents()).map(RecordComponent::getName).toList();
+        if (fields == null || fields.isBlank()) {
+            return new FieldSet<>(type, new LinkedHashSet<>(names), Set.of(required));
+        }
+
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!names.contains(name)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Неизвестное поле «" + name + "». Допустимо: " + String.join(", ", names) + ".");
+            }
+            requested.add(name);
+        }
+        if (requested.isEmpty()) {
+            requested.addAll(names);
+        }
+        return new FieldSet<>(type, requested, Set.of(required));
+    }
+
+    public Class<V> type() {
+        return type;
+    }
+
+    /**
+     * Имена полей для списка выборки: запрошенные и обязательные, в порядке компонентов вида.
+     *
+     * @return имена полей
+     */
+    public List<String> selected() {
+        return selected.stream().map(RecordComponent::getName).toList();
+    }
+
+    /**
+     * Имена полей, которые пишутся в ответ.
+     *
+     * @return имена полей в порядке компонентов вида
+     */
+    public Set<String> outputNames() {
+        return output;
+    }
+
+    /**
+     * Создать вид из выбранных значений; невыбранные компоненты остаются null.
+     *
+     * @param values значение по имени выбранного поля
+     * @return вид
+     */
+    public V newView(Function<String, Object> values) {
+        Object[] args = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            if (selected.contains(components[i])) {
+                args[i] = values.apply(components[i].getName());
+            }
+        }
+        try {
+            return constructor.newInstance(args);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Не удалось создать вид " + type.getName(), e);
+        }
+    }
+}
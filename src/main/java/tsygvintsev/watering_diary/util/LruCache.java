@@ -0,0 +1,201 @@
+package tsygvintsev.watering_diary.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасный кэш ограниченного размера с вытеснением давно неиспользуемых записей (LRU).
+ * Ведёт счётчики попаданий и промахов.
+ *
+ * @param <K> тип ключа
+ * @param <V> тип значения
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+
+    /** Блокировка вместо synchronized: не закрепляет виртуальный поток за несущим */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Создаёт кэш заданного размера.
+     *
+     * @param maxSize максимальное количество записей
+     */
+    public LruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным.");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Получить значение по ключу.
+     *
+     * @param key ключ
+     * @return значение или null, если записи нет
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            V value = entries.get(key);
+            if (value != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Получить значение по ключу, не учитывая обращение в статистике.
+     *
+     * @param key ключ
+     * @return значение или null, если записи нет
+     */
+    public V peek(K key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Положить значение в кэш.
+     *
+     * @param key ключ
+     * @param value значение
+     */
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            entries.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удалить запись по ключу.
+     *
+     * @param key ключ
+     */
+    public void remove(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удалить все записи, значения которых удовлетворяют условию.
+     *
+     * @param filter условие удаления
+     */
+    public void removeIf(Predicate<V> filter) {
+        lock.lock();
+        try {
+            entries.values().removeIf(filter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Очистить кэш.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEvictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Получить статистику кэша.
+     *
+     * @return размер, попадания, промахи, вытеснения и доля попаданий
+     */
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            long requests = hits + misses;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("size", entries.size());
+            stats.put("maxSize", maxSize);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("evictions", evictions);
+            stats.put("hitRate", requests == 0 ? 0.0 : (double) hits / requests);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package tsygvintsev.watering_diary.util;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Слияние нескольких упорядоченных итераторов в один упорядоченный.
+ * Источники читаются лениво, начиная с первого обращения; в памяти держится
+ * по одному элементу на источник.
+ *
+ * @param <T> тип элементов
+ */
+public final class MergingIterator<T> implements Iterator<T> {
+
+    private static final class Head<T> {
+        T value;
+        final Iterator<T> source;
+
+        Head(T value, Iterator<T> source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+
+    private final PriorityQueue<Head<T>> heads;
+    private List<? extends Iterator<T>> pending;
+
+    /**
+     * @param order порядок, в котором упорядочен каждый источник
+     * @param sources источники
+     */
+    public MergingIterator(Comparator<? super T> order, List<? extends Iterator<T>> sources) {
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> order.compare(a.value, b.value));
+        this.pending = sources;
+    }
+
+    @Override
+    public boolean hasNext() {
+        start();
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        start();
+        Head<T> head = heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        T value = head.value;
+        if (head.source.hasNext()) {
+            head.value = head.source.next();
+            heads.add(head);
+        }
+        return value;
+    }
+
+    private void start() {
+        if (pending == null) {
+            return;
+        }
+        for (Iterator<T> source : pending) {
+            if (source.hasNext()) {
+                heads.add(new Head<>(source.next(), source));
+            }
+        }
+        pending = null;
+    }
+}
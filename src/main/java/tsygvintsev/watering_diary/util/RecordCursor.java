@@ -0,0 +1,61 @@
+package tsygvintsev.watering_diary.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Курсор постраничной выдачи записей полива по ключу (date, id).
+ * Передаётся клиенту в виде непрозрачной строки.
+ *
+ * @param date дата последней записи на странице
+ * @param id ID последней записи на странице
+ */
+public record RecordCursor(LocalDate date, Integer id) {
+
+    /**
+     * Курсор, указывающий на запись.
+     *
+     * @param record последняя запись страницы
+     * @return курсор
+     */
+    public static RecordCursor of(WateringRecord record) {
+        return new RecordCursor(record.getDate(), record.getId());
+    }
+
+    /**
+     * Закодировать курсор в строку.
+     *
+     * @return токен следующей страницы
+     */
+    public String encode() {
+        String raw = date + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разобрать токен следующей страницы.
+     *
+     * @param token строка курсора
+     * @return курсор
+     * @throws ResponseStatusException если токен повреждён
+     */
+    public static RecordCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(':');
+            return new RecordCursor(
+                    LocalDate.parse(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректный курсор страницы.");
+        }
+    }
+}
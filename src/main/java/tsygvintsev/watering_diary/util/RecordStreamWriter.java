@@ -0,0 +1,19 @@
+package tsygvintsev.watering_diary.util;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+/**
+ * Получатель потока записей полива, читаемых курсором из базы данных.
+ */
+@FunctionalInterface
+public interface RecordStreamWriter {
+    /**
+     * Записать поток записей.
+     *
+     * @param records поток записей, действует только внутри вызова
+     * @throws IOException при ошибке записи
+     */
+    void write(Stream<WateringRecord> records) throws IOException;
+}
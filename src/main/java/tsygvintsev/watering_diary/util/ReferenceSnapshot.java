@@ -0,0 +1,168 @@
+package tsygvintsev.watering_diary.util;
+
+import tsygvintsev.watering_diary.entity.Material;
+import tsygvintsev.watering_diary.entity.PlantType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок справочников типов растений и материалов.
+ * Объекты хранятся в массивах с индексом по ID, поэтому поиск по ID не требует хэширования.
+ * При изменении справочника создаётся новый снимок, старый продолжают читать
+ * уже начатые запросы. Объекты снимка - копии сущностей, изменять их нельзя.
+ */
+public final class ReferenceSnapshot {
+
+    private static final PlantType[] NO_PLANT_TYPES = new PlantType[0];
+    private static final Material[] NO_MATERIALS = new Material[0];
+
+    private final long version;
+    private final PlantType[] plantTypesById;
+    private final Material[] materialsById;
+    private final List<PlantType> plantTypesByName;
+    private final List<Material> materials;
+
+    private ReferenceSnapshot(long version, List<PlantType> plantTypes, List<Material> materials) {
+        this.version = version;
+        this.plantTypesById = indexPlantTypes(plantTypes);
+        this.materialsById = indexMaterials(materials);
+
+        List<PlantType> sortedPlantTypes = new ArrayList<>(plantTypes);
+        sortedPlantTypes.sort(Comparator.comparing(PlantType::getName));
+        this.plantTypesByName = List.copyOf(sortedPlantTypes);
+
+        List<Material> sortedMaterials = new ArrayList<>(materials);
+        sortedMaterials.sort(Comparator.comparing(Material::getId));
+        this.materials = List.copyOf(sortedMaterials);
+    }
+
+    /**
+     * Создать снимок из сущностей. Сущности копируются.
+     *
+     * @param version номер версии
+     * @param plantTypes типы растений
+     * @param materials материалы
+     * @return снимок
+     */
+    public static ReferenceSnapshot of(long version, List<PlantType> plantTypes, List<Material> materials) {
+        return new ReferenceSnapshot(version,
+                plantTypes.stream().map(ReferenceSnapshot::copy).toList(),
+                materials.stream().map(ReferenceSnapshot::copy).toList());
+    }
+
+    /**
+     * Новый снимок с добавленным или заменённым типом растения.
+     *
+     * @param plantType сохранённый тип растения
+     * @return новый снимок со следующей версией
+     */
+    public ReferenceSnapshot withPlantType(PlantType plantType) {
+        List<PlantType> plantTypes = new ArrayList<>(plantTypesByName);
+        plantTypes.removeIf(existing -> existing.getId().equals(plantType.getId()));
+        plantTypes.add(copy(plantType));
+        return new ReferenceSnapshot(version + 1, plantTypes, materials);
+    }
+
+    /**
+     * Новый снимок без типа растения.
+     *
+     * @param id ID удалённого типа растения
+     * @return новый снимок со следующей версией
+     */
+    public ReferenceSnapshot withoutPlantType(Integer id) {
+        List<PlantType> plantTypes = new ArrayList<>(plantTypesByName);
+        plantTypes.removeIf(existing -> existing.getId().equals(id));
+        return new ReferenceSnapshot(version + 1, plantTypes, materials);
+    }
+
+    /**
+     * Новый снимок с добавленным или заменённым материалом.
+     *
+     * @param material сохранённый материал
+     * @return новый снимок со следующей версией
+     */
+    public ReferenceSnapshot withMaterial(Material material) {
+        List<Material> updated = new ArrayList<>(materials);
+        updated.removeIf(existing -> existing.getId().equals(material.getId()));
+        updated.add(copy(material));
+        return new ReferenceSnapshot(version + 1, plantTypesByName, updated);
+    }
+
+    /**
+     * Новый снимок без материала.
+     *
+     * @param id ID удалённого материала
+     * @return новый снимок со следующей версией
+     */
+    public ReferenceSnapshot withoutMaterial(Integer id) {
+        List<Material> updated = new ArrayList<>(materials);
+        updated.removeIf(existing -> existing.getId().equals(id));
+        return new ReferenceSnapshot(version + 1, plantTypesByName, updated);
+    }
+
+    public long getVersion() { return version; }
+
+    /** Типы растений, отсортированные по названию */
+    public List<PlantType> getPlantTypes() { return plantTypesByName; }
+
+    /** Материалы в порядке ID */
+    public List<Material> getMaterials() { return materials; }
+
+    /**
+     * Найти тип растения по ID.
+     *
+     * @param id ID типа растения
+     * @return тип растения или null
+     */
+    public PlantType getPlantType(Integer id) {
+        return id != null && id >= 0 && id < plantTypesById.length ? plantTypesById[id] : null;
+    }
+
+    /**
+     * Найти материал по ID.
+     *
+     * @param id ID материала
+     * @return материал или null
+     */
+    public Material getMaterial(Integer id) {
+        return id != null && id >= 0 && id < materialsById.length ? materialsById[id] : null;
+    }
+
+    private static PlantType[] indexPlantTypes(List<PlantType> plantTypes) {
+        int maxId = plantTypes.stream().mapToInt(PlantType::getId).max().orElse(-1);
+        if (maxId < 0) {
+            return NO_PLANT_TYPES;
+        }
+        PlantType[] byId = new PlantType[maxId + 1];
+        for (PlantType plantType : plantTypes) {
+            byId[plantType.getId()] = plantType;
+        }
+        return byId;
+    }
+
+    private static Material[] indexMaterials(List<Material> materials) {
+        int maxId = materials.stream().mapToInt(Material::getId).max().orElse(-1);
+        if (maxId < 0) {
+            return NO_MATERIALS;
+        }
+        Material[] byId = new Material[maxId + 1];
+        for (Material material : materials) {
+            byId[material.getId()] = material;
+        }
+        return byId;
+    }
+
+    private static PlantType copy(PlantType plantType) {
+        PlantType copy = new PlantType(plantType.getName(), plantType.getDescription(), plantType.getWateringK());
+        copy.setId(plantType.getId());
+        return copy;
+    }
+
+    private static Material copy(Material material) {
+        Material copy = new Material(material.getName(), material.getWateringK());
+        copy.setId(material.getId());
+        return copy;
+    }
+}
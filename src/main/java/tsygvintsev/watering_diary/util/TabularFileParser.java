@@ -0,0 +1,176 @@
+package tsygvintsev.watering_diary.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Потоковое чтение табличных файлов (CSV и XLSX) построчно, без загрузки всего файла в память.
+ */
+public final class TabularFileParser {
+
+    /**
+     * Обработчик строки файла.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        /**
+         * @param rowNumber номер строки в файле, начиная с 1
+         * @param cells значения ячеек строки
+         */
+        void row(int rowNumber, List<String> cells);
+    }
+
+    private TabularFileParser() {}
+
+    /**
+     * Прочитать CSV (UTF-8, разделитель - запятая или точка с запятой, кавычки по RFC 4180).
+     *
+     * @param inputStream содержимое файла
+     * @param handler обработчик строк
+     * @throws IOException при ошибке чтения
+     */
+    public static void parseCsv(InputStream inputStream, RowHandler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line != null && line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+
+        char separator = line != null && line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+        int rowNumber = 0;
+
+        while (line != null) {
+            rowNumber++;
+            List<String> cells = new ArrayList<>();
+            StringBuilder cell = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    String next = reader.readLine();
+                    if (next == null) {
+                        break;
+                    }
+                    cell.append('\n');
+                    line = next;
+                    i = 0;
+                    continue;
+                }
+
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+                        cell.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        cell.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == separator) {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                } else {
+                    cell.append(c);
+                }
+            }
+            cells.add(cell.toString());
+
+            if (!(cells.size() == 1 && cells.get(0).isBlank())) {
+                handler.row(rowNumber, cells);
+            }
+            line = reader.readLine();
+        }
+    }
+
+    /**
+     * Прочитать первый лист XLSX через потоковый SAX-разбор.
+     *
+     * @param file путь к файлу
+     * @param handler обработчик строк
+     * @throws IOException если файл повреждён или не является XLSX
+     */
+    public static void parseXlsx(Path file, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, new SheetRows(handler), new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Не удалось прочитать XLSX-файл.", e);
+        }
+    }
+
+    /**
+     * Собирает ячейки строки листа и передаёт их обработчику.
+     */
+    private static class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private final List<String> cells = new ArrayList<>();
+        private int column;
+
+        SheetRows(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            column = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!cells.isEmpty()) {
+                handler.row(rowNum + 1, new ArrayList<>(cells));
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int index = cellReference != null ? new CellReference(cellReference).getCol() : column;
+            while (cells.size() < index) {
+                cells.add("");
+            }
+            cells.add(formattedValue != null ? formattedValue : "");
+            column = index + 1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package tsygvintsev.watering_diary.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Вспомогательные методы для действий, привязанных к транзакции.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {}
+
+    /**
+     * Выполнить действие после фиксации текущей транзакции.
+     * Вне транзакции действие выполняется сразу.
+     *
+     * @param action действие
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package tsygvintsev.watering_diary.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import tsygvintsev.watering_diary.dto.WateringRecordRow;
+
+/**
+ * Построчно записывает записи полива в CSV (RFC 4180, UTF-8).
+ */
+public class WateringRecordCsvWriter {
+
+    private static final String HEADER =
+            "id,userPlantId,plantName,plantType,date,time,volumeWatering,errorRateK";
+
+    private final Writer writer;
+
+    /**
+     * Создаёт писатель поверх потока вывода и записывает строку заголовка.
+     *
+     * @param outputStream поток для записи
+     * @throws IOException при ошибке записи
+     */
+    public WateringRecordCsvWriter(OutputStream outputStream) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.write("\r\n");
+    }
+
+    /**
+     * Записать одну строку.
+     *
+     * @param row запись полива
+     * @throws IOException при ошибке записи
+     */
+    public void write(WateringRecordRow row) throws IOException {
+        writer.write(String.valueOf(row.id()));
+        writer.write(',');
+        writer.write(String.valueOf(row.userPlantId()));
+        writer.write(',');
+        writeText(row.plantName());
+        writer.write(',');
+        writeText(row.plantType());
+        writer.write(',');
+        writer.write(row.date().toString());
+        writer.write(',');
+        writer.write(row.time().toString());
+        writer.write(',');
+        writer.write(String.valueOf(row.volumeWatering()));
+        writer.write(',');
+        writer.write(String.valueOf(row.errorRateK()));
+        writer.write("\r\n");
+    }
+
+    /**
+     * Записать текстовое поле, экранируя кавычки, запятые и переводы строк.
+     *
+     * @param value значение поля
+     * @throws IOException при ошибке записи
+     */
+    private void writeText(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Сбросить буфер в поток вывода.
+     *
+     * @throws IOException при ошибке записи
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
@@ -1,55 +1,88 @@
 package tsygvintsev.watering_diary.util;
 
 import java.io.IOException;
-import java.util.List;
-import jakarta.servlet.ServletOutputStream;
-import jakarta.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFFont;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import tsygvintsev.watering_diary.entity.WateringRecord;
 
 /**
  * Экспортирует записи полива в Excel (.xlsx).
+ * Строки пишутся потоково: в памяти держится только окно из последних строк,
+ * остальные сбрасываются во временный файл.
  */
 public class WateringRecordExcelExporter {
 
-    private XSSFWorkbook workbook;
-    private XSSFSheet sheet;
-    private List<WateringRecord> recordList;
+    /** Количество строк, которые держатся в памяти */
+    private static final int ROW_WINDOW = 100;
+
+    /** Количество строк, по которым оценивается ширина колонок */
+    private static final int WIDTH_SAMPLE_SIZE = 500;
+
+    /** Максимальная ширина колонки в символах */
+    private static final int MAX_COLUMN_CHARS = 60;
+
+    private static final String[] HEADERS = {
+            "Имя растения",
+            "Тип растения",
+            "Дата",
+            "Время",
+            "Объём полива (мл)",
+            "Погрешность (мл)"
+    };
+
+    private final SXSSFWorkbook workbook;
+    private final SXSSFSheet sheet;
+    private final Stream<WateringRecord> records;
+    private final CellStyle headerStyle;
+    private final CellStyle dataStyle;
+    private final int[] columnChars = new int[HEADERS.length];
+
+    /**
+     * Создаёт экспортёр для потока записей.
+     *
+     * @param records поток записей для экспорта
+     */
+    public WateringRecordExcelExporter(Stream<WateringRecord> records) {
+        this.records = records;
+        this.workbook = new SXSSFWorkbook(ROW_WINDOW);
+        this.workbook.setCompressTempFiles(true);
+        this.sheet = workbook.createSheet("Записи полива");
+        this.headerStyle = createStyle(true, 16);
+        this.dataStyle = createStyle(false, 14);
+    }
 
     /**
-     * Создаёт экспортёр с заданным списком записей.
+     * Создаёт общий стиль ячеек.
      *
-     * @param recordList список записей для экспорта
+     * @param bold жирный шрифт
+     * @param fontHeight размер шрифта
+     * @return стиль оформления
      */
-    public WateringRecordExcelExporter(List<WateringRecord> recordList) {
-        this.recordList = recordList;
-        this.workbook = new XSSFWorkbook();
+    private CellStyle createStyle(boolean bold, int fontHeight) {
+        CellStyle style = workbook.createCellStyle();
+        Font font = workbook.createFont();
+        font.setBold(bold);
+        font.setFontHeightInPoints((short) fontHeight);
+        style.setFont(font);
+        return style;
     }
 
     /**
      * Создаёт строку заголовка таблицы.
      */
     private void writeHeaderLine() {
-        sheet = workbook.createSheet("Записи полива");
         Row row = sheet.createRow(0);
 
-        CellStyle style = workbook.createCellStyle();
-        XSSFFont font = workbook.createFont();
-        font.setBold(true);
-        font.setFontHeight(16);
-        style.setFont(font);
-
-        createCell(row, 0, "Имя растения", style);
-        createCell(row, 1, "Тип растения", style);
-        createCell(row, 2, "Дата", style);
-        createCell(row, 3, "Время", style);
-        createCell(row, 4, "Объём полива (мл)", style);
-        createCell(row, 5, "Погрешность (мл)", style);
+        for (int i = 0; i < HEADERS.length; i++) {
+            createCell(row, i, HEADERS[i], headerStyle);
+        }
     }
 
     /**
@@ -59,66 +92,102 @@ public class WateringRecordExcelExporter {
      * @param columnCount номер колонки
      * @param value значение ячейки
      * @param style стиль оформления
+     * @return длина значения в символах
      */
-    private void createCell(Row row, int columnCount, Object value, CellStyle style) {
-        sheet.autoSizeColumn(columnCount);
+    private int createCell(Row row, int columnCount, Object value, CellStyle style) {
         Cell cell = row.createCell(columnCount);
+        String text;
 
         if (value instanceof Integer) {
             cell.setCellValue((Integer) value);
+            text = value.toString();
         } else if (value instanceof Long) {
             cell.setCellValue((Long) value);
+            text = value.toString();
         } else {
-            cell.setCellValue(value != null ? value.toString() : "");
+            text = value != null ? value.toString() : "";
+            cell.setCellValue(text);
         }
         cell.setCellStyle(style);
+        return text.length();
     }
 
     /**
      * Записывает данные всех записей полива.
+     * Ширина колонок оценивается один раз по первым строкам.
      */
     private void writeDataLines() {
         int rowCount = 1;
+        for (int i = 0; i < HEADERS.length; i++) {
+            columnChars[i] = HEADERS[i].length();
+        }
 
-        CellStyle style = workbook.createCellStyle();
-        XSSFFont font = workbook.createFont();
-        font.setFontHeight(14);
-        style.setFont(font);
-
-        for (WateringRecord record : recordList) {
-            Row row = sheet.createRow(rowCount++);
+        Iterator<WateringRecord> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            WateringRecord record = iterator.next();
+            Row row = sheet.createRow(rowCount);
+            boolean sampled = rowCount <= WIDTH_SAMPLE_SIZE;
             int columnCount = 0;
 
             String plantName = (record.getUserPlant() != null)
                     ? record.getUserPlant().getName()
                     : "Неизвестно";
-            createCell(row, columnCount++, plantName, style);
-
             String plantType = (record.getUserPlant() != null && record.getUserPlant().getPlantType() != null)
                     ? record.getUserPlant().getPlantType().getName()
                     : "Неизвестно";
-            createCell(row, columnCount++, plantType, style);
 
-            createCell(row, columnCount++, record.getDate().toString(), style);
-            createCell(row, columnCount++, record.getTime().toString(), style);
-            createCell(row, columnCount++, record.getVolumeWatering(), style);
-            createCell(row, columnCount++, record.getErrorRateK(), style);
+            Object[] values = {
+                    plantName,
+                    plantType,
+                    record.getDate().toString(),
+                    record.getTime().toString(),
+                    record.getVolumeWatering(),
+                    record.getErrorRateK()
+            };
+
+            for (Object value : values) {
+                int length = createCell(row, columnCount, value, dataStyle);
+                if (sampled) {
+                    columnChars[columnCount] = Math.max(columnChars[columnCount], length);
+                }
+                columnCount++;
+            }
+
+            if (rowCount == WIDTH_SAMPLE_SIZE) {
+                applyColumnWidths();
+            }
+            rowCount++;
+        }
+
+        if (rowCount <= WIDTH_SAMPLE_SIZE) {
+            applyColumnWidths();
         }
     }
 
     /**
-     * Экспортирует данные в Excel и отправляет в HTTP-ответ.
+     * Устанавливает ширину колонок по оценке из первых строк.
+     */
+    private void applyColumnWidths() {
+        for (int i = 0; i < columnChars.length; i++) {
+            int chars = Math.min(columnChars[i] + 4, MAX_COLUMN_CHARS);
+            sheet.setColumnWidth(i, chars * 256);
+        }
+    }
+
+    /**
+     * Экспортирует данные в Excel и записывает в поток.
      *
-     * @param response HTTP-ответ
+     * @param outputStream поток для записи файла
      * @throws IOException при ошибке записи
      */
-    public void export(HttpServletResponse response) throws IOException {
-        writeHeaderLine();
-        writeDataLines();
-
-        ServletOutputStream outputStream = response.getOutputStream();
-        workbook.write(outputStream);
-        workbook.close();
-        outputStream.close();
+    public void export(OutputStream outputStream) throws IOException {
+        try {
+            writeHeaderLine();
+            writeDataLines();
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
     }
 }
@@ -0,0 +1,94 @@
+package tsygvintsev.watering_diary.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import tsygvintsev.watering_diary.dto.WateringRecordRow;
+
+/**
+ * Построчно записывает записи полива в NDJSON: один JSON-объект на строку.
+ */
+public class WateringRecordNdjsonWriter {
+
+    private final Writer writer;
+
+    /**
+     * Создаёт писатель поверх потока вывода.
+     *
+     * @param outputStream поток для записи
+     */
+    public WateringRecordNdjsonWriter(OutputStream outputStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Записать одну строку.
+     *
+     * @param row запись полива
+     * @throws IOException при ошибке записи
+     */
+    public void write(WateringRecordRow row) throws IOException {
+        writer.write("{\"id\":");
+        writer.write(String.valueOf(row.id()));
+        writer.write(",\"userPlantId\":");
+        writer.write(String.valueOf(row.userPlantId()));
+        writer.write(",\"plantName\":");
+        writeString(row.plantName());
+        writer.write(",\"plantType\":");
+        writeString(row.plantType());
+        writer.write(",\"date\":\"");
+        writer.write(row.date().toString());
+        writer.write("\",\"time\":\"");
+        writer.write(row.time().toString());
+        writer.write("\",\"volumeWatering\":");
+        writer.write(String.valueOf(row.volumeWatering()));
+        writer.write(",\"errorRateK\":");
+        writer.write(String.valueOf(row.errorRateK()));
+        writer.write("}\n");
+    }
+
+    /**
+     * Записать JSON-строку с экранированием.
+     *
+     * @param value значение
+     * @throws IOException при ошибке записи
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Сбросить буфер в поток вывода.
+     *
+     * @throws IOException при ошибке записи
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
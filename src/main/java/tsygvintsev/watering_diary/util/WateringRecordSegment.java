@@ -0,0 +1,268 @@
+package tsygvintsev.watering_diary.util;
+
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Неизменяемый архивный сегмент записей полива одного пользователя в файле, отображённом в память.
+ * Записи упорядочены по (дата, ID) от новых к старым и закодированы разностями
+ * переменной длины, после чего сжаты Deflate. Заголовок хранит диапазон дат
+ * и ID растений сегмента, чтобы пропускать сегменты без распаковки.
+ *
+ * <p>Формат файла: магическое число, версия, количество записей, первый и последний день
+ * (epoch day), количество растений, длина распакованных данных, ID растений по возрастанию,
+ * затем сжатые данные. Запись: разность дней с предыдущей, разность ID (zigzag),
+ * ID растения, секунда суток, объём, погрешность (zigzag).</p>
+ */
+public final class WateringRecordSegment {
+
+    private static final int MAGIC = 0x57525347;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long minDay;
+    private final long maxDay;
+    private final int[] plantIds;
+    private final int rawLength;
+    private final int dataOffset;
+
+    private WateringRecordSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES
+                || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Повреждён архивный сегмент: " + path);
+        }
+        this.count = buffer.getInt(8);
+        this.maxDay = buffer.getInt(12);
+        this.minDay = buffer.getInt(16);
+        int plantCount = buffer.getInt(20);
+        this.rawLength = buffer.getInt(24);
+        if (count < 0 || plantCount < 0 || rawLength < 0
+                || HEADER_BYTES + 4L * plantCount > buffer.capacity()) {
+            throw new IOException("Повреждён архивный сегмент: " + path);
+        }
+        this.plantIds = new int[plantCount];
+        for (int i = 0; i < plantCount; i++) {
+            plantIds[i] = buffer.getInt(HEADER_BYTES + 4 * i);
+        }
+        this.dataOffset = HEADER_BYTES + 4 * plantCount;
+    }
+
+    /**
+     * Записать сегмент в файл и сбросить его на диск.
+     * Переименование в постоянное имя остаётся за вызывающим.
+     *
+     * @param path путь к файлу
+     * @param records записи по (дата, ID) от новых к старым
+     * @throws IOException при ошибке записи
+     */
+    public static void write(Path path, List<WateringRecord> records) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(records.size() * 12);
+        long previousDay = records.isEmpty() ? 0 : records.get(0).getDate().toEpochDay();
+        long previousId = 0;
+        int[] plantIds = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            WateringRecord record = records.get(i);
+            long day = record.getDate().toEpochDay();
+            writeVarLong(raw, previousDay - day);
+            writeVarLong(raw, zigzag(record.getId() - previousId));
+            writeVarLong(raw, record.getUserPlantId());
+            writeVarLong(raw, record.getTime().toSecondOfDay());
+            writeVarLong(raw, zigzag(record.getVolumeWatering()));
+            writeVarLong(raw, zigzag(record.getErrorRateK()));
+            previousDay = day;
+            previousId = record.getId();
+            plantIds[i] = record.getUserPlantId();
+        }
+        plantIds = Arrays.stream(plantIds).distinct().sorted().toArray();
+
+        byte[] input = raw.toByteArray();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 3 + 64);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4 * plantIds.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(records.size());
+        header.putInt(records.isEmpty() ? 0 : (int) records.get(0).getDate().toEpochDay());
+        header.putInt(records.isEmpty() ? 0 : (int) records.get(records.size() - 1).getDate().toEpochDay());
+        header.putInt(plantIds.length).putInt(input.length);
+        for (int plantId : plantIds) {
+            header.putInt(plantId);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            channel.write(ByteBuffer.wrap(compressed.toByteArray()));
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Открыть сегмент только для чтения.
+     *
+     * @param path путь к файлу
+     * @return открытый сегмент
+     * @throws IOException если файл не читается или повреждён
+     */
+    public static WateringRecordSegment open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return new WateringRecordSegment(path, buffer);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Есть ли в сегменте записи, попадающие в фильтр. Проверяется только заголовок.
+     *
+     * @param plantId ID растения (необязательно)
+     * @param dateFrom начальная дата (необязательно)
+     * @param dateTo конечная дата (необязательно)
+     * @return false, если записей фильтра в сегменте точно нет
+     */
+    public boolean mayContain(Integer plantId, LocalDate dateFrom, LocalDate dateTo) {
+        return count > 0
+                && (plantId == null || Arrays.binarySearch(plantIds, plantId) >= 0)
+                && (dateFrom == null || maxDay >= dateFrom.toEpochDay())
+                && (dateTo == null || minDay <= dateTo.toEpochDay());
+    }
+
+    /**
+     * Распаковать сегмент и обойти записи по (дата, ID) от новых к старым.
+     * Сжатые данные читаются прямо из отображения файла.
+     *
+     * @return итератор записей
+     * @throws IOException если данные повреждены
+     */
+    public Iterator<WateringRecord> iterator() throws IOException {
+        byte[] data = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(dataOffset, buffer.capacity() - dataOffset));
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Повреждён архивный сегмент: " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждён архивный сегмент: " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return new Decoder(data, count, maxDay);
+    }
+
+    private static final class Decoder implements Iterator<WateringRecord> {
+        private final byte[] data;
+        private int remaining;
+        private int position;
+        private long day;
+        private long id;
+
+        Decoder(byte[] data, int count, long firstDay) {
+            this.data = data;
+            this.remaining = count;
+            this.day = firstDay;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public WateringRecord next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            day -= readVarLong();
+            id += unzigzag(readVarLong());
+            int userPlantId = (int) readVarLong();
+            LocalTime time = LocalTime.ofSecondOfDay(readVarLong());
+            int volume = (int) unzigzag(readVarLong());
+            int errorRate = (int) unzigzag(readVarLong());
+
+            WateringRecord record = new WateringRecord(userPlantId, LocalDate.ofEpochDay(day), time,
+                    volume, errorRate);
+            record.setId((int) id);
+            return record;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,12 @@
+-- Последовательность идентификаторов записей полива.
+-- Шаг должен совпадать с WateringRecord.ID_ALLOCATION_SIZE: Hibernate выделяет
+-- идентификаторы диапазонами такого размера, и при другом шаге диапазоны пересекутся.
+
+CREATE SEQUENCE IF NOT EXISTS "Watering_record_id_seq";
+
+ALTER SEQUENCE "Watering_record_id_seq" INCREMENT BY 50;
+
+SELECT setval('"Watering_record_id_seq"', GREATEST(
+        (SELECT MAX(id) FROM "Watering_record"),
+        (SELECT last_value FROM "Watering_record_id_seq"),
+        1));
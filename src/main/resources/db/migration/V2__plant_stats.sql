@@ -0,0 +1,20 @@
+-- Накопленные показатели растений: количество поливов, суммы объёма и погрешности,
+-- сумма квадратов погрешности и дата последнего полива.
+-- Таблица заполняется полным пересчётом по записям полива; если часть записей уже
+-- перенесена в архив, после миграции выполните POST /api/user-plants/aggregates/rebuild.
+
+CREATE TABLE IF NOT EXISTS "Plant_stats" (
+    user_plant_id integer PRIMARY KEY REFERENCES "User_plant" (id) ON DELETE CASCADE,
+    record_count bigint NOT NULL DEFAULT 0,
+    volume_sum bigint NOT NULL DEFAULT 0,
+    error_sum bigint NOT NULL DEFAULT 0,
+    error_sq_sum bigint NOT NULL DEFAULT 0,
+    last_date date
+);
+
+INSERT INTO "Plant_stats" (user_plant_id, record_count, volume_sum, error_sum, error_sq_sum, last_date)
+SELECT user_plant_id, COUNT(*), SUM(volume_watering), SUM(error_rate_k),
+       SUM(CAST(error_rate_k AS bigint) * error_rate_k), MAX("date")
+FROM "Watering_record"
+GROUP BY user_plant_id
+ON CONFLICT (user_plant_id) DO NOTHING;
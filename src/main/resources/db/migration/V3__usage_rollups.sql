@@ -0,0 +1,35 @@
+-- Помесячный и погодовый расход воды растений: количество поливов, суммы объёма и погрешности.
+-- Таблицы заполняются по записям полива; если часть записей уже перенесена в архив,
+-- после миграции выполните POST /api/watering-records/usage/backfill.
+
+CREATE TABLE IF NOT EXISTS "Usage_monthly" (
+    user_plant_id integer NOT NULL REFERENCES "User_plant" (id) ON DELETE CASCADE,
+    period date NOT NULL,
+    record_count bigint NOT NULL DEFAULT 0,
+    volume_sum bigint NOT NULL DEFAULT 0,
+    error_sum bigint NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_plant_id, period)
+);
+
+CREATE TABLE IF NOT EXISTS "Usage_yearly" (
+    user_plant_id integer NOT NULL REFERENCES "User_plant" (id) ON DELETE CASCADE,
+    period date NOT NULL,
+    record_count bigint NOT NULL DEFAULT 0,
+    volume_sum bigint NOT NULL DEFAULT 0,
+    error_sum bigint NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_plant_id, period)
+);
+
+INSERT INTO "Usage_monthly" (user_plant_id, period, record_count, volume_sum, error_sum)
+SELECT user_plant_id, CAST(date_trunc('month', "date") AS date), COUNT(*),
+       SUM(volume_watering), SUM(error_rate_k)
+FROM "Watering_record"
+GROUP BY 1, 2
+ON CONFLICT (user_plant_id, period) DO NOTHING;
+
+INSERT INTO "Usage_yearly" (user_plant_id, period, record_count, volume_sum, error_sum)
+SELECT user_plant_id, CAST(date_trunc('year', "date") AS date), COUNT(*),
+       SUM(volume_watering), SUM(error_rate_k)
+FROM "Watering_record"
+GROUP BY 1, 2
+ON CONFLICT (user_plant_id, period) DO NOTHING;
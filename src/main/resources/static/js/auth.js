@@ -1,7 +1,7 @@
 const API_URL = 'http://localhost:8080/api';
 
 document.addEventListener('DOMContentLoaded', function() {
-    const currentUserId = localStorage.getItem('currentUserId');
+    const currentUserId = localStorage.getItem('sessionToken') && localStorage.getItem('currentUserId');
     const currentPath = window.location.pathname;
 
     if (currentUserId && (currentPath.includes('index.html') || currentPath.includes('register.html'))) {
@@ -32,6 +32,7 @@ async function loginUser(event) {
         const data = await response.json();
 
         if (data.success) {
+            localStorage.setItem('sessionToken', data.token);
             localStorage.setItem('currentUserId', data.userId);
             localStorage.setItem('currentUserLogin', data.login);
             window.location.href = 'profile.html';
@@ -88,10 +89,23 @@ async function registerUser(event) {
         throw new Error(errorMessage);
     }
 
-        const newUser = await response.json();
+        await response.json();
 
-        localStorage.setItem('currentUserId', newUser.id);
-        localStorage.setItem('currentUserLogin', newUser.login);
+        const loginResponse = await fetch(`${API_URL}/users/login`, {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json'
+            },
+            body: JSON.stringify({ login: loginValue, password: passwordValue })
+        });
+        const session = await loginResponse.json();
+        if (!session.success) {
+            throw new Error(session.error || 'Ошибка входа');
+        }
+
+        localStorage.setItem('sessionToken', session.token);
+        localStorage.setItem('currentUserId', session.userId);
+        localStorage.setItem('currentUserLogin', session.login);
 
         window.location.href = 'profile.html';
 
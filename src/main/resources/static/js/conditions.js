@@ -237,6 +237,7 @@ function logout() {
     if (confirm('Вы уверены, что хотите выйти?')) {
         localStorage.removeItem('currentUserId');
         localStorage.removeItem('currentUserLogin');
+        localStorage.removeItem('sessionToken');
         window.location.href = 'index.html';
     }
 }
@@ -1,11 +1,14 @@
 const API_URL = 'http://localhost:8080/api';
 const currentUserId = localStorage.getItem('currentUserId');
+const PAGE_SIZE = 50;
 
 if (!currentUserId) {
     window.location.href = 'index.html';
 }
 
 let allRecords = [];
+let plantCursors = {};
+let plantStats = [];
 let userPlants = [];
 let plantTypes = [];
 let materials = [];
@@ -74,15 +77,14 @@ function populatePlantSelects() {
 
 async function loadRecords() {
     try {
-        const promises = userPlants.map(plant =>
-            fetch(`${API_URL}/watering-records/plant/${plant.id}`)
-                .then(res => res.ok ? res.json() : [])
-        );
-
-        const results = await Promise.all(promises);
+        plantCursors = {};
+        const [results] = await Promise.all([
+            Promise.all(userPlants.map(plant => fetchPlantRecords(plant.id))),
+            loadPlantStats()
+        ]);
         allRecords = results.flat();
 
-        displayRecords(allRecords);
+        filterRecords();
 
         document.getElementById('loading').style.display = 'none';
         document.getElementById('diary-list').style.display = 'block';
@@ -93,6 +95,59 @@ async function loadRecords() {
     }
 }
 
+async function loadMoreRecords() {
+    const plantId = document.getElementById('filter-plant').value;
+    const plantIds = Object.keys(plantCursors)
+        .map(id => parseInt(id))
+        .filter(id => !plantId || id === parseInt(plantId));
+
+    try {
+        const results = await Promise.all(plantIds.map(id => fetchPlantRecords(id, plantCursors[id])));
+        allRecords = allRecords.concat(results.flat());
+        filterRecords();
+    } catch (error) {
+        showError('Не удалось загрузить записи: ' + error.message);
+    }
+}
+
+async function fetchPlantRecords(plantId, cursor = null) {
+    const params = new URLSearchParams({ limit: PAGE_SIZE });
+    if (cursor) params.append('cursor', cursor);
+
+    const response = await fetch(`${API_URL}/watering-records/plant/${plantId}?${params}`);
+    if (!response.ok) return [];
+
+    const page = await response.json();
+    if (page.next) {
+        plantCursors[plantId] = page.next;
+    } else {
+        delete plantCursors[plantId];
+    }
+    return page.items;
+}
+
+async function loadPlantStats() {
+    const response = await fetch(`${API_URL}/user-plants/user/${currentUserId}/stats`);
+    plantStats = response.ok ? await response.json() : [];
+}
+
+function getPlantStats(plantId) {
+    return plantStats.find(s => s.userPlantId === plantId);
+}
+
+function displaySummary(plantId) {
+    const stats = plantId ? plantStats.filter(s => s.userPlantId === plantId) : plantStats;
+    const count = stats.reduce((sum, s) => sum + s.recordCount, 0);
+    const lastDate = stats.map(s => s.lastDate).filter(Boolean).sort().pop();
+
+    const summary = document.getElementById('diary-summary');
+    summary.textContent = `Всего записей: ${count}` + (lastDate ? `, последний полив: ${formatDate(lastDate)}` : '');
+    summary.style.display = count > 0 ? 'block' : 'none';
+
+    const hasMore = Object.keys(plantCursors).some(id => !plantId || parseInt(id) === plantId);
+    document.getElementById('load-more').style.display = hasMore ? 'inline-block' : 'none';
+}
+
 function displayRecords(records) {
     const listDiv = document.getElementById('diary-list');
 
@@ -194,13 +249,14 @@ function filterRecords() {
     }
 
     displayRecords(filtered);
+    displaySummary(plantId ? parseInt(plantId) : null);
 }
 
 function resetFilters() {
     document.getElementById('filter-plant').value = '';
     document.getElementById('filter-date-from').value = '';
     document.getElementById('filter-date-to').value = '';
-    displayRecords(allRecords);
+    filterRecords();
 }
 
 function showAddForm() {
@@ -241,15 +297,10 @@ async function calculateRecommendation() {
         const plantType = plantTypes.find(pt => pt.id === plant.plantTypeId);
         const material = materials.find(m => m.id === plant.materialId);
 
-        const recordsResponse = await fetch(`${API_URL}/watering-records/plant/${plantId}`);
-        let lastRecord = null;
-        if (recordsResponse.ok) {
-            const records = await recordsResponse.json();
-            if (records.length > 0) {
-                records.sort((a, b) => new Date(b.date) - new Date(a.date));
-                lastRecord = records[0];
-            }
-        }
+        const stats = getPlantStats(parseInt(plantId));
+        const lastRecord = stats && stats.recordCount > 0
+            ? { volumeWatering: stats.lastVolume, errorRateK: stats.lastErrorRateK }
+            : null;
 
         document.getElementById('recommended-volume').textContent = data.recommendedVolume;
 
@@ -442,11 +493,12 @@ function logout() {
     if (confirm('Вы уверены, что хотите выйти?')) {
         localStorage.removeItem('currentUserId');
         localStorage.removeItem('currentUserLogin');
+        localStorage.removeItem('sessionToken');
         window.location.href = 'index.html';
     }
 }
 
-function exportToExcel() {
+async function exportToExcel() {
     const plantId = document.getElementById('filter-plant').value;
     const dateFrom = document.getElementById('filter-date-from').value;
     const dateTo = document.getElementById('filter-date-to').value;
@@ -463,6 +515,18 @@ function exportToExcel() {
         url += '?' + params.toString();
     }
 
-    window.location.href = url;
+    try {
+        const response = await fetch(url);
+        if (!response.ok) throw new Error('Ошибка экспорта');
+
+        const blob = await response.blob();
+        const link = document.createElement('a');
+        link.href = URL.createObjectURL(blob);
+        link.download = 'watering_records.xlsx';
+        link.click();
+        URL.revokeObjectURL(link.href);
+    } catch (error) {
+        showError(error.message);
+    }
 }
 
@@ -0,0 +1,26 @@
+// Добавляет сессионный токен ко всем запросам к API
+// и возвращает на страницу входа, если токен отсутствует или истёк.
+(function () {
+    const originalFetch = window.fetch.bind(window);
+
+    window.fetch = async function (resource, options = {}) {
+        const token = localStorage.getItem('sessionToken');
+        const url = typeof resource === 'string' ? resource : resource.url;
+
+        if (token && url.includes('/api/')) {
+            const headers = new Headers(options.headers || {});
+            headers.set('Authorization', `Bearer ${token}`);
+            options = { ...options, headers };
+        }
+
+        const response = await originalFetch(resource, options);
+
+        if (response.status === 401 && !url.endsWith('/users/login')) {
+            localStorage.removeItem('sessionToken');
+            localStorage.removeItem('currentUserId');
+            localStorage.removeItem('currentUserLogin');
+            window.location.href = 'index.html';
+        }
+        return response;
+    };
+})();
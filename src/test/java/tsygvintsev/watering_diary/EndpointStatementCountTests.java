@@ -0,0 +1,131 @@
+package tsygvintsev.watering_diary;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.repository.WateringRecordRepository;
+import tsygvintsev.watering_diary.service.SessionTokenService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверяет, что количество SQL-запросов Hibernate на списочные эндпоинты
+ * не растёт вместе с количеством растений, записей и условий (нет N+1).
+ * Запросы считаются вместе с сериализацией ответа.
+ *
+ * <p>Запускается только явно:</p>
+ * <pre>
+ * ./gradlew test --tests '*EndpointStatementCountTests' -Dwatering.benchmark=true
+ * </pre>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@EnabledIfSystemProperty(named = "watering.benchmark", matches = "true")
+@Import(TestFixtures.class)
+class EndpointStatementCountTests {
+
+	@Value("${local.server.port}")
+	private int port;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private SessionTokenService sessionTokenService;
+
+	@Autowired
+	private WateringRecordRepository wateringRecordRepository;
+
+	@Autowired
+	private TestFixtures fixtures;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	private Statistics statistics;
+	private User user;
+	private UserPlant firstPlant;
+	private String token;
+	private int conditionsDays;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		user = fixtures.createUser("stmt_endpoint_user");
+		token = sessionTokenService.issue(user.getId()).token();
+		firstPlant = addPlants(1, 5).get(0);
+		addConditions(3);
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixtures.deleteUser(user);
+	}
+
+	@Test
+	void listEndpointsDoNotGrowWithData() throws Exception {
+		Map<String, Long> small = countAll();
+
+		addPlants(12, 40);
+		wateringRecordRepository.saveAll(TestFixtures.records(firstPlant, 5, 60));
+		addConditions(30);
+		Map<String, Long> large = countAll();
+
+		assertEquals(small, large);
+	}
+
+	private Map<String, Long> countAll() throws Exception {
+		List<String> endpoints = List.of(
+				"/api/user-plants/user/" + user.getId(),
+				"/api/watering-records/plant/" + firstPlant.getId() + "?limit=500",
+				"/api/conditions/user/" + user.getId(),
+				"/api/watering-records/export/excel?userId=" + user.getId());
+
+		Map<String, Long> counts = new LinkedHashMap<>();
+		for (String endpoint : endpoints) {
+			statistics.clear();
+			HttpResponse<Void> response = client.send(
+					HttpRequest.newBuilder(URI.create("http://localhost:" + port + endpoint))
+							.header("Authorization", "Bearer " + token)
+							.GET()
+							.build(),
+					HttpResponse.BodyHandlers.discarding());
+			assertEquals(200, response.statusCode(), endpoint);
+			counts.put(endpoint, statistics.getPrepareStatementCount());
+		}
+		return counts;
+	}
+
+	private List<UserPlant> addPlants(int plants, int recordsPerPlant) {
+		List<UserPlant> saved = fixtures.createPlants(user, plants);
+		for (UserPlant plant : saved) {
+			wateringRecordRepository.saveAll(TestFixtures.records(plant, 0, recordsPerPlant));
+		}
+		return saved;
+	}
+
+	private void addConditions(int days) {
+		for (int day = conditionsDays; day < conditionsDays + days; day++) {
+			fixtures.addConditions(user, LocalDate.now().minusDays(day));
+		}
+		conditionsDays += days;
+	}
+}
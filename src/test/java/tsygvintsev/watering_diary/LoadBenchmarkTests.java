@@ -0,0 +1,172 @@
+package tsygvintsev.watering_diary;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.service.AccessControlService;
+import tsygvintsev.watering_diary.service.SessionTokenService;
+import tsygvintsev.watering_diary.service.WateringRecordService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный замер блокирующих эндпоинтов на обычных и виртуальных потоках.
+ * Каждый клиент отправляет один запрос, все клиенты стартуют одновременно;
+ * в отчёт теста публикуются пропускная способность, медиана, 99-й перцентиль и число ошибок.
+ *
+ * <p>Запускается только явно, по разу для каждого режима:</p>
+ * <pre>
+ * ./gradlew test --tests '*LoadBenchmarkTests' -Dwatering.benchmark=true -Dwatering.benchmark.virtual=false
+ * ./gradlew test --tests '*LoadBenchmarkTests' -Dwatering.benchmark=true -Dwatering.benchmark.virtual=true
+ * </pre>
+ * Уровни нагрузки задаются свойством watering.benchmark.clients (по умолчанию 1000,10000).
+ * Для 10000 клиентов нужен лимит открытых файлов не меньше 20000 (ulimit -n).
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.threads.virtual.enabled=${watering.benchmark.virtual:false}")
+@EnabledIfSystemProperty(named = "watering.benchmark", matches = "true")
+@Import(TestFixtures.class)
+class LoadBenchmarkTests {
+
+	/** По записи на день: создавать можно записи не старше 7 дней, по одной на дату */
+	private static final int RECORDS = 7;
+
+	@Value("${local.server.port}")
+	private int port;
+
+	@Value("${spring.threads.virtual.enabled}")
+	private boolean virtualThreads;
+
+	@Value("${watering.benchmark.clients:1000,10000}")
+	private int[] clientLevels;
+
+	@Autowired
+	private WateringRecordService wateringRecordService;
+
+	@Autowired
+	private SessionTokenService sessionTokenService;
+
+	@Autowired
+	private AccessControlService accessControlService;
+
+	@Autowired
+	private TestFixtures fixtures;
+
+	private User user;
+	private UserPlant plant;
+	private String token;
+
+	@BeforeEach
+	void setUp() {
+		user = fixtures.createUser("load_benchmark_user");
+		plant = fixtures.createPlants(user, 1).get(0);
+		fixtures.addConditions(user, LocalDate.now());
+		accessControlService.runAs(user.getId(),
+				() -> wateringRecordService.createWateringRecords(TestFixtures.records(plant, 0, RECORDS)));
+
+		token = sessionTokenService.issue(user.getId()).token();
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixtures.deleteUser(user);
+	}
+
+	@Test
+	void blockingEndpoints(TestReporter reporter) throws Exception {
+		String base = "http://localhost:" + port + "/api/watering-records";
+		List<String> endpoints = List.of(
+				base + "/calculate?userPlantId=" + plant.getId(),
+				base + "/plant/" + plant.getId() + "?limit=20",
+				base + "/export/excel?userId=" + user.getId());
+
+		reporter.publishEntry("mode", virtualThreads ? "virtual" : "platform");
+		for (String endpoint : endpoints) {
+			for (int clients : clientLevels) {
+				Result result = run(endpoint, clients);
+				reporter.publishEntry(endpoint.substring(base.length()) + " x" + clients,
+						String.format("%.0f req/s, p50 %.1f ms, p99 %.1f ms, errors %d",
+								result.throughput(), result.p50Millis(), result.p99Millis(), result.errors()));
+				assertTrue(result.errors() < clients);
+			}
+		}
+	}
+
+	private Result run(String endpoint, int clients) throws Exception {
+		HttpClient client = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofSeconds(30))
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+				.header("Authorization", "Bearer " + token)
+				.timeout(Duration.ofSeconds(120))
+				.GET()
+				.build();
+
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Long>> calls = new ArrayList<>(clients);
+		long startedAt;
+		try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < clients; i++) {
+				calls.add(callers.submit(() -> {
+					start.await();
+					long sentAt = System.nanoTime();
+					HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+					return response.statusCode() == 200 ? System.nanoTime() - sentAt : -1L;
+				}));
+			}
+			startedAt = System.nanoTime();
+			start.countDown();
+		}
+		long elapsed = System.nanoTime() - startedAt;
+
+		long[] latencies = new long[clients];
+		int ok = 0;
+		for (Future<Long> call : calls) {
+			try {
+				long latency = call.get();
+				if (latency >= 0) {
+					latencies[ok++] = latency;
+				}
+			} catch (Exception e) {
+				// соединение отклонено или истёк таймаут - считается ошибкой
+			}
+		}
+		long[] sorted = Arrays.copyOf(latencies, ok);
+		Arrays.sort(sorted);
+
+		return new Result(ok / (elapsed / 1e9),
+				percentile(sorted, 0.50), percentile(sorted, 0.99), clients - ok);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+	}
+
+	private record Result(double throughput, double p50Millis, double p99Millis, int errors) {}
+}
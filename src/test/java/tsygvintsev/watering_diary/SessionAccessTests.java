@@ -0,0 +1,179 @@
+package tsygvintsev.watering_diary;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import tsygvintsev.watering_diary.entity.Conditions;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.WateringRecordRepository;
+import tsygvintsev.watering_diary.service.SessionTokenService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что вошедший пользователь не может читать и менять чужие данные,
+ * адресуемые по их собственному ID или через userId в теле запроса,
+ * и не может вызывать общие и служебные эндпоинты, а смена пароля отзывает выданные токены.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(TestFixtures.class)
+class SessionAccessTests {
+
+	@Value("${local.server.port}")
+	private int port;
+
+	@Autowired
+	private TestFixtures fixtures;
+
+	@Autowired
+	private SessionTokenService sessionTokenService;
+
+	@Autowired
+	private WateringRecordRepository wateringRecordRepository;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	private User owner;
+	private User stranger;
+	private UserPlant plant;
+	private Conditions conditions;
+	private WateringRecord record;
+
+	@BeforeEach
+	void setUp() {
+		owner = fixtures.createUser("access_owner");
+		stranger = fixtures.createUser("access_stranger");
+		plant = fixtures.createPlants(owner, 1).get(0);
+		conditions = fixtures.addConditions(owner, LocalDate.now());
+		record = wateringRecordRepository.save(TestFixtures.records(plant, 1, 2).get(0));
+	}
+
+	@AfterEach
+	void tearDown() {
+		fixtures.deleteUser(owner);
+		fixtures.deleteUser(stranger);
+	}
+
+	@Test
+	void ownerCanReadOwnData() throws Exception {
+		for (String path : List.of(
+				"/api/watering-records/" + record.getId(),
+				"/api/watering-records/plant/" + plant.getId(),
+				"/api/watering-records/calculate?userPlantId=" + plant.getId(),
+				"/api/user-plants/" + plant.getId(),
+				"/api/conditions/" + conditions.getId())) {
+			assertEquals(200, send(owner, "GET", path, null), path);
+		}
+	}
+
+	@Test
+	void otherUserGetsForbiddenForIdAddressedData() throws Exception {
+		String recordBody = "{\"userPlantId\":" + plant.getId() + ",\"date\":\"" + LocalDate.now()
+				+ "\",\"time\":\"08:00:00\",\"volumeWatering\":150}";
+		Map<String, String> requests = Map.ofEntries(
+				Map.entry("GET /api/watering-records/" + record.getId(), ""),
+				Map.entry("DELETE /api/watering-records/" + record.getId(), ""),
+				Map.entry("PATCH /api/watering-records/" + record.getId(), "{\"volumeWatering\":10}"),
+				Map.entry("GET /api/watering-records/plant/" + plant.getId(), ""),
+				Map.entry("GET /api/watering-records/calculate?userPlantId=" + plant.getId(), ""),
+				Map.entry("GET /api/watering-records/calculate/user/" + owner.getId(), ""),
+				Map.entry("POST /api/watering-records", recordBody),
+				Map.entry("POST /api/watering-records/batch", "[" + recordBody + "]"),
+				Map.entry("GET /api/user-plants/" + plant.getId(), ""),
+				Map.entry("DELETE /api/user-plants/" + plant.getId(), ""),
+				Map.entry("POST /api/user-plants", "{\"name\":\"Чужое\",\"plantTypeId\":" + plant.getPlantTypeId()
+						+ ",\"materialId\":" + plant.getMaterialId() + ",\"userId\":" + owner.getId() + "}"),
+				Map.entry("GET /api/conditions/" + conditions.getId(), ""),
+				Map.entry("DELETE /api/conditions/" + conditions.getId(), ""),
+				Map.entry("POST /api/conditions", "{\"userId\":" + owner.getId() + ",\"date\":\"" + LocalDate.now()
+						+ "\",\"temperature\":20,\"watering\":40}"),
+				Map.entry("POST /api/exports", "{\"format\":\"csv\",\"userId\":" + owner.getId() + "}"));
+
+		for (Map.Entry<String, String> request : requests.entrySet()) {
+			String[] methodAndPath = request.getKey().split(" ", 2);
+			assertEquals(403, send(stranger, methodAndPath[0], methodAndPath[1],
+					request.getValue().isEmpty() ? null : request.getValue()), request.getKey());
+		}
+
+		assertTrue(wateringRecordRepository.existsById(record.getId()));
+	}
+
+	@Test
+	void regularUserGetsForbiddenForGlobalEndpoints() throws Exception {
+		for (String request : List.of(
+				"GET /api/users",
+				"GET /api/user-plants",
+				"GET /api/user-plants/due",
+				"GET /api/conditions",
+				"GET /api/watering-records",
+				"POST /api/user-plants/aggregates/rebuild",
+				"POST /api/watering-records/usage/backfill",
+				"POST /api/watering-records/archive/compact")) {
+			String[] methodAndPath = request.split(" ", 2);
+			assertEquals(403, send(owner, methodAndPath[0], methodAndPath[1], null), request);
+		}
+	}
+
+	@Test
+	void conditionalRequestChecksAccessBeforeETag() throws Exception {
+		String path = "/api/watering-records/plant/" + plant.getId();
+		HttpResponse<Void> first = get(owner, path, null);
+		String eTag = first.headers().firstValue("ETag").orElseThrow();
+
+		assertEquals(304, get(owner, path, eTag).statusCode());
+		assertEquals(403, get(stranger, path, eTag).statusCode());
+		assertEquals(404, get(owner, "/api/watering-records/plant/" + Integer.MAX_VALUE, eTag).statusCode());
+	}
+
+	@Test
+	void passwordChangeRevokesIssuedTokens() throws Exception {
+		String path = "/api/watering-records/plant/" + plant.getId();
+		String token = sessionTokenService.issue(owner.getId()).token();
+		assertEquals(200, send(token, "GET", path, null));
+
+		assertEquals(200, send(token, "PATCH", "/api/users/" + owner.getId(), "{\"password\":\"new_password\"}"));
+
+		assertEquals(401, send(token, "GET", path, null));
+		assertEquals(200, send(owner, "GET", path, null));
+	}
+
+	private HttpResponse<Void> get(User user, String path, String eTag) throws Exception {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+				.header("Authorization", "Bearer " + sessionTokenService.issue(user.getId()).token());
+		if (eTag != null) {
+			builder.header("If-None-Match", eTag);
+		}
+		return client.send(builder.GET().build(), HttpResponse.BodyHandlers.discarding());
+	}
+
+	private int send(User user, String method, String path, String body) throws Exception {
+		return send(sessionTokenService.issue(user.getId()).token(), method, path, body);
+	}
+
+	private int send(String token, String method, String path, String body) throws Exception {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+				.header("Authorization", "Bearer " + token);
+		if (body != null) {
+			builder.header("Content-Type", "application/json");
+		}
+		builder.method(method, body != null
+				? HttpRequest.BodyPublishers.ofString(body)
+				: HttpRequest.BodyPublishers.noBody());
+		return client.send(builder.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+}
@@ -0,0 +1,124 @@
+package tsygvintsev.watering_diary;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tsygvintsev.watering_diary.entity.Conditions;
+import tsygvintsev.watering_diary.entity.Material;
+import tsygvintsev.watering_diary.entity.PlantType;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.ConditionsRepository;
+import tsygvintsev.watering_diary.repository.MaterialRepository;
+import tsygvintsev.watering_diary.repository.PlantTypeRepository;
+import tsygvintsev.watering_diary.repository.UserPlantRepository;
+import tsygvintsev.watering_diary.repository.UserRepository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Общие тестовые данные: пользователь, его растения и условия, а также их удаление.
+ * Подключается к тесту через {@code @Import(TestFixtures.class)}.
+ */
+@TestComponent
+public class TestFixtures {
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private UserPlantRepository userPlantRepository;
+
+	@Autowired
+	private PlantTypeRepository plantTypeRepository;
+
+	@Autowired
+	private MaterialRepository materialRepository;
+
+	@Autowired
+	private ConditionsRepository conditionsRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * Создать пользователя.
+	 *
+	 * @param login логин
+	 * @return сохранённый пользователь
+	 */
+	public User createUser(String login) {
+		return userRepository.save(new User(login, "password"));
+	}
+
+	/**
+	 * Создать растения пользователя. Типы растений и материалы берутся из справочников по кругу.
+	 *
+	 * @param user пользователь
+	 * @param count количество растений
+	 * @return сохранённые растения
+	 */
+	public List<UserPlant> createPlants(User user, int count) {
+		List<PlantType> plantTypes = plantTypeRepository.findAll();
+		List<Material> materials = materialRepository.findAll();
+		int existing = userPlantRepository.findByUserIdOrderById(user.getId()).size();
+
+		List<UserPlant> plants = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			int n = existing + i;
+			plants.add(userPlantRepository.save(new UserPlant("Растение " + n,
+					plantTypes.get(n % plantTypes.size()).getId(), user.getId(),
+					materials.get(n % materials.size()).getId())));
+		}
+		return plants;
+	}
+
+	/**
+	 * Добавить условия пользователя на дату.
+	 *
+	 * @param user пользователь
+	 * @param date дата
+	 * @return сохранённые условия
+	 */
+	public Conditions addConditions(User user, LocalDate date) {
+		return conditionsRepository.save(new Conditions(null, user.getId(), date, 22, 45));
+	}
+
+	/**
+	 * Записи полива растения по одной на день: от fromDay дней назад до toDay дней назад (не включая).
+	 * Записи не сохраняются.
+	 *
+	 * @param plant растение
+	 * @param fromDay первый день (0 - сегодня)
+	 * @param toDay день после последнего
+	 * @return записи с нулевой погрешностью
+	 */
+	public static List<WateringRecord> records(UserPlant plant, int fromDay, int toDay) {
+		List<WateringRecord> records = new ArrayList<>();
+		for (int day = fromDay; day < toDay; day++) {
+			records.add(new WateringRecord(plant.getId(), LocalDate.now().minusDays(day),
+					LocalTime.of(8, 0), 150, 0));
+		}
+		return records;
+	}
+
+	/**
+	 * Удалить пользователя и все его данные, включая накопленные показатели и расход воды растений.
+	 *
+	 * @param user пользователь
+	 */
+	public void deleteUser(User user) {
+		String plantIds = "(SELECT id FROM \"User_plant\" WHERE user_id = ?)";
+		jdbcTemplate.update("DELETE FROM \"Plant_stats\" WHERE user_plant_id IN " + plantIds, user.getId());
+		jdbcTemplate.update("DELETE FROM \"Usage_monthly\" WHERE user_plant_id IN " + plantIds, user.getId());
+		jdbcTemplate.update("DELETE FROM \"Usage_yearly\" WHERE user_plant_id IN " + plantIds, user.getId());
+		jdbcTemplate.update("DELETE FROM \"Watering_record\" WHERE user_plant_id IN " + plantIds, user.getId());
+		jdbcTemplate.update("DELETE FROM \"User_plant\" WHERE user_id = ?", user.getId());
+		jdbcTemplate.update("DELETE FROM \"Conditions\" WHERE user_id = ?", user.getId());
+		jdbcTemplate.update("DELETE FROM \"User\" WHERE id = ?", user.getId());
+	}
+}
@@ -0,0 +1,91 @@
+package tsygvintsev.watering_diary.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Замеряет время проверки пароля при разной стоимости BCrypt, чтобы подобрать
+ * watering.password.strength под целевое время входа, и проверяет отказ при переполнении пула.
+ * Время публикуется в отчёт теста.
+ *
+ * <p>Замер запускается только явно:</p>
+ * <pre>
+ * ./gradlew test --tests '*PasswordHashingBenchmarkTests' -Dwatering.benchmark=true
+ * </pre>
+ */
+class PasswordHashingBenchmarkTests {
+
+	/** Целевое время проверки пароля при входе, мс */
+	private static final long LOGIN_SLO_MILLIS = 250;
+
+	private static final int SAMPLES = 5;
+
+	@Test
+	@EnabledIfSystemProperty(named = "watering.benchmark", matches = "true")
+	void matchLatencyPerStrength(TestReporter reporter) {
+		double previousMedian = 0;
+
+		for (int strength = 8; strength <= 12; strength += 2) {
+			PasswordHashingService service = new PasswordHashingService(strength, 1, 4, 60_000);
+			try {
+				String hash = service.encode("password");
+				long[] samples = new long[SAMPLES];
+				for (int i = 0; i < SAMPLES; i++) {
+					long startedAt = System.nanoTime();
+					assertTrue(service.matches("password", hash));
+					samples[i] = System.nanoTime() - startedAt;
+				}
+				Arrays.sort(samples);
+				double median = samples[SAMPLES / 2] / 1_000_000.0;
+
+				reporter.publishEntry("strength " + strength, String.format("median %.1f ms, %s %d ms target",
+						median, median <= LOGIN_SLO_MILLIS ? "within" : "over", LOGIN_SLO_MILLIS));
+
+				assertTrue(median > previousMedian);
+				previousMedian = median;
+			} finally {
+				service.shutdown();
+			}
+		}
+	}
+
+	@Test
+	void rejectsWhenQueueIsFull() throws Exception {
+		PasswordHashingService service = new PasswordHashingService(12, 1, 1, 60_000);
+		String hash = service.encode("password");
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Boolean>> busy = new ArrayList<>();
+			busy.add(callers.submit(() -> service.matches("password", hash)));
+			busy.add(callers.submit(() -> service.matches("password", hash)));
+			while (service.getStats().get("queueDepth").equals(0)) {
+				Thread.sleep(1);
+			}
+
+			ResponseStatusException e = assertThrows(ResponseStatusException.class,
+					() -> service.matches("password", hash));
+			assertEquals(503, e.getStatusCode().value());
+			assertEquals(1L, service.getStats().get("rejected"));
+
+			for (Future<Boolean> future : busy) {
+				assertTrue(future.get());
+			}
+		} finally {
+			callers.shutdownNow();
+			service.shutdown();
+		}
+	}
+}
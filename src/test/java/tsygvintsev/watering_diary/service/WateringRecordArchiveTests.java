@@ -0,0 +1,64 @@
+package tsygvintsev.watering_diary.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.util.WateringRecordSegment;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что после удаления растения его записи вычищаются из архивных сегментов.
+ */
+class WateringRecordArchiveTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void plantRemovedPurgesItsRecords() throws Exception {
+		Path userDirectory = Files.createDirectories(directory.resolve("user-1"));
+		WateringRecordSegment.write(userDirectory.resolve("segment-1.seg"), records(1, 1, 2));
+		WateringRecordSegment.write(userDirectory.resolve("segment-100.seg"), records(100, 2));
+
+		WateringRecordArchive archive = new WateringRecordArchive(true, directory.toString(), 365, 16);
+		assertEquals(30, archive.scan(1, null, null, null).count());
+
+		archive.plantRemoved(1, 2);
+
+		List<WateringRecord> left = archive.scan(1, null, null, null).toList();
+		assertEquals(10, left.size());
+		assertTrue(left.stream().allMatch(record -> record.getUserPlantId() == 1));
+		assertFalse(Files.exists(userDirectory.resolve("segment-100.seg")));
+		try (var files = Files.list(userDirectory)) {
+			assertEquals(List.of(userDirectory.resolve("segment-1.seg")), files.toList());
+		}
+	}
+
+	/**
+	 * По 10 записей на растение, от новых к старым.
+	 */
+	private static List<WateringRecord> records(int firstId, int... plantIds) {
+		List<WateringRecord> records = new ArrayList<>();
+		int id = firstId;
+		for (int day = 0; day < 10; day++) {
+			for (int plantId : plantIds) {
+				WateringRecord record = new WateringRecord(plantId, LocalDate.of(2024, 1, 10).minusDays(day),
+						LocalTime.of(8, 0), 150, 0);
+				record.setId(id++);
+				records.add(record);
+			}
+		}
+		records.sort(WateringRecordArchive.NEWEST_FIRST);
+		return records;
+	}
+}
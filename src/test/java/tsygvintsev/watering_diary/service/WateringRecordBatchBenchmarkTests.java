@@ -0,0 +1,114 @@
+package tsygvintsev.watering_diary.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Transactional;
+import tsygvintsev.watering_diary.TestFixtures;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнивает пакетное создание записей полива с последовательными одиночными вызовами.
+ * Количество запросов проверяется, время публикуется в отчёт теста.
+ *
+ * <p>Запускается только явно:</p>
+ * <pre>
+ * ./gradlew test --tests '*WateringRecordBatchBenchmarkTests' -Dwatering.benchmark=true
+ * </pre>
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@EnabledIfSystemProperty(named = "watering.benchmark", matches = "true")
+@Import(TestFixtures.class)
+@Transactional
+class WateringRecordBatchBenchmarkTests {
+
+	private static final int PLANTS = 40;
+
+	@Autowired
+	private WateringRecordService wateringRecordService;
+
+	@Autowired
+	private AccessControlService accessControlService;
+
+	@Autowired
+	private TestFixtures fixtures;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	private List<UserPlant> plants;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		User user = fixtures.createUser("batch_benchmark_user");
+		plants = fixtures.createPlants(user, PLANTS);
+		fixtures.addConditions(user, LocalDate.now());
+
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void batchCreateUsesFewerStatementsThanSingleCalls(TestReporter reporter) {
+		LocalDate singleDate = LocalDate.now().minusDays(1);
+		LocalDate batchDate = LocalDate.now();
+
+		long singleStart = System.nanoTime();
+		long single = countStatements(() -> {
+			for (UserPlant plant : plants) {
+				wateringRecordService.createWateringRecord(
+						new WateringRecord(plant.getId(), singleDate, LocalTime.NOON, 120, null));
+			}
+		});
+		long singleNanos = System.nanoTime() - singleStart;
+
+		List<WateringRecord> batch = new ArrayList<>();
+		for (UserPlant plant : plants) {
+			batch.add(new WateringRecord(plant.getId(), batchDate, LocalTime.NOON, 120, null));
+		}
+
+		long batchStart = System.nanoTime();
+		long batched = countStatements(() -> assertEquals(PLANTS,
+				wateringRecordService.createWateringRecords(batch).size()));
+		long batchNanos = System.nanoTime() - batchStart;
+
+		reporter.publishEntry("single", String.format("%d statements, %.1f ms", single, singleNanos / 1e6));
+		reporter.publishEntry("batch", String.format("%d statements, %.1f ms", batched, batchNanos / 1e6));
+
+		assertTrue(batched < single);
+		assertTrue(statistics.getEntityInsertCount() >= PLANTS);
+	}
+
+	private long countStatements(Runnable action) {
+		entityManager.clear();
+		statistics.clear();
+		accessControlService.runAs(plants.get(0).getUserId(), action);
+		entityManager.flush();
+		return statistics.getPrepareStatementCount();
+	}
+}
@@ -0,0 +1,88 @@
+package tsygvintsev.watering_diary.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Transactional;
+import tsygvintsev.watering_diary.TestFixtures;
+import tsygvintsev.watering_diary.entity.User;
+import tsygvintsev.watering_diary.entity.UserPlant;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.repository.WateringRecordRepository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверяет количество SQL-запросов при создании записи полива.
+ * Считаются только запросы Hibernate: выделение ID из последовательности и обновление
+ * накопленных показателей и сводок расхода через JdbcTemplate в счётчики не попадают,
+ * поэтому проверяются число выборок и вставок, а не всех подготовленных запросов.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+@Import(TestFixtures.class)
+class WateringRecordStatementCountTests {
+
+	@Autowired
+	private WateringRecordService wateringRecordService;
+
+	@Autowired
+	private AccessControlService accessControlService;
+
+	@Autowired
+	private WateringRecordRepository wateringRecordRepository;
+
+	@Autowired
+	private TestFixtures fixtures;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	private UserPlant userPlant;
+
+	@BeforeEach
+	void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		User user = fixtures.createUser("stmt_count_user");
+		userPlant = fixtures.createPlants(user, 1).get(0);
+		fixtures.addConditions(user, LocalDate.now());
+		wateringRecordRepository.saveAll(TestFixtures.records(userPlant, 2, 3));
+
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void createWateringRecordUsesSingleSelectAndInsert() {
+		LocalDate date = LocalDate.now();
+
+		run(() -> accessControlService.runAs(userPlant.getUserId(), () -> wateringRecordService.createWateringRecord(
+				new WateringRecord(userPlant.getId(), date, LocalTime.NOON, 120, null))));
+
+		assertEquals(1, statistics.getQueryExecutionCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+		assertEquals(1, statistics.getEntityInsertCount());
+	}
+
+	private void run(Runnable action) {
+		entityManager.clear();
+		statistics.clear();
+		action.run();
+		entityManager.flush();
+	}
+}
@@ -0,0 +1,64 @@
+package tsygvintsev.watering_diary.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tsygvintsev.watering_diary.dto.UserPlantView;
+import tsygvintsev.watering_diary.dto.WateringRecordPage;
+import tsygvintsev.watering_diary.dto.WateringRecordView;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Проверяет разбор параметра fields и запись в ответ только запрошенных полей.
+ */
+class FieldFilteringJsonWriterTests {
+
+	private final ObjectMapper objectMapper = JsonMapper.builder().build();
+
+	private final FieldFilteringJsonWriter writer = new FieldFilteringJsonWriter(objectMapper);
+
+	@Test
+	void selectsRequiredFieldsButWritesOnlyRequested() {
+		FieldSet<WateringRecordView> fields = FieldSet.parse(WateringRecordView.class,
+				"volumeWatering, date", "date", "id");
+		assertEquals(List.of("id", "date", "volumeWatering"), fields.selected());
+
+		WateringRecordView view = fields.newView(Map.<String, Object>of(
+				"id", 7, "date", LocalDate.of(2026, 1, 2), "volumeWatering", 250)::get);
+		assertEquals(new WateringRecordView(7, null, LocalDate.of(2026, 1, 2), null, 250, null), view);
+
+		assertJson("{\"items\":[{\"date\":\"2026-01-02\",\"volumeWatering\":250}],\"next\":null}",
+				writer.ok(new WateringRecordPage(List.of(view), null), fields).getBody());
+	}
+
+	@Test
+	void writesAllFieldsWithoutParameter() {
+		FieldSet<WateringRecordView> fields = FieldSet.parse(WateringRecordView.class, null);
+		WateringRecordView view = new WateringRecordView(1, 2, LocalDate.of(2026, 3, 4), LocalTime.of(10, 30), 300, -5);
+
+		assertJson("[{\"id\":1,\"userPlantId\":2,\"date\":\"2026-03-04\",\"time\":\"10:30:00\","
+						+ "\"volumeWatering\":300,\"errorRateK\":-5}]",
+				writer.ok(List.of(view), fields).getBody());
+	}
+
+	@Test
+	void rejectsUnknownField() {
+		assertThrows(ResponseStatusException.class,
+				() -> FieldSet.parse(UserPlantView.class, "name,password"));
+	}
+
+	/**
+	 * Сравнить JSON без учёта порядка полей: его определяет настройка ObjectMapper.
+	 */
+	private void assertJson(String expected, String actual) {
+		assertEquals(objectMapper.readTree(expected), objectMapper.readTree(actual));
+	}
+}
@@ -0,0 +1,83 @@
+package tsygvintsev.watering_diary.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import tsygvintsev.watering_diary.entity.WateringRecord;
+import tsygvintsev.watering_diary.service.WateringRecordArchive;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверяет, что архивный сегмент возвращает записи без потерь и в исходном порядке.
+ * Размер файла на запись публикуется в отчёт теста только при явном запуске замеров:
+ * <pre>
+ * ./gradlew test --tests '*WateringRecordSegmentTests' -Dwatering.benchmark=true
+ * </pre>
+ */
+class WateringRecordSegmentTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void roundTrip() throws Exception {
+		List<WateringRecord> records = randomRecords();
+		Path file = directory.resolve("segment.seg");
+		WateringRecordSegment.write(file, records);
+		WateringRecordSegment segment = WateringRecordSegment.open(file);
+
+		Iterator<WateringRecord> decoded = segment.iterator();
+		for (WateringRecord expected : records) {
+			WateringRecord actual = decoded.next();
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getUserPlantId(), actual.getUserPlantId());
+			assertEquals(expected.getDate(), actual.getDate());
+			assertEquals(expected.getTime(), actual.getTime());
+			assertEquals(expected.getVolumeWatering(), actual.getVolumeWatering());
+			assertEquals(expected.getErrorRateK(), actual.getErrorRateK());
+		}
+		assertFalse(decoded.hasNext());
+
+		assertTrue(segment.mayContain(1, null, null));
+		assertFalse(segment.mayContain(21, null, null));
+		assertFalse(segment.mayContain(null, LocalDate.of(2030, 1, 1), null));
+	}
+
+	@Test
+	@EnabledIfSystemProperty(named = "watering.benchmark", matches = "true")
+	void bytesPerRecord(TestReporter reporter) throws Exception {
+		Path file = directory.resolve("segment.seg");
+		WateringRecordSegment.write(file, randomRecords());
+		WateringRecordSegment segment = WateringRecordSegment.open(file);
+		reporter.publishEntry("segment", String.format("%d records, %.1f bytes per record",
+				segment.count(), (double) Files.size(file) / segment.count()));
+	}
+
+	private static List<WateringRecord> randomRecords() {
+		Random random = new Random(42);
+		List<WateringRecord> records = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			WateringRecord record = new WateringRecord(1 + random.nextInt(20),
+					LocalDate.of(2022, 1, 1).plusDays(random.nextInt(1000)),
+					LocalTime.of(6 + random.nextInt(14), random.nextInt(60)),
+					50 * (1 + random.nextInt(10)), random.nextInt(101) - 50);
+			record.setId(i + 1);
+			records.add(record);
+		}
+		records.sort(WateringRecordArchive.NEWEST_FIRST);
+		return records;
+	}
+}